@@ -39,4 +39,26 @@ public interface EventApplierFactory {
      */
     MessageConsumer create(ProgressState currentProgressState,
                            ProgressState completedProgressState);
+
+    /**
+     * @return true if {@link #createUndo(ProgressState, ProgressState)} is supported
+     */
+    default boolean supportsUndo() {
+        return false;
+    }
+
+    /**
+     * Constructs a new event undoer reverting the changes of applied events to the application state.
+     * Uncommitted events are passed to it in reverse order when they are truncated from a replicated event log,
+     * so that the state does not have to be reset and replayed from the start of the log.
+     * Only invoked if {@link #supportsUndo()} returns true.
+     * @param currentProgressState - current progress state
+     * @param completedProgressState - completed progress state
+     * @return event undoer
+     * @throws UnsupportedOperationException if undo is not supported
+     */
+    default MessageConsumer createUndo(final ProgressState currentProgressState,
+                                       final ProgressState completedProgressState) {
+        throw new UnsupportedOperationException("undo operation is not supported");
+    }
 }
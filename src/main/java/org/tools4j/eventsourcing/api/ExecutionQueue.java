@@ -23,11 +23,15 @@
  */
 package org.tools4j.eventsourcing.api;
 
+import org.tools4j.eventsourcing.common.PartitionedExecutionQueue;
 import org.tools4j.eventsourcing.common.ReplicatedExecutionQueue;
 import org.tools4j.eventsourcing.common.StandaloneExecutionQueue;
 import org.tools4j.nobark.loop.Step;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.LongSupplier;
 
@@ -48,6 +52,14 @@ public interface ExecutionQueue extends IndexedQueue {
      */
     Step executorStep();
 
+    /**
+     * @return steps that together do the work of {@link #executorStep()} and can be performed by separate
+     *         threads, one step per thread; a single step unless the queue is built with a pipelineQueue
+     */
+    default List<Step> pipelineSteps() {
+        return Collections.singletonList(executorStep());
+    }
+
     void init();
 
     boolean leader();
@@ -56,10 +68,42 @@ public interface ExecutionQueue extends IndexedQueue {
         return new DefaultBuilder();
     }
 
+    /**
+     * @return builder of an execution queue routing commands by key to independently executing partitions
+     */
+    static PartitionedBuilder partitionedBuilder() {
+        return new DefaultPartitionedBuilder();
+    }
+
     interface EventQueueFactory {
         ExecutionQueue create(Runnable onStateReset) throws IOException;
     }
 
+    interface PartitionFactory {
+        /**
+         * @param partition - partition index, zero based
+         * @return execution queue of the partition with its own command and event queues
+         * @throws IOException when a backing file could not be read/mapped.
+         */
+        ExecutionQueue create(int partition) throws IOException;
+    }
+
+    interface PartitionedBuilder {
+        PartitionFactoryStep partitions(int partitions);
+
+        interface PartitionFactoryStep {
+            KeyExtractorStep partitionFactory(PartitionFactory partitionFactory);
+        }
+
+        interface KeyExtractorStep {
+            BuildStep keyExtractor(KeyExtractor keyExtractor);
+        }
+
+        interface BuildStep {
+            ExecutionQueue build() throws IOException;
+        }
+    }
+
     interface Builder {
         EventQueueFactoryStep commandQueue(IndexedQueue commandQueue);
 
@@ -77,6 +121,11 @@ public interface ExecutionQueue extends IndexedQueue {
         }
 
         interface OptionalsStep {
+            /**
+             * @param transactionBufferSize - initial size of the buffer encoding the events of a command, the buffer
+             *                                grows if the events of a command exceed it
+             * @return optionals step
+             */
             OptionalsStep transactionBufferSize(int transactionBufferSize);
 
             OptionalsStep systemNanoClock(LongSupplier systemNanoClock);
@@ -91,6 +140,23 @@ public interface ExecutionQueue extends IndexedQueue {
 
             OptionalsStep onStateReset(Runnable onStateReset);
 
+            /**
+             * Enables pipelined execution, see {@link ExecutionQueue#pipelineSteps()}.
+             * @param pipelineQueue - transient queue linking command execution and event persistence, for instance
+             *                      an off-heap queue, its entries are released once persisted
+             * @return optionals step
+             */
+            OptionalsStep pipelineQueue(IndexedQueue pipelineQueue);
+
+            /**
+             * Enables group commit: the events of up to maxCommands commands, or of the commands executed within
+             * maxDelayNanos since the first one in the group, are appended to the event queue as a single entry.
+             * @param maxCommands - max number of commands in a group, 1 to append every command separately
+             * @param maxDelayNanos - max time since the first command of a group after which the group is appended
+             * @return optionals step
+             */
+            OptionalsStep groupCommit(int maxCommands, long maxDelayNanos);
+
             ExecutionQueue build() throws IOException;
         }
     }
@@ -108,6 +174,9 @@ public interface ExecutionQueue extends IndexedQueue {
         private EventApplierFactory eventApplierFactory = EventApplierFactory.NO_OP;
         private int transationBufferSize = 16 * 1024;
         private Runnable onStateReset = () -> {};
+        private IndexedQueue pipelineQueue = null;
+        private int maxGroupCommands = 1;
+        private long maxGroupDelayNanos = 0;
 
         @Override
         public EventQueueFactoryStep commandQueue(final IndexedQueue commandQueue) {
@@ -181,12 +250,29 @@ public interface ExecutionQueue extends IndexedQueue {
             return this;
         }
 
+        @Override
+        public OptionalsStep pipelineQueue(final IndexedQueue pipelineQueue) {
+            this.pipelineQueue = Objects.requireNonNull(pipelineQueue);
+            return this;
+        }
+
+        @Override
+        public OptionalsStep groupCommit(final int maxCommands, final long maxDelayNanos) {
+            if (maxCommands <= 0) {
+                throw new IllegalArgumentException("maxCommands " + maxCommands + " must be positive");
+            }
+            this.maxGroupCommands = maxCommands;
+            this.maxGroupDelayNanos = maxDelayNanos;
+            return this;
+        }
+
         @Override
         public ExecutionQueue build() throws IOException {
             if (eventQueue != null) {
                 return new StandaloneExecutionQueue(
                         commandQueue,
                         eventQueue,
+                        pipelineQueue,
                         systemNanoClock,
                         onCommandExecutionStart,
                         onCommandExecutionComplete,
@@ -194,9 +280,14 @@ public interface ExecutionQueue extends IndexedQueue {
                         onEventApplyingCompleted,
                         commandExecutorFactory,
                         eventApplierFactory,
-                        transationBufferSize
+                        transationBufferSize,
+                        maxGroupCommands,
+                        maxGroupDelayNanos
                 );
             } else {
+                if (pipelineQueue != null) {
+                    throw new IllegalStateException("pipelineQueue is only supported with eventQueue");
+                }
                 return new ReplicatedExecutionQueue(
                         commandQueue,
                         eventQueueFactory,
@@ -208,8 +299,51 @@ public interface ExecutionQueue extends IndexedQueue {
                         commandExecutorFactory,
                         eventApplierFactory,
                         onStateReset,
-                        transationBufferSize);
+                        transationBufferSize,
+                        maxGroupCommands,
+                        maxGroupDelayNanos);
+            }
+        }
+    }
+
+    class DefaultPartitionedBuilder implements PartitionedBuilder, PartitionedBuilder.PartitionFactoryStep, PartitionedBuilder.KeyExtractorStep, PartitionedBuilder.BuildStep {
+        private int partitions;
+        private PartitionFactory partitionFactory;
+        private KeyExtractor keyExtractor;
+
+        @Override
+        public PartitionFactoryStep partitions(final int partitions) {
+            if (partitions <= 0) {
+                throw new IllegalArgumentException("partitions " + partitions + " must be positive");
+            }
+            this.partitions = partitions;
+            return this;
+        }
+
+        @Override
+        public KeyExtractorStep partitionFactory(final PartitionFactory partitionFactory) {
+            this.partitionFactory = Objects.requireNonNull(partitionFactory);
+            return this;
+        }
+
+        @Override
+        public BuildStep keyExtractor(final KeyExtractor keyExtractor) {
+            this.keyExtractor = Objects.requireNonNull(keyExtractor);
+            return this;
+        }
+
+        @Override
+        public ExecutionQueue build() throws IOException {
+            final List<ExecutionQueue> executionQueues = new ArrayList<>(partitions);
+            try {
+                for (int partition = 0; partition < partitions; partition++) {
+                    executionQueues.add(partitionFactory.create(partition));
+                }
+            } catch (final IOException | RuntimeException e) {
+                executionQueues.forEach(ExecutionQueue::close);
+                throw e;
             }
+            return new PartitionedExecutionQueue(executionQueues, keyExtractor);
         }
     }
 }
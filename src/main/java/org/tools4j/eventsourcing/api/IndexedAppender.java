@@ -23,6 +23,36 @@
  */
 package org.tools4j.eventsourcing.api;
 
+import org.agrona.MutableDirectBuffer;
+
 public interface IndexedAppender extends IndexedMessageConsumer {
     long lastSourceSeq(int source);
+
+    /**
+     * Claims space for a message of the given length so that it can be encoded in place without copying.
+     * The claimed message has to be completed by {@link #commit(int, long, long)} or {@link #abort()}.
+     * @param length - length of the message
+     * @return buffer with the claimed space at offset 0 or null if the message cannot be claimed in place,
+     *         in which case the message has to be appended with {@link #accept(int, long, long, org.agrona.DirectBuffer, int, int)}
+     */
+    default MutableDirectBuffer tryClaim(final int length) {
+        return null;
+    }
+
+    /**
+     * Appends the claimed message.
+     * @param source - message source
+     * @param sourceSeq - sequence in the source
+     * @param eventTimeNanos - time of the message
+     */
+    default void commit(final int source, final long sourceSeq, final long eventTimeNanos) {
+        throw new IllegalStateException("No message is claimed");
+    }
+
+    /**
+     * Discards the claimed message.
+     */
+    default void abort() {
+        throw new IllegalStateException("No message is claimed");
+    }
 }
@@ -38,6 +38,28 @@ public interface IndexedPollerFactory {
      */
     Poller createPoller(Poller.Options options) throws IOException;
 
+    /**
+     * Creates a poller with parametrised index behaviour starting at the given index.
+     * If the seek fails, the created poller is closed before the exception is rethrown.
+     *
+     * @param options poller factory options
+     * @param startIndex index of the first message to be polled
+     * @return new instance of a poller.
+     * @throws IOException when a backing file could not be read/mapped.
+     * @throws UnsupportedOperationException if the created poller does not support seek
+     * @throws IllegalArgumentException if the startIndex is negative
+     */
+    default Poller createPoller(final Poller.Options options, final long startIndex) throws IOException {
+        final Poller poller = createPoller(options);
+        try {
+            poller.seek(startIndex);
+        } catch (final RuntimeException e) {
+            poller.close();
+            throw e;
+        }
+        return poller;
+    }
+
     default Poller createPoller() throws IOException {
         return createPoller(Poller.Options.builder().build());
     }
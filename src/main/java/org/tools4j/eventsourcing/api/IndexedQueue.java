@@ -32,6 +32,13 @@ public interface IndexedQueue extends IndexedPollerFactory, AutoCloseable {
      */
     IndexedAppender appender();
 
+    /**
+     * Releases the memory of the entries before the index, for queues that do not retain their entries.
+     * Pollers must not access any entry before the index any more. Queues retaining their entries ignore it.
+     * @param index - index of the first entry that is still to be polled
+     */
+    default void releaseBefore(final long index) {}
+
     @Override
     default void close(){}
 }
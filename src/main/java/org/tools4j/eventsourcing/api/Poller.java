@@ -38,6 +38,63 @@ public interface Poller extends AutoCloseable {
      */
     int poll(MessageConsumer consumer);
 
+    /**
+     * polls up to maxMessages index entries of the queue and invokes the consumer for every message available
+     * for consumption. Polling stops early when no more messages are available or the poller is paused.
+     * @param consumer of polled messages
+     * @param maxMessages max number of index entries to poll
+     * @return number of polled messages
+     */
+    default int poll(final MessageConsumer consumer, final int maxMessages) {
+        int done = 0;
+        for (int polled = 0; polled < maxMessages; polled++) {
+            final int messages = poll(consumer);
+            if (messages <= 0) {
+                break;
+            }
+            done += messages;
+        }
+        return done;
+    }
+
+    /**
+     * Moves the poller to the given index so that the next poll consumes the message at the index.
+     * The index may be ahead of the last appended message in which case the poller waits for the
+     * message at the index to be appended.
+     * @param index index of the next message to be polled, zero based
+     * @throws IllegalArgumentException if index is negative
+     * @throws UnsupportedOperationException if the poller does not support random access
+     */
+    default void seek(final long index) {
+        throw new UnsupportedOperationException("seek operation is not supported");
+    }
+
+    /**
+     * Moves the poller to the first message with eventTimeNanos not before the given time using binary search
+     * over the index. The search assumes that event times are non-decreasing in index order, which is the case
+     * for a queue appended by a single appender with a monotonic clock.
+     * If event times are not monotonic, the poller is moved to some index i such that the message at i-1 is
+     * before the given time and the message at i is not, however messages before i may still be at or after the
+     * given time. For exact filtering of non-monotonic queues use seek(0) with
+     * {@link IndexPredicate#eventTimeBefore(long)} as skipWhen predicate.
+     * @param timeNanos time in nanos
+     * @return index the poller has been moved to, equal to the number of appended messages if no message is at
+     *         or after the given time
+     * @throws UnsupportedOperationException if the poller does not support random access
+     */
+    default long seekToTime(final long timeNanos) {
+        throw new UnsupportedOperationException("seekToTime operation is not supported");
+    }
+
+    /**
+     * Checks without consuming if the next index entry has been appended. Skip, pause and reset conditions are
+     * not evaluated.
+     * @return true if the next index entry has been appended, pollers that cannot tell cheaply return true
+     */
+    default boolean messageAvailable() {
+        return true;
+    }
+
     @Override
     default void close(){}
 
@@ -51,6 +108,22 @@ public interface Poller extends AutoCloseable {
         LongConsumer onReset();
         BufferPoller bufferPoller();
 
+        /**
+         * @return cursor the poller resumes from when created and commits its position to after every polled
+         *         index entry
+         */
+        default PollerCursor cursor() {
+            return PollerCursor.NONE;
+        }
+
+        /**
+         * @return sources to poll, entries of other sources are passed over before any of the other options
+         *         are applied
+         */
+        default SourceFilter sourceFilter() {
+            return SourceFilter.all();
+        }
+
         interface Builder {
             Builder skipWhen(IndexPredicate skipWhen);
             Builder pauseWhen(IndexPredicate pauseWhen);
@@ -60,6 +133,8 @@ public interface Poller extends AutoCloseable {
             Builder resetWhen(LongPredicate resetWhen);
             Builder onReset(LongConsumer onReset);
             Builder bufferPoller(BufferPoller bufferPoller);
+            Builder cursor(PollerCursor cursor);
+            Builder sourceFilter(SourceFilter sourceFilter);
             Options build();
         }
 
@@ -73,6 +148,8 @@ public interface Poller extends AutoCloseable {
                 private IndexConsumer onProcessingSkipped = IndexConsumer.noop();
                 private LongConsumer onReset = resetPosition -> {};
                 private BufferPoller bufferPoller = BufferPoller.PASS_THROUGH;
+                private PollerCursor cursor = PollerCursor.NONE;
+                private SourceFilter sourceFilter = SourceFilter.all();
 
 
                 @Override
@@ -123,6 +200,18 @@ public interface Poller extends AutoCloseable {
                     return this;
                 }
 
+                @Override
+                public Builder cursor(final PollerCursor cursor) {
+                    this.cursor = Objects.requireNonNull(cursor);
+                    return this;
+                }
+
+                @Override
+                public Builder sourceFilter(final SourceFilter sourceFilter) {
+                    this.sourceFilter = Objects.requireNonNull(sourceFilter);
+                    return this;
+                }
+
                 @Override
                 public Options build() {
                     return new Options() {
@@ -165,6 +254,16 @@ public interface Poller extends AutoCloseable {
                         public BufferPoller bufferPoller() {
                             return bufferPoller;
                         }
+
+                        @Override
+                        public PollerCursor cursor() {
+                            return cursor;
+                        }
+
+                        @Override
+                        public SourceFilter sourceFilter() {
+                            return sourceFilter;
+                        }
                     };
                 }
             };
@@ -0,0 +1,58 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.api;
+
+/**
+ * Persisted position of a poller, so that a restarted poller resumes where it stopped instead of polling the
+ * queue from the start.
+ */
+public interface PollerCursor {
+    long NULL_INDEX = -1;
+    PollerCursor NONE = new PollerCursor() {
+        @Override
+        public long committedIndex() {
+            return NULL_INDEX;
+        }
+
+        @Override
+        public void commit(final long nextIndex) {
+            //not persisted
+        }
+    };
+
+    /**
+     * @return index of the next message to be polled as last committed, or NULL_INDEX if nothing has been committed
+     */
+    long committedIndex();
+
+    /**
+     * Commits the poller position.
+     * @param nextIndex - index of the next message to be polled
+     */
+    void commit(long nextIndex);
+
+    static PollerCursor none() {
+        return NONE;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.api;
+
+import java.util.Arrays;
+
+/**
+ * Set of sources a poller is interested in. Pollers evaluate the filter directly against the index and pass
+ * over entries of other sources without evaluating any predicate or invoking any callback.
+ * Sources in [0..MAX_BIT_SOURCE) are held in a bitset, other sources in a sorted array.
+ */
+public final class SourceFilter {
+    private static final int MAX_BIT_SOURCE = 4096;
+    private static final SourceFilter ALL = new SourceFilter(null, null);
+
+    private final long[] bits;
+    private final int[] otherSources;
+
+    private SourceFilter(final long[] bits, final int[] otherSources) {
+        this.bits = bits;
+        this.otherSources = otherSources;
+    }
+
+    /**
+     * @return filter matching all sources
+     */
+    public static SourceFilter all() {
+        return ALL;
+    }
+
+    /**
+     * @param sources - sources to match
+     * @return filter matching the given sources only
+     */
+    public static SourceFilter of(final int... sources) {
+        int maxBitSource = -1;
+        int otherCount = 0;
+        for (final int source : sources) {
+            if (source >= 0 && source < MAX_BIT_SOURCE) {
+                maxBitSource = Math.max(maxBitSource, source);
+            } else {
+                otherCount++;
+            }
+        }
+        final long[] bits = new long[(maxBitSource >> 6) + 1];
+        final int[] otherSources = new int[otherCount];
+        otherCount = 0;
+        for (final int source : sources) {
+            if (source >= 0 && source < MAX_BIT_SOURCE) {
+                bits[source >> 6] |= 1L << source;
+            } else {
+                otherSources[otherCount++] = source;
+            }
+        }
+        Arrays.sort(otherSources);
+        return new SourceFilter(bits, otherSources);
+    }
+
+    /**
+     * @return true if the filter matches all sources
+     */
+    public boolean matchesAll() {
+        return bits == null;
+    }
+
+    /**
+     * @param source - message source
+     * @return true if the source is matched by the filter
+     */
+    public boolean matches(final int source) {
+        if (bits == null) {
+            return true;
+        }
+        final int word = source >> 6;
+        if (source >= 0 && word < bits.length) {
+            return (bits[word] & (1L << source)) != 0;
+        }
+        return otherSources.length > 0 && Arrays.binarySearch(otherSources, source) >= 0;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.api;
+
+import java.io.IOException;
+
+/**
+ * Secondary index of a queue that looks up the index of a message by its source and sourceSeq.
+ */
+public interface SourceSeqIndex extends AutoCloseable {
+    long NULL_INDEX = -1;
+
+    /**
+     * Looks up the index of the first message appended with given source and sourceSeq.
+     * @param source - message source
+     * @param sourceSeq - sequence in the source
+     * @return index of the message or NULL_INDEX if no such message has been appended
+     */
+    long indexOf(int source, long sourceSeq);
+
+    /**
+     * Creates a poller starting at the message appended with given source and sourceSeq.
+     * @param pollerFactory - poller factory of the indexed queue
+     * @param options - poller options
+     * @param source - message source
+     * @param sourceSeq - sequence in the source
+     * @return new instance of a poller.
+     * @throws IOException when a backing file could not be read/mapped.
+     * @throws IllegalArgumentException if no message has been appended with given source and sourceSeq
+     */
+    default Poller createPoller(final IndexedPollerFactory pollerFactory,
+                                final Poller.Options options,
+                                final int source,
+                                final long sourceSeq) throws IOException {
+        final long startIndex = indexOf(source, sourceSeq);
+        if (startIndex == NULL_INDEX) {
+            throw new IllegalArgumentException("No message found for source " + source + " and sourceSeq " + sourceSeq);
+        }
+        return pollerFactory.createPoller(options, startIndex);
+    }
+
+    @Override
+    default void close() {}
+}
@@ -0,0 +1,229 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.api;
+
+import org.agrona.collections.Long2LongHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Last sourceSeq per source. Sources are typically small dense ints, hence {@link #create(long)} returns a table
+ * that keeps sources below {@link DenseSourceSeqTable#MAX_DENSE_SOURCE} in an array indexed by source and falls
+ * back to a hash map for other sources. The tables are not thread-safe.
+ */
+public interface SourceSeqTable {
+    /**
+     * Consumer of table entries.
+     */
+    interface EntryConsumer {
+        void accept(int source, long sourceSeq);
+    }
+
+    /**
+     * @param source - source
+     * @return sourceSeq of the source or missingValue if the source is not in the table
+     */
+    long get(int source);
+
+    /**
+     * @param source - source
+     * @param sourceSeq - sourceSeq of the source, missingValue removes the source
+     */
+    void put(int source, long sourceSeq);
+
+    void remove(int source);
+
+    void clear();
+
+    boolean isEmpty();
+
+    /**
+     * Iterates the entries in no particular order.
+     * @param consumer - consumer of the entries
+     */
+    void forEach(EntryConsumer consumer);
+
+    long missingValue();
+
+    /**
+     * @param missingValue - value returned for sources not in the table
+     * @return array backed table with hash fallback for negative and large sources
+     */
+    static SourceSeqTable create(final long missingValue) {
+        return new DenseSourceSeqTable(missingValue);
+    }
+
+    /**
+     * @param missingValue - value returned for sources not in the table
+     * @return hash map backed table
+     */
+    static SourceSeqTable hashed(final long missingValue) {
+        return new HashSourceSeqTable(missingValue);
+    }
+
+    final class DenseSourceSeqTable implements SourceSeqTable {
+        public static final int MAX_DENSE_SOURCE = 1 << 16;
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final long missingValue;
+        private long[] sourceSeqs;
+        private int denseSize;
+        private HashSourceSeqTable sparse;
+
+        public DenseSourceSeqTable(final long missingValue) {
+            this.missingValue = missingValue;
+            this.sourceSeqs = new long[INITIAL_CAPACITY];
+            Arrays.fill(sourceSeqs, missingValue);
+        }
+
+        @Override
+        public long get(final int source) {
+            if (source >= 0 && source < sourceSeqs.length) {
+                return sourceSeqs[source];
+            }
+            return sparse == null ? missingValue : sparse.get(source);
+        }
+
+        @Override
+        public void put(final int source, final long sourceSeq) {
+            if (sourceSeq == missingValue) {
+                remove(source);
+            } else if (source >= 0 && source < MAX_DENSE_SOURCE) {
+                if (source >= sourceSeqs.length) {
+                    grow(source);
+                }
+                if (sourceSeqs[source] == missingValue) {
+                    denseSize++;
+                }
+                sourceSeqs[source] = sourceSeq;
+            } else {
+                if (sparse == null) {
+                    sparse = new HashSourceSeqTable(missingValue);
+                }
+                sparse.put(source, sourceSeq);
+            }
+        }
+
+        private void grow(final int source) {
+            final int oldLength = sourceSeqs.length;
+            final int newLength = Math.min(MAX_DENSE_SOURCE, Math.max(oldLength << 1, Integer.highestOneBit(source) << 1));
+            sourceSeqs = Arrays.copyOf(sourceSeqs, newLength);
+            Arrays.fill(sourceSeqs, oldLength, newLength, missingValue);
+        }
+
+        @Override
+        public void remove(final int source) {
+            if (source >= 0 && source < sourceSeqs.length) {
+                if (sourceSeqs[source] != missingValue) {
+                    sourceSeqs[source] = missingValue;
+                    denseSize--;
+                }
+            } else if (sparse != null) {
+                sparse.remove(source);
+            }
+        }
+
+        @Override
+        public void clear() {
+            if (denseSize > 0) {
+                Arrays.fill(sourceSeqs, missingValue);
+                denseSize = 0;
+            }
+            if (sparse != null) {
+                sparse.clear();
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return denseSize == 0 && (sparse == null || sparse.isEmpty());
+        }
+
+        @Override
+        public void forEach(final EntryConsumer consumer) {
+            for (int source = 0, found = 0; found < denseSize; source++) {
+                final long sourceSeq = sourceSeqs[source];
+                if (sourceSeq != missingValue) {
+                    found++;
+                    consumer.accept(source, sourceSeq);
+                }
+            }
+            if (sparse != null) {
+                sparse.forEach(consumer);
+            }
+        }
+
+        @Override
+        public long missingValue() {
+            return missingValue;
+        }
+    }
+
+    final class HashSourceSeqTable implements SourceSeqTable {
+        private final Long2LongHashMap sourceSeqMap;
+
+        public HashSourceSeqTable(final long missingValue) {
+            this.sourceSeqMap = new Long2LongHashMap(missingValue);
+        }
+
+        @Override
+        public long get(final int source) {
+            return sourceSeqMap.get(source);
+        }
+
+        @Override
+        public void put(final int source, final long sourceSeq) {
+            if (sourceSeq == sourceSeqMap.missingValue()) {
+                sourceSeqMap.remove(source);
+            } else {
+                sourceSeqMap.put(source, sourceSeq);
+            }
+        }
+
+        @Override
+        public void remove(final int source) {
+            sourceSeqMap.remove(source);
+        }
+
+        @Override
+        public void clear() {
+            sourceSeqMap.clear();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return sourceSeqMap.isEmpty();
+        }
+
+        @Override
+        public void forEach(final EntryConsumer consumer) {
+            sourceSeqMap.longForEach((source, sourceSeq) -> consumer.accept((int) source, sourceSeq));
+        }
+
+        @Override
+        public long missingValue() {
+            return sourceSeqMap.missingValue();
+        }
+    }
+}
@@ -23,16 +23,16 @@
  */
 package org.tools4j.eventsourcing.common;
 
-import org.agrona.collections.Long2LongHashMap;
 import org.tools4j.eventsourcing.api.IndexConsumer;
 import org.tools4j.eventsourcing.api.ProgressState;
+import org.tools4j.eventsourcing.api.SourceSeqTable;
 
 import java.util.Objects;
 import java.util.function.LongSupplier;
 
 public final class DefaultProgressState implements ProgressState, IndexConsumer {
     private static final long MISSING_VALUE = -1;
-    private final Long2LongHashMap sourceSeqMap;
+    private final SourceSeqTable sourceSeqMap;
     private final LongSupplier systemNanoClock;
 
     private long id = NOT_INITIALISED;
@@ -44,8 +44,12 @@ public final class DefaultProgressState implements ProgressState, IndexConsumer
     private boolean eventPollerResetRequired = false;
 
     public DefaultProgressState(final LongSupplier systemNanoClock) {
+        this(systemNanoClock, SourceSeqTable.create(MISSING_VALUE));
+    }
+
+    public DefaultProgressState(final LongSupplier systemNanoClock, final SourceSeqTable sourceSeqTable) {
         this.systemNanoClock = Objects.requireNonNull(systemNanoClock);
-        this.sourceSeqMap = new Long2LongHashMap(MISSING_VALUE);
+        this.sourceSeqMap = Objects.requireNonNull(sourceSeqTable);
         this.eventTimeNanos = 0;
     }
 
@@ -64,6 +68,35 @@ public final class DefaultProgressState implements ProgressState, IndexConsumer
         this.ingestionTimeNanos = systemNanoClock.getAsLong();
     }
 
+    /**
+     * Restores the sourceSeq of the source, for example when uncommitted commands are rolled back.
+     * @param source - source
+     * @param sourceSeq - sourceSeq to restore, or -1 if the source had none
+     */
+    public void restoreSourceSeq(final int source, final long sourceSeq) {
+        if (sourceSeq == MISSING_VALUE) {
+            sourceSeqMap.remove(source);
+        } else {
+            sourceSeqMap.put(source, sourceSeq);
+        }
+    }
+
+    /**
+     * Restores the position without changing the sourceSeqs, for example to the last committed entry when
+     * uncommitted commands are rolled back.
+     */
+    public void restorePosition(final long id,
+                                final int source,
+                                final long sourceSeq,
+                                final long eventTimeNanos,
+                                final long ingestionTimeNanos) {
+        this.id = id;
+        this.source = source;
+        this.sourceSeq = sourceSeq;
+        this.eventTimeNanos = eventTimeNanos;
+        this.ingestionTimeNanos = ingestionTimeNanos;
+    }
+
     @Override
     public long id() {
         return id;
@@ -0,0 +1,200 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.tools4j.eventsourcing.api.IndexedAppender;
+import org.tools4j.eventsourcing.api.SourceSeqTable;
+import org.tools4j.eventsourcing.api.Transaction;
+import org.tools4j.eventsourcing.sbe.GroupPayloadEncoder;
+import org.tools4j.eventsourcing.sbe.GroupSizeEncodingEncoder;
+import org.tools4j.eventsourcing.sbe.MessageHeaderEncoder;
+
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Transaction that groups the payloads of up to maxCommands committed transactions, or of the transactions
+ * committed within maxDelayNanos since the first one in the group, into a single SBE GroupPayload message.
+ * Every transaction keeps its own source, sourceSeq and eventTimeNanos in the message, the group is appended
+ * with the details of the last transaction in the group.
+ */
+public final class GroupCommitAppender implements Transaction {
+    private static final int MAX_GROUP_COUNT = 65534;
+
+    private final IndexedAppender delegateAppender;
+    private final MutableDirectBuffer messageEncodingBuffer;
+    private final int maxCommands;
+    private final long maxDelayNanos;
+    private final LongSupplier systemNanoClock;
+
+    private final MessageHeaderEncoder messageHeaderEncoder = new MessageHeaderEncoder();
+    private final GroupPayloadEncoder groupPayloadEncoder = new GroupPayloadEncoder();
+    private final GroupSizeEncodingEncoder groupSizeEncoder = new GroupSizeEncodingEncoder();
+    private final SourceSeqTable groupedSourceSeqMap = SourceSeqTable.create(IndexedAppender.NULL_INDEX);
+
+    private GroupPayloadEncoder.CommandsEncoder commandsEncoder;
+    private GroupPayloadEncoder.CommandsEncoder.EntriesEncoder entriesEncoder;
+    private int headerLength;
+    private int limitBeforeCommands;
+    private int limitBeforeCommand;
+    private int limitBeforeEntries;
+    private int commands;
+    private int entries;
+    private long groupStartNanos;
+
+    private int source;
+    private long sourceSeq;
+    private long eventTimeNanos;
+    private boolean allowEmpty;
+
+    private int lastSource;
+    private long lastSourceSeq;
+    private long lastEventTimeNanos;
+
+    public GroupCommitAppender(final IndexedAppender delegateAppender,
+                               final MutableDirectBuffer messageEncodingBuffer,
+                               final int maxCommands,
+                               final long maxDelayNanos,
+                               final LongSupplier systemNanoClock) {
+        if (maxCommands <= 0 || maxCommands > MAX_GROUP_COUNT) {
+            throw new IllegalArgumentException("maxCommands " + maxCommands + " must be in [1, " + MAX_GROUP_COUNT + "]");
+        }
+        this.delegateAppender = Objects.requireNonNull(delegateAppender);
+        this.messageEncodingBuffer = Objects.requireNonNull(messageEncodingBuffer);
+        this.maxCommands = maxCommands;
+        this.maxDelayNanos = maxDelayNanos;
+        this.systemNanoClock = Objects.requireNonNull(systemNanoClock);
+    }
+
+    @Override
+    public void init(final int source, final long sourceSeq, final long eventTimeNanos, final boolean allowEmpty) {
+        if (commands == 0) {
+            headerLength = messageHeaderEncoder.wrap(messageEncodingBuffer, 0)
+                    .blockLength(GroupPayloadEncoder.BLOCK_LENGTH)
+                    .schemaId(GroupPayloadEncoder.SCHEMA_ID)
+                    .version(GroupPayloadEncoder.SCHEMA_VERSION)
+                    .templateId(GroupPayloadEncoder.TEMPLATE_ID)
+                    .encodedLength();
+            groupPayloadEncoder.wrap(messageEncodingBuffer, headerLength);
+            limitBeforeCommands = groupPayloadEncoder.limit();
+            commandsEncoder = groupPayloadEncoder.commandsCount(MAX_GROUP_COUNT);
+            groupStartNanos = systemNanoClock.getAsLong();
+        }
+        this.source = source;
+        this.sourceSeq = sourceSeq;
+        this.eventTimeNanos = eventTimeNanos;
+        this.allowEmpty = allowEmpty;
+        this.entries = 0;
+
+        limitBeforeCommand = groupPayloadEncoder.limit();
+        commandsEncoder.next()
+                .source(source)
+                .sourceSeq(sourceSeq)
+                .eventTimeNanos(eventTimeNanos);
+        limitBeforeEntries = groupPayloadEncoder.limit();
+        entriesEncoder = commandsEncoder.entriesCount(MAX_GROUP_COUNT);
+    }
+
+    @Override
+    public void accept(final DirectBuffer buffer, final int offset, final int length) {
+        entriesEncoder = entriesEncoder.next().putValue(buffer, offset, length);
+        entries++;
+    }
+
+    /**
+     * Adds the transaction to the group and appends the group if it is full or due.
+     * @return true if the transaction is added to the group
+     */
+    @Override
+    public boolean commit() {
+        if (!allowEmpty && entries == 0) {
+            if (commands > 0) {
+                //discard the empty transaction by re-positioning the commands encoder behind the last grouped one
+                groupPayloadEncoder.limit(limitBeforeCommands);
+                commandsEncoder = groupPayloadEncoder.commandsCount(MAX_GROUP_COUNT);
+                for (int i = 0; i < commands; i++) {
+                    commandsEncoder.next();
+                }
+                groupPayloadEncoder.limit(limitBeforeCommand);
+            }
+            return false;
+        }
+        groupSizeEncoder.wrap(messageEncodingBuffer, limitBeforeEntries).numInGroup(entries);
+        commands++;
+        lastSource = source;
+        lastSourceSeq = sourceSeq;
+        lastEventTimeNanos = eventTimeNanos;
+        groupedSourceSeqMap.put(source, sourceSeq);
+        if (commands >= maxCommands || flushDue()) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Appends the group if maxDelayNanos has elapsed since the first transaction in the group. To be invoked
+     * when no further transactions are committed, so that the group does not wait for the next transaction.
+     * @return true if the group was appended
+     */
+    public boolean flushIfDue() {
+        return commands > 0 && flushDue() && flush();
+    }
+
+    /**
+     * Appends the group of committed transactions.
+     * @return true if the group was appended, false if there were no committed transactions
+     */
+    public boolean flush() {
+        if (commands == 0) {
+            return false;
+        }
+        groupSizeEncoder.wrap(messageEncodingBuffer, limitBeforeCommands).numInGroup(commands);
+        delegateAppender.accept(lastSource, lastSourceSeq, lastEventTimeNanos,
+                messageEncodingBuffer, 0, headerLength + groupPayloadEncoder.encodedLength());
+        commands = 0;
+        // sourceSeqs of appended commands are covered by the completed progress state of the execution queue
+        groupedSourceSeqMap.clear();
+        return true;
+    }
+
+    /**
+     * Discards the group of committed transactions without appending it, for example when the transactions are
+     * rolled back to be executed again.
+     */
+    public void discard() {
+        commands = 0;
+        groupedSourceSeqMap.clear();
+    }
+
+    private boolean flushDue() {
+        return systemNanoClock.getAsLong() - groupStartNanos >= maxDelayNanos;
+    }
+
+    @Override
+    public long lastSourceSeq(final int source) {
+        return Math.max(groupedSourceSeqMap.get(source), delegateAppender.lastSourceSeq(source));
+    }
+}
@@ -34,10 +34,11 @@ import java.util.Objects;
 
 /**
  * Appender that encodes multiple messages with SBE MultiPayloadEncoder and delegates appending of the encoded message to
- * delegateAppender.
+ * delegateAppender. The number of entries is limited by the SBE group size encoding only, messages exceeding the
+ * capacity of messageEncodingBuffer require an expandable buffer, e.g. {@link org.agrona.ExpandableDirectByteBuffer}.
  */
 public final class MultiPayloadAppender implements Transaction {
-    private static final int MAX_ENTRIES = 10;
+    private static final int MAX_ENTRIES = 65534;
 
     private final IndexedAppender delegateAppender;
     private final MutableDirectBuffer messageEncodingBuffer;
@@ -105,6 +106,9 @@ public final class MultiPayloadAppender implements Transaction {
 
     @Override
     public void accept(final DirectBuffer buffer, final int offset, final int length) {
+        if (entries == MAX_ENTRIES) {
+            throw new IllegalStateException("Transaction exceeds max number of entries " + MAX_ENTRIES);
+        }
         entriesEncoder = entriesEncoder.next().putValue(buffer, offset, length);
         entries++;
     }
@@ -0,0 +1,226 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.DirectBuffer;
+import org.tools4j.eventsourcing.api.*;
+import org.tools4j.nobark.loop.Step;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Execution queue that routes commands by key to one of several partition execution queues. Every partition
+ * executes its commands independently, so {@link #pipelineSteps()} returns the steps of all partitions to be
+ * performed by separate threads. Events are polled from all partitions in turn, ordered within every partition;
+ * indexes passed to poller options are indexes within the partition.
+ */
+public final class PartitionedExecutionQueue implements ExecutionQueue {
+    private final ExecutionQueue[] partitions;
+    private final IndexedAppender appender;
+    private final Step executorStep;
+    private final List<Step> pipelineSteps;
+
+    public PartitionedExecutionQueue(final List<? extends ExecutionQueue> partitions,
+                                     final KeyExtractor keyExtractor) {
+        Objects.requireNonNull(keyExtractor);
+        if (partitions.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition is required");
+        }
+        this.partitions = partitions.toArray(new ExecutionQueue[0]);
+        this.appender = new PartitioningAppender(this.partitions, keyExtractor);
+
+        final List<Step> steps = new ArrayList<>();
+        for (final ExecutionQueue partition : this.partitions) {
+            steps.addAll(partition.pipelineSteps());
+        }
+        this.pipelineSteps = Collections.unmodifiableList(steps);
+
+        final ExecutionQueue[] executionQueues = this.partitions;
+        this.executorStep = () -> {
+            boolean done = false;
+            for (final ExecutionQueue partition : executionQueues) {
+                done |= partition.executorStep().perform();
+            }
+            return done;
+        };
+    }
+
+    /**
+     * @return number of partitions
+     */
+    public int partitions() {
+        return partitions.length;
+    }
+
+    /**
+     * @param partition - partition index
+     * @return execution queue of the partition
+     */
+    public ExecutionQueue partition(final int partition) {
+        return partitions[partition];
+    }
+
+    @Override
+    public IndexedAppender appender() {
+        return appender;
+    }
+
+    @Override
+    public Step executorStep() {
+        return executorStep;
+    }
+
+    @Override
+    public List<Step> pipelineSteps() {
+        return pipelineSteps;
+    }
+
+    /**
+     * Creates a poller merging the events of all partitions.
+     * @param options - poller options applied to every partition, a cursor is not supported as
+     *                  indexes are per partition
+     * @return merged poller
+     * @throws IOException when a backing file could not be read/mapped.
+     */
+    @Override
+    public Poller createPoller(final Poller.Options options) throws IOException {
+        if (options.cursor() != PollerCursor.NONE) {
+            throw new IllegalArgumentException("cursor is not supported by partitioned execution queue poller");
+        }
+        final Poller[] pollers = new Poller[partitions.length];
+        try {
+            for (int i = 0; i < partitions.length; i++) {
+                pollers[i] = partitions[i].createPoller(options);
+            }
+        } catch (final IOException | RuntimeException e) {
+            for (final Poller poller : pollers) {
+                if (poller != null) {
+                    poller.close();
+                }
+            }
+            throw e;
+        }
+        return new MergingPoller(pollers);
+    }
+
+    @Override
+    public boolean leader() {
+        for (final ExecutionQueue partition : partitions) {
+            if (!partition.leader()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void init() {
+        for (final ExecutionQueue partition : partitions) {
+            partition.init();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (final ExecutionQueue partition : partitions) {
+            partition.close();
+        }
+    }
+
+    private static final class PartitioningAppender implements IndexedAppender {
+        private final ExecutionQueue[] partitions;
+        private final KeyExtractor keyExtractor;
+
+        PartitioningAppender(final ExecutionQueue[] partitions, final KeyExtractor keyExtractor) {
+            this.partitions = Objects.requireNonNull(partitions);
+            this.keyExtractor = Objects.requireNonNull(keyExtractor);
+        }
+
+        @Override
+        public void accept(final int source, final long sourceSeq, final long eventTimeNanos,
+                           final DirectBuffer buffer, final int offset, final int length) {
+            final int key = keyExtractor.key(source, sourceSeq, buffer, offset, length);
+            partitions[Math.floorMod(key, partitions.length)].appender()
+                    .accept(source, sourceSeq, eventTimeNanos, buffer, offset, length);
+        }
+
+        @Override
+        public long lastSourceSeq(final int source) {
+            long lastSourceSeq = NULL_INDEX;
+            for (final ExecutionQueue partition : partitions) {
+                lastSourceSeq = Math.max(lastSourceSeq, partition.appender().lastSourceSeq(source));
+            }
+            return lastSourceSeq;
+        }
+    }
+
+    /**
+     * Polls the partition pollers in turn, starting with the partition following the one polled last.
+     */
+    private static final class MergingPoller implements Poller {
+        private final Poller[] pollers;
+        private int next;
+
+        MergingPoller(final Poller[] pollers) {
+            this.pollers = Objects.requireNonNull(pollers);
+        }
+
+        @Override
+        public int poll(final MessageConsumer consumer) {
+            return poll(consumer, 1);
+        }
+
+        @Override
+        public int poll(final MessageConsumer consumer, final int maxMessages) {
+            int done = 0;
+            for (int i = 0; i < pollers.length && done < maxMessages; i++) {
+                final Poller poller = pollers[next];
+                next = next + 1 == pollers.length ? 0 : next + 1;
+                done += poller.poll(consumer, maxMessages - done);
+            }
+            return done;
+        }
+
+        @Override
+        public boolean messageAvailable() {
+            for (final Poller poller : pollers) {
+                if (poller.messageAvailable()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            for (final Poller poller : pollers) {
+                poller.close();
+            }
+        }
+    }
+}
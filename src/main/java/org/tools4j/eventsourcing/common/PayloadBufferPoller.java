@@ -25,17 +25,51 @@ package org.tools4j.eventsourcing.common;
 
 import org.agrona.DirectBuffer;
 import org.tools4j.eventsourcing.api.BufferPoller;
+import org.tools4j.eventsourcing.api.IndexConsumer;
 import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.sbe.GroupPayloadDecoder;
 import org.tools4j.eventsourcing.sbe.MessageHeaderDecoder;
 import org.tools4j.eventsourcing.sbe.MultiPayloadDecoder;
 import org.tools4j.eventsourcing.sbe.NoopDecoder;
 import org.tools4j.eventsourcing.sbe.SinglePayloadDecoder;
 
-public final class PayloadBufferPoller implements BufferPoller {
+import java.util.Objects;
+
+/**
+ * Polls payloads of SinglePayload, MultiPayload and GroupPayload messages. The payloads of every command in a
+ * GroupPayload message are enclosed by onGroupedCommandStart and onGroupedCommandComplete invocations with the
+ * index recorded by {@link #accept(long, int, long, long)} and the source details of the command.
+ */
+public final class PayloadBufferPoller implements BufferPoller, IndexConsumer {
+    private static final long NULL_INDEX = -1;
 
     private final MessageHeaderDecoder messageHeaderDecoder = new MessageHeaderDecoder();
     private final SinglePayloadDecoder singlePayloadBodyDecoder = new SinglePayloadDecoder();
     private final MultiPayloadDecoder multiPayloadDecoder = new MultiPayloadDecoder();
+    private final GroupPayloadDecoder groupPayloadDecoder = new GroupPayloadDecoder();
+
+    private final IndexConsumer onGroupedCommandStart;
+    private final IndexConsumer onGroupedCommandComplete;
+
+    private long index = NULL_INDEX;
+
+    public PayloadBufferPoller() {
+        this(IndexConsumer.noop(), IndexConsumer.noop());
+    }
+
+    public PayloadBufferPoller(final IndexConsumer onGroupedCommandStart,
+                               final IndexConsumer onGroupedCommandComplete) {
+        this.onGroupedCommandStart = Objects.requireNonNull(onGroupedCommandStart);
+        this.onGroupedCommandComplete = Objects.requireNonNull(onGroupedCommandComplete);
+    }
+
+    /**
+     * Records the index of the message to be polled next.
+     */
+    @Override
+    public void accept(final long index, final int source, final long sourceSeq, final long eventTimeNanos) {
+        this.index = index;
+    }
 
     @Override
     public int poll(final DirectBuffer srcBuffer, final int srcOffset, final int srcLength, final MessageConsumer consumer) {
@@ -62,6 +96,24 @@ public final class PayloadBufferPoller implements BufferPoller {
                 done++;
             }
             return Math.max(done, 1); //empty multiPayload is treated at one message done.
+        } else if (messageHeaderDecoder.templateId() == GroupPayloadDecoder.TEMPLATE_ID) {
+            groupPayloadDecoder.wrap(srcBuffer, srcOffset + messageHeaderDecoder.encodedLength(),
+                    messageHeaderDecoder.blockLength(), messageHeaderDecoder.version());
+            for (final GroupPayloadDecoder.CommandsDecoder commandsDecoder : groupPayloadDecoder.commands()) {
+                final int source = commandsDecoder.source();
+                final long sourceSeq = commandsDecoder.sourceSeq();
+                final long eventTimeNanos = commandsDecoder.eventTimeNanos();
+                onGroupedCommandStart.accept(index, source, sourceSeq, eventTimeNanos);
+                for (final GroupPayloadDecoder.CommandsDecoder.EntriesDecoder entriesDecoder : commandsDecoder.entries()) {
+                    consumer.accept(groupPayloadDecoder.buffer(),
+                            groupPayloadDecoder.limit() + GroupPayloadDecoder.CommandsDecoder.EntriesDecoder.valueHeaderLength(),
+                            entriesDecoder.valueLength());
+                    groupPayloadDecoder.limit(groupPayloadDecoder.limit() + GroupPayloadDecoder.CommandsDecoder.EntriesDecoder.valueHeaderLength() + entriesDecoder.valueLength());
+                    done++;
+                }
+                onGroupedCommandComplete.accept(index, source, sourceSeq, eventTimeNanos);
+            }
+            return Math.max(done, 1); //group of empty commands is treated at one message done.
         } else if (messageHeaderDecoder.templateId() == NoopDecoder.TEMPLATE_ID) {
             //do nothing
             return 0;
@@ -32,15 +32,29 @@ import java.util.Objects;
 public final class PollingProcessStep implements Step {
     private final Poller inputPoller;
     private final MessageConsumer consumer;
+    private final int drainLimit;
 
     public PollingProcessStep(final Poller inputPoller, final MessageConsumer consumer) {
+        this(inputPoller, consumer, 1);
+    }
+
+    /**
+     * @param inputPoller - input poller
+     * @param consumer - consumer of polled messages
+     * @param drainLimit - max number of index entries polled per step
+     */
+    public PollingProcessStep(final Poller inputPoller, final MessageConsumer consumer, final int drainLimit) {
+        if (drainLimit <= 0) {
+            throw new IllegalArgumentException("drainLimit " + drainLimit + " must be positive");
+        }
         this.inputPoller = Objects.requireNonNull(inputPoller);
         this.consumer = Objects.requireNonNull(consumer);
+        this.drainLimit = drainLimit;
     }
 
     @Override
     public boolean perform() {
-        final int processed = inputPoller.poll(consumer);
+        final int processed = inputPoller.poll(consumer, drainLimit);
         return processed > 0;
     }
 }
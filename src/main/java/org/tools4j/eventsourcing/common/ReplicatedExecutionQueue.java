@@ -23,12 +23,12 @@
  */
 package org.tools4j.eventsourcing.common;
 
-import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.MutableDirectBuffer;
 import org.tools4j.eventsourcing.api.*;
 import org.tools4j.nobark.loop.Step;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.function.BooleanSupplier;
 import java.util.function.LongSupplier;
@@ -42,6 +42,14 @@ public final class ReplicatedExecutionQueue implements ExecutionQueue {
     private final Poller commandExecutionPoller;
     private final Poller committedEventApplyingPoller;
 
+    private final DefaultProgressState currentProgressState;
+    private final DefaultProgressState completedProgressState;
+    private final Runnable onStateReset;
+    private final MessageConsumer uncommittedEventUndoer;
+    private final UncommittedCommands uncommittedCommands;
+    private final CommittedPosition committedPosition;
+    private final GroupCommitAppender groupCommitAppender;
+
     public ReplicatedExecutionQueue(final IndexedQueue commandQueue,
                                     final EventQueueFactory eventQueueFactory,
                                     final LongSupplier systemNanoClock,
@@ -53,34 +61,76 @@ public final class ReplicatedExecutionQueue implements ExecutionQueue {
                                     final EventApplierFactory eventApplierFactory,
                                     final Runnable onStateReset,
                                     final int encodingBufferSize) throws IOException {
+        this(commandQueue, eventQueueFactory, systemNanoClock,
+                onStartCommandExecutionHandler, onCompleteCommandExecutionHandler,
+                onStartEventApplyingHandler, onCompletedEventApplyingHandler,
+                commandExecutorFactory, eventApplierFactory, onStateReset, encodingBufferSize, 1, 0);
+    }
+
+    /**
+     * With maxGroupCommands greater than 1, the events of up to maxGroupCommands commands, or of the commands
+     * executed within maxGroupDelayNanos since the first one in the group, are appended as a single entry,
+     * see {@link GroupCommitAppender}.
+     *
+     * When uncommitted events are truncated from the event log and the event applier factory
+     * {@link EventApplierFactory#supportsUndo() supports undo}, the events of the uncommitted
+     * commands are undone and the commands executed again, otherwise the state is reset and replayed.
+     *
+     * @param maxGroupCommands - max number of commands whose events are appended as a single entry
+     * @param maxGroupDelayNanos - max time since the first command of a group after which the group is appended
+     */
+    public ReplicatedExecutionQueue(final IndexedQueue commandQueue,
+                                    final EventQueueFactory eventQueueFactory,
+                                    final LongSupplier systemNanoClock,
+                                    final IndexConsumer onStartCommandExecutionHandler,
+                                    final IndexConsumer onCompleteCommandExecutionHandler,
+                                    final IndexConsumer onStartEventApplyingHandler,
+                                    final IndexConsumer onCompletedEventApplyingHandler,
+                                    final CommandExecutorFactory commandExecutorFactory,
+                                    final EventApplierFactory eventApplierFactory,
+                                    final Runnable onStateReset,
+                                    final int encodingBufferSize,
+                                    final int maxGroupCommands,
+                                    final long maxGroupDelayNanos) throws IOException {
         this.commandQueue = Objects.requireNonNull(commandQueue);
 
-        final DefaultProgressState currentProgressState = new DefaultProgressState(systemNanoClock);
-        final DefaultProgressState completedProgressState = new DefaultProgressState(systemNanoClock);
+        this.currentProgressState = new DefaultProgressState(systemNanoClock);
+        this.completedProgressState = new DefaultProgressState(systemNanoClock);
+        this.onStateReset = Objects.requireNonNull(onStateReset);
+        this.uncommittedEventUndoer = eventApplierFactory.supportsUndo() ?
+                eventApplierFactory.createUndo(currentProgressState, completedProgressState) :
+                MessageConsumer.NO_OP;
+        this.uncommittedCommands = new UncommittedCommands(eventApplierFactory.supportsUndo());
+        this.committedPosition = new CommittedPosition(systemNanoClock);
 
-
-        this.eventQueue = eventQueueFactory.create(() -> {
-            currentProgressState.reset();
-            completedProgressState.reset();
-            onStateReset.run();
-        });
+        this.eventQueue = eventQueueFactory.create(this::onEventLogTruncated);
 
         final BooleanSupplier leadership = eventQueue::leader;
 
-        final Transaction eventAppender = new MultiPayloadAppender(eventQueue.appender(), new UnsafeBuffer(ByteBuffer.allocateDirect(encodingBufferSize)));
+        final MutableDirectBuffer encodingBuffer = new ExpandableDirectByteBuffer(encodingBufferSize);
+        this.groupCommitAppender = maxGroupCommands > 1 ?
+                new GroupCommitAppender(eventQueue.appender(), encodingBuffer, maxGroupCommands, maxGroupDelayNanos, systemNanoClock) :
+                null;
+        final Transaction eventAppender = groupCommitAppender != null ? groupCommitAppender :
+                new MultiPayloadAppender(eventQueue.appender(), encodingBuffer);
 
         final MessageConsumer uncommittedEventApplier = eventApplierFactory.create(
                 currentProgressState,
                 completedProgressState);
 
         final MessageConsumer appenderAndApplierOfUncommittedEvents =
-                eventAppender.andThen(uncommittedEventApplier);
+                eventAppender.andThen(uncommittedEventApplier).andThen(uncommittedCommands);
 
         this.commandExecutionPoller = commandQueue.createPoller(
                 Poller.Options.builder()
                         .skipWhen(
                             IndexPredicate.isLeader(leadership)
                             .and(
+                                    groupCommitAppender != null ?
+                                    // event log index only records the last command of a group, applied groups
+                                    // update completedProgressState for every command
+                                    (index, source, sourceSeq, eventTimeNanos) -> sourceSeq <= eventAppender.lastSourceSeq(source) ||
+                                            sourceSeq <= completedProgressState.sourceSeq(source) :
                                     (index, source, sourceSeq, eventTimeNanos) -> sourceSeq <= eventQueue.appender().lastSourceSeq(source)
                             )
                             .or(
@@ -94,7 +144,9 @@ public final class ReplicatedExecutionQueue implements ExecutionQueue {
                             IndexPredicate.isNotLeader(leadership)
                         )
                         .onProcessingStart(
-                                currentProgressState
+                                ((IndexConsumer) (index, source, sourceSeq, eventTimeNanos) ->
+                                        uncommittedCommands.begin(index, source, sourceSeq, completedProgressState.sourceSeq(source)))
+                                        .andThen(currentProgressState)
                                         .andThen(IndexConsumer.transactionInit(eventAppender))
                                         .andThen(onStartCommandExecutionHandler))
                         .onProcessingComplete(
@@ -110,27 +162,34 @@ public final class ReplicatedExecutionQueue implements ExecutionQueue {
                 currentProgressState,
                 completedProgressState);
 
-        final Step commandExecutionStep = new PollingProcessStep(this.commandExecutionPoller, commandExecutor);
+        final Step commandPollingStep = new PollingProcessStep(this.commandExecutionPoller, commandExecutor);
+        final Step commandExecutionStep = groupCommitAppender != null ?
+                () -> commandPollingStep.perform() | groupCommitAppender.flushIfDue() :
+                commandPollingStep;
 
         final MessageConsumer committedEventApplier = eventApplierFactory.create(
                 currentProgressState,
                 completedProgressState);
 
+        final PayloadBufferPoller payloadBufferPoller = new PayloadBufferPoller(currentProgressState, completedProgressState);
+
         this.committedEventApplyingPoller = eventQueue.createPoller(
                 Poller.Options.builder()
                         .skipWhen(
                                 IndexPredicate.isNotAheadOf(completedProgressState))
                         .resetWhen(currentProgressState::eventPollerResetRequired)
                         .onProcessingStart(
-                                currentProgressState.andThen(onStartEventApplyingHandler))
+                                currentProgressState.andThen(payloadBufferPoller).andThen(onStartEventApplyingHandler))
                         .onProcessingComplete(
-                                completedProgressState.andThen(onCompletedEventApplyingHandler))
+                                completedProgressState.andThen(committedPosition).andThen(onCompletedEventApplyingHandler))
                         .onProcessingSkipped(
                                 // skip is equivalent to committed as we apply changes to state in command executor and skip when
                                 // event matches command source/sourceSeq
-                                currentProgressState.andThen(completedProgressState))
+                                currentProgressState.andThen(completedProgressState).andThen(committedPosition)
+                                        .andThen((index, source, sourceSeq, eventTimeNanos) ->
+                                                uncommittedCommands.committed(source, sourceSeq)))
                         .onReset(currentProgressState::resetEventPoller)
-                        .bufferPoller(new PayloadBufferPoller())
+                        .bufferPoller(payloadBufferPoller)
                         .build()
         );
 
@@ -142,6 +201,37 @@ public final class ReplicatedExecutionQueue implements ExecutionQueue {
         this.executorStep = () -> step.perform() | eventQueue.executorStep().perform();
     }
 
+    /**
+     * Truncation only removes uncommitted entries from the event log, so the state is only affected by the
+     * uncommitted commands executed by this server. These are rolled back and executed again if the event
+     * applier supports undo, otherwise the state is reset and replayed.
+     * On rollback, the progress states are restored to the sourceSeqs before the uncommitted commands and
+     * to the position of the last committed entry.
+     */
+    private void onEventLogTruncated() {
+        if (groupCommitAppender != null) {
+            groupCommitAppender.discard();
+        }
+        if (uncommittedCommands.isEmpty()) {
+            return;
+        }
+        if (uncommittedCommands.canRollback()) {
+            final long firstCommandIndex = uncommittedCommands.rollback(uncommittedEventUndoer, (source, sourceSeq) -> {
+                currentProgressState.restoreSourceSeq(source, sourceSeq);
+                completedProgressState.restoreSourceSeq(source, sourceSeq);
+            });
+            committedPosition.restore(currentProgressState);
+            committedPosition.restore(completedProgressState);
+            commandExecutionPoller.seek(firstCommandIndex);
+        } else {
+            uncommittedCommands.clear();
+            committedPosition.reset();
+            currentProgressState.reset();
+            completedProgressState.reset();
+            onStateReset.run();
+        }
+    }
+
     @Override
     public IndexedAppender appender() {
         return commandQueue.appender();
@@ -174,4 +264,42 @@ public final class ReplicatedExecutionQueue implements ExecutionQueue {
         commandExecutionPoller.close();
         committedEventApplyingPoller.close();
     }
+
+    /**
+     * Position of the last committed entry applied or skipped by the committed event applying poller.
+     */
+    private static final class CommittedPosition implements IndexConsumer {
+        private final LongSupplier systemNanoClock;
+        private long id;
+        private int source;
+        private long sourceSeq;
+        private long eventTimeNanos;
+        private long ingestionTimeNanos;
+
+        CommittedPosition(final LongSupplier systemNanoClock) {
+            this.systemNanoClock = Objects.requireNonNull(systemNanoClock);
+            reset();
+        }
+
+        @Override
+        public void accept(final long id, final int source, final long sourceSeq, final long eventTimeNanos) {
+            this.id = id;
+            this.source = source;
+            this.sourceSeq = sourceSeq;
+            this.eventTimeNanos = eventTimeNanos;
+            this.ingestionTimeNanos = systemNanoClock.getAsLong();
+        }
+
+        void restore(final DefaultProgressState progressState) {
+            progressState.restorePosition(id, source, sourceSeq, eventTimeNanos, ingestionTimeNanos);
+        }
+
+        void reset() {
+            id = ProgressState.NOT_INITIALISED;
+            source = ProgressState.NOT_INITIALISED;
+            sourceSeq = ProgressState.NOT_INITIALISED;
+            eventTimeNanos = ProgressState.NOT_INITIALISED;
+            ingestionTimeNanos = ProgressState.NOT_INITIALISED;
+        }
+    }
 }
@@ -33,7 +33,8 @@ import java.util.Objects;
 
 /**
  * Appender that encodes given message with SBE SinglePayloadEncoder and delegates appending of encoded message to
- * delegateAppender.
+ * delegateAppender. The message is encoded in place if the delegateAppender can claim it, otherwise it is encoded
+ * into messageEncodingBuffer and copied.
  */
 public final class SinglePayloadAppender implements IndexedAppender {
 
@@ -57,20 +58,37 @@ public final class SinglePayloadAppender implements IndexedAppender {
                        final int offset,
                        final int length) {
 
-        final int headerLength = messageHeaderEncoder.wrap(messageEncodingBuffer, 0)
+        final int messageLength = MessageHeaderEncoder.ENCODED_LENGTH + SinglePayloadEncoder.BLOCK_LENGTH
+                + SinglePayloadEncoder.valueHeaderLength() + length;
+
+        final MutableDirectBuffer claimedBuffer = delegateAppender.tryClaim(messageLength);
+        if (claimedBuffer != null) {
+            try {
+                encode(claimedBuffer, buffer, offset, length);
+            } catch (final RuntimeException e) {
+                delegateAppender.abort();
+                throw e;
+            }
+            delegateAppender.commit(source, sourceSeq, eventTimeNanos);
+        } else {
+            encode(messageEncodingBuffer, buffer, offset, length);
+            delegateAppender.accept(source, sourceSeq, eventTimeNanos, messageEncodingBuffer, 0, messageLength);
+        }
+    }
+
+    private void encode(final MutableDirectBuffer encodingBuffer,
+                        final DirectBuffer buffer,
+                        final int offset,
+                        final int length) {
+        final int headerLength = messageHeaderEncoder.wrap(encodingBuffer, 0)
                 .blockLength(SinglePayloadEncoder.BLOCK_LENGTH)
                 .schemaId(SinglePayloadEncoder.SCHEMA_ID)
                 .version(SinglePayloadEncoder.SCHEMA_VERSION)
                 .templateId(SinglePayloadEncoder.TEMPLATE_ID)
                 .encodedLength();
 
-        int messageLength = singlePayloadEncoder.wrap(messageEncodingBuffer, headerLength)
-                .putValue(buffer, offset, length)
-                .encodedLength() + headerLength;
-
-        //messageLength = BitUtil.align(messageLength, 64);
-
-        delegateAppender.accept(source, sourceSeq, eventTimeNanos, messageEncodingBuffer, 0, messageLength);
+        singlePayloadEncoder.wrap(encodingBuffer, headerLength)
+                .putValue(buffer, offset, length);
     }
 
     @Override
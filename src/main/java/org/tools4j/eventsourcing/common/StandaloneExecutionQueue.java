@@ -23,23 +23,33 @@
  */
 package org.tools4j.eventsourcing.common;
 
-import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.MutableDirectBuffer;
 import org.tools4j.eventsourcing.api.*;
 import org.tools4j.nobark.loop.Step;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.LongSupplier;
 
 public final class StandaloneExecutionQueue implements ExecutionQueue {
+    private static final int PERSISTENCE_DRAIN_LIMIT = 64;
 
     private final IndexedQueue commandQueue;
     private final IndexedQueue eventQueue;
+    private final IndexedQueue pipelineQueue;
     private final Step executorStep;
+    private final List<Step> pipelineSteps;
 
     private final Poller commandExecutionPoller;
     private final Poller committedEventApplyingPoller;
+    private final Poller pipelinePoller;
+
+    private volatile boolean replayed;
 
     public StandaloneExecutionQueue(final IndexedQueue commandQueue,
                                     final IndexedQueue eventQueue,
@@ -51,6 +61,46 @@ public final class StandaloneExecutionQueue implements ExecutionQueue {
                                     final CommandExecutorFactory commandExecutorFactory,
                                     final EventApplierFactory eventApplierFactory,
                                     final int transactionBufferSize) throws IOException {
+        this(commandQueue, eventQueue, null, systemNanoClock,
+                onStartCommandExecutionHandler, onCompleteCommandExecutionHandler,
+                onStartEventApplyingHandler, onCompletedEventApplyingHandler,
+                commandExecutorFactory, eventApplierFactory, transactionBufferSize, 1, 0);
+    }
+
+    /**
+     * With a pipelineQueue, command execution appends the resulting events to the pipelineQueue rather than
+     * to the eventQueue, and {@link #pipelineSteps()} returns separate command execution, event persistence
+     * and committed event applying steps that can be performed by separate threads. Command execution only
+     * starts once the committed event applying step has replayed the eventQueue up to its tail, from then on
+     * events are applied by command execution only, and the committed event applying step does nothing, so its
+     * thread can be given up after the replay. The persistence step {@link IndexedQueue#releaseBefore(long)
+     * releases} the persisted entries of the pipelineQueue. Entries of the pipelineQueue that are already in
+     * the eventQueue are not persisted again, however the pipelineQueue is meant to be transient: events of a
+     * persistent pipelineQueue that were not persisted before a restart are persisted after their commands
+     * have been executed again.
+     *
+     * With maxGroupCommands greater than 1, the events of up to maxGroupCommands commands, or of the commands
+     * executed within maxGroupDelayNanos since the first one in the group, are appended as a single entry,
+     * see {@link GroupCommitAppender}.
+     *
+     * @param pipelineQueue - transient queue linking command execution and event persistence, for instance an
+     *                        off-heap queue, or null to execute commands and persist events in one step
+     * @param maxGroupCommands - max number of commands whose events are appended as a single entry
+     * @param maxGroupDelayNanos - max time since the first command of a group after which the group is appended
+     */
+    public StandaloneExecutionQueue(final IndexedQueue commandQueue,
+                                    final IndexedQueue eventQueue,
+                                    final IndexedQueue pipelineQueue,
+                                    final LongSupplier systemNanoClock,
+                                    final IndexConsumer onStartCommandExecutionHandler,
+                                    final IndexConsumer onCompleteCommandExecutionHandler,
+                                    final IndexConsumer onStartEventApplyingHandler,
+                                    final IndexConsumer onCompletedEventApplyingHandler,
+                                    final CommandExecutorFactory commandExecutorFactory,
+                                    final EventApplierFactory eventApplierFactory,
+                                    final int transactionBufferSize,
+                                    final int maxGroupCommands,
+                                    final long maxGroupDelayNanos) throws IOException {
         this.commandQueue = Objects.requireNonNull(commandQueue);
 
         final DefaultProgressState currentProgressState = new DefaultProgressState(systemNanoClock);
@@ -58,8 +108,16 @@ public final class StandaloneExecutionQueue implements ExecutionQueue {
 
 
         this.eventQueue = eventQueue;
+        this.pipelineQueue = pipelineQueue;
+        final boolean pipelined = pipelineQueue != null;
 
-        final Transaction eventAppender = new MultiPayloadAppender(eventQueue.appender(), new UnsafeBuffer(ByteBuffer.allocateDirect(transactionBufferSize)));
+        final IndexedAppender eventQueueAppender = pipelined ? pipelineQueue.appender() : eventQueue.appender();
+        final MutableDirectBuffer transactionBuffer = new ExpandableDirectByteBuffer(transactionBufferSize);
+        final GroupCommitAppender groupCommitAppender = maxGroupCommands > 1 ?
+                new GroupCommitAppender(eventQueueAppender, transactionBuffer, maxGroupCommands, maxGroupDelayNanos, systemNanoClock) :
+                null;
+        final Transaction eventAppender = groupCommitAppender != null ? groupCommitAppender :
+                new MultiPayloadAppender(eventQueueAppender, transactionBuffer);
 
         final MessageConsumer uncommittedEventApplier = eventApplierFactory.create(
                 currentProgressState,
@@ -70,7 +128,15 @@ public final class StandaloneExecutionQueue implements ExecutionQueue {
 
         this.commandExecutionPoller = commandQueue.createPoller(
                 Poller.Options.builder()
-                        .skipWhen(
+                        .skipWhen(pipelined ?
+                                // event queue is appended by the persistence step, however all persisted events
+                                // are replayed into completedProgressState before the first command is executed
+                                (index, source, sourceSeq, eventTimeNanos) -> sourceSeq <= completedProgressState.sourceSeq(source) :
+                                groupCommitAppender != null ?
+                                // event queue index only records the last command of a group, replayed groups
+                                // update completedProgressState for every command
+                                (index, source, sourceSeq, eventTimeNanos) -> sourceSeq <= eventAppender.lastSourceSeq(source) ||
+                                        sourceSeq <= completedProgressState.sourceSeq(source) :
                                 (index, source, sourceSeq, eventTimeNanos) -> sourceSeq <= eventQueue.appender().lastSourceSeq(source))
                         .onProcessingStart(
                                 currentProgressState
@@ -88,31 +154,80 @@ public final class StandaloneExecutionQueue implements ExecutionQueue {
                 currentProgressState,
                 completedProgressState);
 
-        final Step commandExecutionStep = new PollingProcessStep(this.commandExecutionPoller, commandExecutor);
+        final Step commandPollingStep = new PollingProcessStep(this.commandExecutionPoller, commandExecutor);
+        final Step commandExecutionStep = groupCommitAppender != null ?
+                () -> commandPollingStep.perform() | groupCommitAppender.flushIfDue() :
+                commandPollingStep;
 
         final MessageConsumer committedEventApplier = eventApplierFactory.create(
                 currentProgressState,
                 completedProgressState);
 
+        final PayloadBufferPoller payloadBufferPoller = new PayloadBufferPoller(currentProgressState, completedProgressState);
+
         this.committedEventApplyingPoller = eventQueue.createPoller(
                 Poller.Options.builder()
-                        .skipWhen(
-                                IndexPredicate.isNotAheadOf(completedProgressState))
+                        .skipWhen(IndexPredicate.isNotAheadOf(completedProgressState))
                         .onProcessingStart(
-                                currentProgressState.andThen(onStartEventApplyingHandler))
+                                currentProgressState.andThen(payloadBufferPoller).andThen(onStartEventApplyingHandler))
                         .onProcessingComplete(
                                 completedProgressState.andThen(onCompletedEventApplyingHandler))
                         .onProcessingSkipped(
                                 // skip is equivalent to committed as we apply changes to state in command executor and skip when
                                 // event matches command source/sourceSeq
                                 currentProgressState.andThen(completedProgressState))
-                        .bufferPoller(new PayloadBufferPoller())
+                        .bufferPoller(payloadBufferPoller)
                         .build()
         );
 
         final Step committedEventApplyingStep = new PollingProcessStep(this.committedEventApplyingPoller, committedEventApplier);
 
-        this.executorStep = new ApplyAllExecuteOnceStep(commandExecutionStep, committedEventApplyingStep);
+        if (pipelined) {
+            final IndexedAppender persistingAppender = eventQueue.appender();
+            final EventPersister eventPersister = new EventPersister(persistingAppender);
+            this.pipelinePoller = pipelineQueue.createPoller(
+                    Poller.Options.builder()
+                            .skipWhen((index, source, sourceSeq, eventTimeNanos) -> sourceSeq <= persistingAppender.lastSourceSeq(source))
+                            .onProcessingStart(eventPersister)
+                            .onProcessingComplete(eventPersister::persisted)
+                            .onProcessingSkipped(eventPersister::persisted)
+                            .build());
+            final Step pipelinePollingStep = new PollingProcessStep(this.pipelinePoller, eventPersister, PERSISTENCE_DRAIN_LIMIT);
+            final Step eventPersistenceStep = () -> {
+                final boolean persisted = pipelinePollingStep.perform();
+                eventPersister.releasePersisted(pipelineQueue);
+                return persisted;
+            };
+
+            // once replayed, progress states are owned by command execution and the committed events are
+            // not polled any more
+            final Step replayingStep = () -> {
+                if (replayed) {
+                    return false;
+                }
+                final boolean applied = committedEventApplyingStep.perform();
+                if (!committedEventApplyingPoller.messageAvailable()) {
+                    replayed = true;
+                }
+                return applied;
+            };
+            final Step replayedCommandExecutionStep = () -> replayed && commandExecutionStep.perform();
+
+            this.pipelineSteps = Collections.unmodifiableList(Arrays.asList(
+                    replayedCommandExecutionStep, eventPersistenceStep, replayingStep));
+            final Step applyAllExecuteOnceStep = new ApplyAllExecuteOnceStep(replayedCommandExecutionStep, replayingStep);
+            this.executorStep = () -> {
+                boolean done = applyAllExecuteOnceStep.perform();
+                while (eventPersistenceStep.perform()) {
+                    done = true;
+                }
+                return done;
+            };
+        } else {
+            this.pipelinePoller = null;
+            this.executorStep = new ApplyAllExecuteOnceStep(commandExecutionStep, committedEventApplyingStep);
+            this.pipelineSteps = Collections.singletonList(executorStep);
+        }
     }
 
     @Override
@@ -125,6 +240,11 @@ public final class StandaloneExecutionQueue implements ExecutionQueue {
         return executorStep;
     }
 
+    @Override
+    public List<Step> pipelineSteps() {
+        return pipelineSteps;
+    }
+
     @Override
     public Poller createPoller(final Poller.Options options) throws IOException {
         return eventQueue.createPoller(options);
@@ -144,5 +264,48 @@ public final class StandaloneExecutionQueue implements ExecutionQueue {
         eventQueue.close();
         commandExecutionPoller.close();
         committedEventApplyingPoller.close();
+        if (pipelineQueue != null) {
+            pipelinePoller.close();
+            pipelineQueue.close();
+        }
+    }
+
+    /**
+     * Copies committed event transactions from the pipeline queue to the event queue.
+     */
+    private static final class EventPersister implements IndexConsumer, MessageConsumer {
+        private final IndexedAppender eventAppender;
+        private long nextIndex;
+        private long releasedIndex;
+        private int source;
+        private long sourceSeq;
+        private long eventTimeNanos;
+
+        EventPersister(final IndexedAppender eventAppender) {
+            this.eventAppender = Objects.requireNonNull(eventAppender);
+        }
+
+        @Override
+        public void accept(final long index, final int source, final long sourceSeq, final long eventTimeNanos) {
+            this.source = source;
+            this.sourceSeq = sourceSeq;
+            this.eventTimeNanos = eventTimeNanos;
+        }
+
+        @Override
+        public void accept(final DirectBuffer buffer, final int offset, final int length) {
+            eventAppender.accept(source, sourceSeq, eventTimeNanos, buffer, offset, length);
+        }
+
+        void persisted(final long index, final int source, final long sourceSeq, final long eventTimeNanos) {
+            nextIndex = index + 1;
+        }
+
+        void releasePersisted(final IndexedQueue pipelineQueue) {
+            if (nextIndex > releasedIndex) {
+                pipelineQueue.releaseBefore(nextIndex);
+                releasedIndex = nextIndex;
+            }
+        }
     }
 }
@@ -23,9 +23,8 @@
  */
 package org.tools4j.eventsourcing.common;
 
-import org.agrona.collections.Long2LongHashMap;
-import org.agrona.collections.LongLongConsumer;
 import org.tools4j.eventsourcing.api.IndexConsumer;
+import org.tools4j.eventsourcing.api.SourceSeqTable;
 import org.tools4j.eventsourcing.api.Transaction;
 
 import java.util.Objects;
@@ -33,11 +32,11 @@ import java.util.Objects;
 public class TransactionCommitAndPushNoops implements IndexConsumer {
     private final Transaction transaction;
     private final PushMoreUpToDateNoopSourceSeqs pushMoreUpToDateNoopSourceSeqs = new PushMoreUpToDateNoopSourceSeqs();
-    private final Long2LongHashMap noopSourceSeqMap;
+    private final SourceSeqTable noopSourceSeqMap;
 
     public TransactionCommitAndPushNoops(final Transaction transaction) {
         this.transaction = Objects.requireNonNull(transaction);
-        this.noopSourceSeqMap = new Long2LongHashMap(-1);
+        this.noopSourceSeqMap = SourceSeqTable.create(-1);
     }
 
     @Override
@@ -47,7 +46,7 @@ public class TransactionCommitAndPushNoops implements IndexConsumer {
         if (transaction.commit()) {
             if (!noopSourceSeqMap.isEmpty()) {
                 noopSourceSeqMap.remove(source);
-                noopSourceSeqMap.longForEach(pushMoreUpToDateNoopSourceSeqs);
+                noopSourceSeqMap.forEach(pushMoreUpToDateNoopSourceSeqs);
                 noopSourceSeqMap.clear();
             }
         } else {
@@ -58,12 +57,12 @@ public class TransactionCommitAndPushNoops implements IndexConsumer {
     /**
      * Not thread-safe. This is a hacky way to avoid lambda capturing.
      */
-    private class PushMoreUpToDateNoopSourceSeqs implements LongLongConsumer {
+    private class PushMoreUpToDateNoopSourceSeqs implements SourceSeqTable.EntryConsumer {
         long eventTimeNanos;
 
         @Override
-        public void accept(final long source, final long sourceSeq) {
-                transaction.init((int) source, sourceSeq, eventTimeNanos, true);
+        public void accept(final int source, final long sourceSeq) {
+                transaction.init(source, sourceSeq, eventTimeNanos, true);
                 transaction.commit();
         }
     }
@@ -0,0 +1,199 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+
+import java.util.Arrays;
+
+/**
+ * Commands executed by this server whose events are not yet committed to the event log, optionally with copies
+ * of their events, so that the application state can be rolled back to the committed events when uncommitted
+ * events are truncated from the log.
+ * Not thread-safe.
+ */
+final class UncommittedCommands implements MessageConsumer {
+    static final long NULL_INDEX = -1;
+
+    private static final int COMMAND_INDEX_OFFSET = 0;
+    private static final int SOURCE_OFFSET = 8;
+    private static final int SOURCE_SEQ_OFFSET = 12;
+    private static final int PREVIOUS_SOURCE_SEQ_OFFSET = 20;
+    private static final int COMMAND_LENGTH = 28;
+    private static final int EVENT_LENGTH_OFFSET = 0;
+    private static final int EVENT_OFFSET = 4;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int COMPACT_THRESHOLD = 64;
+
+    /**
+     * Restores the sourceSeq a source had before an undone command.
+     */
+    interface SourceSeqRestorer {
+        void restore(int source, long sourceSeq);
+    }
+
+    private final boolean recordEvents;
+    private final ExpandableDirectByteBuffer buffer = new ExpandableDirectByteBuffer(INITIAL_CAPACITY * COMMAND_LENGTH);
+
+    private int[] commandOffsets = new int[INITIAL_CAPACITY];
+    private int[] commandFirstEvents = new int[INITIAL_CAPACITY];
+    private int[] eventOffsets = new int[INITIAL_CAPACITY];
+    private int head;
+    private int commandCount;
+    private int eventCount;
+    private int limit;
+
+    /**
+     * @param recordEvents - true to copy the events of the commands for rollback, false to only track whether
+     *                     uncommitted commands exist
+     */
+    UncommittedCommands(final boolean recordEvents) {
+        this.recordEvents = recordEvents;
+    }
+
+    /**
+     * Starts recording of the command being executed.
+     * @param commandIndex - index of the command in the command queue
+     * @param source - command source
+     * @param sourceSeq - command sequence in the source
+     * @param previousSourceSeq - sourceSeq of the source completed before the command
+     */
+    void begin(final long commandIndex, final int source, final long sourceSeq, final long previousSourceSeq) {
+        if (head == commandCount) {
+            clear();
+        } else if (head >= COMPACT_THRESHOLD) {
+            compact();
+        }
+        if (commandCount == commandOffsets.length) {
+            commandOffsets = Arrays.copyOf(commandOffsets, commandCount << 1);
+            commandFirstEvents = Arrays.copyOf(commandFirstEvents, commandCount << 1);
+        }
+        commandOffsets[commandCount] = limit;
+        commandFirstEvents[commandCount] = eventCount;
+        commandCount++;
+        buffer.putLong(limit + COMMAND_INDEX_OFFSET, commandIndex);
+        buffer.putInt(limit + SOURCE_OFFSET, source);
+        buffer.putLong(limit + SOURCE_SEQ_OFFSET, sourceSeq);
+        buffer.putLong(limit + PREVIOUS_SOURCE_SEQ_OFFSET, previousSourceSeq);
+        limit += COMMAND_LENGTH;
+    }
+
+    /**
+     * Records an event of the command being executed.
+     */
+    @Override
+    public void accept(final DirectBuffer eventBuffer, final int offset, final int length) {
+        if (!recordEvents) {
+            return;
+        }
+        if (eventCount == eventOffsets.length) {
+            eventOffsets = Arrays.copyOf(eventOffsets, eventCount << 1);
+        }
+        eventOffsets[eventCount++] = limit;
+        buffer.putInt(limit + EVENT_LENGTH_OFFSET, length);
+        buffer.putBytes(limit + EVENT_OFFSET, eventBuffer, offset, length);
+        limit += EVENT_OFFSET + length;
+    }
+
+    /**
+     * Removes the commands up to and including the one with given source and sourceSeq as their events
+     * are committed. Entries of other servers are ignored.
+     */
+    void committed(final int source, final long sourceSeq) {
+        for (int command = head; command < commandCount; command++) {
+            final int commandOffset = commandOffsets[command];
+            if (buffer.getInt(commandOffset + SOURCE_OFFSET) == source &&
+                    buffer.getLong(commandOffset + SOURCE_SEQ_OFFSET) == sourceSeq) {
+                head = command + 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if there are no uncommitted commands
+     */
+    boolean isEmpty() {
+        return head == commandCount;
+    }
+
+    /**
+     * @return true if events are recorded and can be undone
+     */
+    boolean canRollback() {
+        return recordEvents;
+    }
+
+    /**
+     * Undoes the events of all uncommitted commands in reverse order and removes the commands.
+     * @param eventUndoer - consumer of the events to be undone
+     * @param sourceSeqRestorer - restorer of the sourceSeq of every source before the undone commands
+     * @return index of the first undone command or NULL_INDEX if there were no uncommitted commands
+     */
+    long rollback(final MessageConsumer eventUndoer, final SourceSeqRestorer sourceSeqRestorer) {
+        if (!recordEvents) {
+            throw new IllegalStateException("Events are not recorded");
+        }
+        long firstCommandIndex = NULL_INDEX;
+        for (int command = commandCount - 1; command >= head; command--) {
+            final int lastEvent = command + 1 < commandCount ? commandFirstEvents[command + 1] : eventCount;
+            for (int event = lastEvent - 1; event >= commandFirstEvents[command]; event--) {
+                final int eventOffset = eventOffsets[event];
+                eventUndoer.accept(buffer, eventOffset + EVENT_OFFSET, buffer.getInt(eventOffset + EVENT_LENGTH_OFFSET));
+            }
+            final int commandOffset = commandOffsets[command];
+            sourceSeqRestorer.restore(buffer.getInt(commandOffset + SOURCE_OFFSET),
+                    buffer.getLong(commandOffset + PREVIOUS_SOURCE_SEQ_OFFSET));
+            firstCommandIndex = buffer.getLong(commandOffset + COMMAND_INDEX_OFFSET);
+        }
+        clear();
+        return firstCommandIndex;
+    }
+
+    void clear() {
+        head = 0;
+        commandCount = 0;
+        eventCount = 0;
+        limit = 0;
+    }
+
+    private void compact() {
+        final int byteShift = commandOffsets[head];
+        final int eventShift = commandFirstEvents[head];
+        buffer.putBytes(0, buffer, byteShift, limit - byteShift);
+        for (int command = head; command < commandCount; command++) {
+            commandOffsets[command - head] = commandOffsets[command] - byteShift;
+            commandFirstEvents[command - head] = commandFirstEvents[command] - eventShift;
+        }
+        for (int event = eventShift; event < eventCount; event++) {
+            eventOffsets[event - eventShift] = eventOffsets[event] - byteShift;
+        }
+        commandCount -= head;
+        eventCount -= eventShift;
+        limit -= byteShift;
+        head = 0;
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.IoUtil;
+import org.agrona.UnsafeAccess;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Lets idle pollers wait for messages appended to a queue, possibly by another process. Waiters are counted in the
+ * queue header. The appender only reads the waiter count on its fast path and, if there are waiters, increments
+ * the append sequence in the header and unparks the waiting threads of its own process. Waiters in other processes
+ * park in short slices and watch the append sequence.
+ * A waiter count left behind by a crashed waiter only costs the appender the increment of the sequence.
+ * <p>
+ * The appender publishes a message and then reads the waiter count, the waiter increments the waiter count and then
+ * checks for a message. A full fence between the publication and the read of the waiter count on the appender side
+ * guarantees that either the appender sees the waiter or the waiter sees the message. Waiters additionally check
+ * for a message after every park slice.
+ */
+public final class AppendNotifier implements AutoCloseable {
+    public static final int QUEUE_ID_OFFSET = 192;
+    public static final int WAITER_COUNT_OFFSET = 200;
+    public static final int APPEND_SEQUENCE_OFFSET = 208;
+    private static final int HEADER_LENGTH = APPEND_SEQUENCE_OFFSET + 8;
+
+    private static final ConcurrentMap<Long, ParkedThreads> PARKED_THREADS = new ConcurrentHashMap<>();
+
+    /**
+     * Notifier of a queue nobody can wait for.
+     */
+    public static final AppendNotifier NONE = new AppendNotifier(new UnsafeBuffer(new byte[HEADER_LENGTH]));
+
+    private final AtomicBuffer headerBuffer;
+    private final Runnable onClose;
+    private ParkedThreads parkedThreads;
+
+    /**
+     * @param headerBuffer - buffer wrapping the first header region of the queue, it must not be remapped while
+     *                     the notifier is in use
+     */
+    public AppendNotifier(final AtomicBuffer headerBuffer) {
+        this(headerBuffer, () -> {});
+    }
+
+    private AppendNotifier(final AtomicBuffer headerBuffer, final Runnable onClose) {
+        if (headerBuffer.capacity() < HEADER_LENGTH) {
+            throw new IllegalArgumentException("headerBuffer capacity " + headerBuffer.capacity() + " is less than " + HEADER_LENGTH);
+        }
+        this.headerBuffer = headerBuffer;
+        this.onClose = Objects.requireNonNull(onClose);
+    }
+
+    /**
+     * Maps the first header region of a queue.
+     * @param headerFileName - name of the header file
+     * @return notifier of the queue
+     */
+    public static AppendNotifier forHeaderFile(final String headerFileName) {
+        final MappedByteBuffer mappedHeader = IoUtil.mapExistingFile(new File(headerFileName), "header",
+                0, RegionAccessorSupplier.HEADER_REGION_SIZE);
+        return new AppendNotifier(new UnsafeBuffer(mappedHeader), () -> IoUtil.unmap(mappedHeader));
+    }
+
+    /**
+     * Invoked by the appender after an append has been published.
+     */
+    public void signal() {
+        UnsafeAccess.UNSAFE.fullFence();
+        if (headerBuffer.getIntVolatile(WAITER_COUNT_OFFSET) > 0) {
+            headerBuffer.getAndAddLong(APPEND_SEQUENCE_OFFSET, 1);
+            final ParkedThreads parked = parkedThreads();
+            for (final Thread thread : parked.threads) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * @return append sequence, it only changes while there are waiters
+     */
+    public long sequence() {
+        return headerBuffer.getLongVolatile(APPEND_SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Waits for an append unless a message is available already. Appends while the waiter is registered and
+     * before it parks are detected through the messageAvailable check, which is repeated after every park slice.
+     * @param messageAvailable - check if the waiting poller has a message available
+     * @param parkNanos - max time to park before the append sequence is checked again, it bounds the wake-up
+     *                  latency for appends by other processes
+     * @param maxWaitNanos - max time to wait
+     * @return true if an append has been signalled or a message was available, false if timed out
+     */
+    public boolean await(final BooleanSupplier messageAvailable,
+                         final long parkNanos,
+                         final long maxWaitNanos) {
+        final Thread thread = Thread.currentThread();
+        final ParkedThreads parked = parkedThreads();
+        parked.add(thread);
+        headerBuffer.getAndAddInt(WAITER_COUNT_OFFSET, 1);
+        try {
+            final long sequence = sequence();
+            if (messageAvailable.getAsBoolean()) {
+                return true;
+            }
+            final long deadline = System.nanoTime() + maxWaitNanos;
+            long remaining = maxWaitNanos;
+            while (remaining > 0) {
+                LockSupport.parkNanos(this, Math.min(parkNanos, remaining));
+                if (sequence() != sequence || messageAvailable.getAsBoolean()) {
+                    return true;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            return false;
+        } finally {
+            headerBuffer.getAndAddInt(WAITER_COUNT_OFFSET, -1);
+            parked.remove(thread);
+        }
+    }
+
+    /**
+     * The queue id in the header identifies waiting threads of this process that wait for the same queue through
+     * another mapping of the header.
+     */
+    private ParkedThreads parkedThreads() {
+        if (parkedThreads == null) {
+            long queueId = headerBuffer.getLongVolatile(QUEUE_ID_OFFSET);
+            if (queueId == 0) {
+                headerBuffer.compareAndSetLong(QUEUE_ID_OFFSET, 0, ThreadLocalRandom.current().nextLong() | 1);
+                queueId = headerBuffer.getLongVolatile(QUEUE_ID_OFFSET);
+            }
+            parkedThreads = PARKED_THREADS.computeIfAbsent(queueId, id -> new ParkedThreads());
+        }
+        return parkedThreads;
+    }
+
+    @Override
+    public void close() {
+        onClose.run();
+    }
+
+    /**
+     * Threads are copied on write so that the appender can unpark them without allocation.
+     */
+    private static final class ParkedThreads {
+        private static final Thread[] NO_THREADS = {};
+        private volatile Thread[] threads = NO_THREADS;
+
+        synchronized void add(final Thread thread) {
+            final Thread[] current = threads;
+            final Thread[] added = Arrays.copyOf(current, current.length + 1);
+            added[current.length] = thread;
+            threads = added;
+        }
+
+        synchronized void remove(final Thread thread) {
+            final Thread[] current = threads;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == thread) {
+                    final Thread[] removed = new Thread[current.length - 1];
+                    System.arraycopy(current, 0, removed, 0, i);
+                    System.arraycopy(current, i + 1, removed, i, current.length - i - 1);
+                    threads = removed;
+                    return;
+                }
+            }
+        }
+    }
+}
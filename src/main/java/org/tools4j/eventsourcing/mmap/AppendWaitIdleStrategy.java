@@ -0,0 +1,76 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.IdleStrategy;
+
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Idle strategy of a mostly idle poller that parks until the appender signals an append instead of spinning.
+ * Pollers of busy queues are better served by a busy spin strategy.
+ */
+public final class AppendWaitIdleStrategy implements IdleStrategy {
+    private final AppendNotifier appendNotifier;
+    private final BooleanSupplier messageAvailable;
+    private final long parkNanos;
+    private final long maxWaitNanos;
+
+    /**
+     * @param appendNotifier - notifier of the polled queue
+     * @param messageAvailable - check if the poller has a message available, usually {@link org.tools4j.eventsourcing.api.Poller#messageAvailable()}
+     * @param parkNanos - max time to park before the append sequence is checked again
+     * @param maxWaitNanos - max time to wait in one idle call
+     */
+    public AppendWaitIdleStrategy(final AppendNotifier appendNotifier,
+                                  final BooleanSupplier messageAvailable,
+                                  final long parkNanos,
+                                  final long maxWaitNanos) {
+        if (parkNanos <= 0) {
+            throw new IllegalArgumentException("parkNanos " + parkNanos + " must be positive");
+        }
+        this.appendNotifier = Objects.requireNonNull(appendNotifier);
+        this.messageAvailable = Objects.requireNonNull(messageAvailable);
+        this.parkNanos = parkNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    @Override
+    public void idle(final int workCount) {
+        if (workCount <= 0) {
+            idle();
+        }
+    }
+
+    @Override
+    public void idle() {
+        appendNotifier.await(messageAvailable, parkNanos, maxWaitNanos);
+    }
+
+    @Override
+    public void reset() {
+        //no state
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durability policy of a queue. The policy is evaluated by {@link MmapQueueFlusher} and appended messages are
+ * forced to disk as long as the policy requests it.
+ */
+@FunctionalInterface
+public interface DurabilityPolicy {
+    DurabilityPolicy NONE = (unflushedMessages, nanosSinceLastFlush) -> false;
+    /**
+     * Forces appended messages as soon as the flusher runs. The flusher is asynchronous to the appender,
+     * so a committed message is not yet durable when the append returns, see
+     * {@link MmapQueueFlusher#durableIndex()} for the last index forced to disk.
+     */
+    DurabilityPolicy ON_COMMIT = (unflushedMessages, nanosSinceLastFlush) -> unflushedMessages > 0;
+
+    /**
+     * @param unflushedMessages - number of messages appended since the last flush
+     * @param nanosSinceLastFlush - time elapsed since the last flush
+     * @return true if appended messages are to be forced to disk
+     */
+    boolean flushRequired(long unflushedMessages, long nanosSinceLastFlush);
+
+    default DurabilityPolicy or(final DurabilityPolicy other) {
+        Objects.requireNonNull(other);
+        return (m, n) -> flushRequired(m, n) || other.flushRequired(m, n);
+    }
+
+    static DurabilityPolicy everyMessages(final int messages) {
+        if (messages <= 0) {
+            throw new IllegalArgumentException("messages " + messages + " must be positive");
+        }
+        return (unflushedMessages, nanosSinceLastFlush) -> unflushedMessages >= messages;
+    }
+
+    static DurabilityPolicy everyMicros(final long micros) {
+        if (micros <= 0) {
+            throw new IllegalArgumentException("micros " + micros + " must be positive");
+        }
+        final long nanos = TimeUnit.MICROSECONDS.toNanos(micros);
+        return (unflushedMessages, nanosSinceLastFlush) -> unflushedMessages > 0 && nanosSinceLastFlush >= nanos;
+    }
+}
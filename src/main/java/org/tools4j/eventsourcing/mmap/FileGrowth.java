@@ -0,0 +1,80 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Grows files without ever shrinking them. Growth of the same file is serialised within the process, so that
+ * an appender and {@link RegionPretoucher} extending the same file concurrently never truncate each other's
+ * extension.
+ */
+final class FileGrowth {
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private FileGrowth() {}
+
+    /**
+     * @param fileName - name of the file
+     * @param fileLength - supplier of the current file length
+     * @param setFileLength - setter of the file length
+     * @return setter of the file length that only ever grows the file
+     */
+    static LongConsumer growOnly(final String fileName, final LongSupplier fileLength, final LongConsumer setFileLength) {
+        final Object lock = lock(fileName);
+        return length -> {
+            synchronized (lock) {
+                if (fileLength.getAsLong() < length) {
+                    setFileLength.accept(length);
+                }
+            }
+        };
+    }
+
+    /**
+     * Grows the file to the given length unless it is already longer.
+     * @param fileName - name of the file
+     * @param length - minimal length of the file
+     * @throws IOException if the file could not be grown
+     */
+    static void grow(final String fileName, final long length) throws IOException {
+        synchronized (lock(fileName)) {
+            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+                if (file.length() < length) {
+                    file.setLength(length);
+                }
+            }
+        }
+    }
+
+    private static Object lock(final String fileName) {
+        return LOCKS.computeIfAbsent(Paths.get(fileName).toAbsolutePath().normalize().toString(), name -> new Object());
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+/**
+ * Layout of index entries of an indexed queue. The format is recorded in the first header region
+ * when the first appender of an empty queue is created and is read back by appenders and pollers,
+ * so that a queue keeps its format once it has been written.
+ * Header files written before the format was recorded have version 0 and are read as STANDARD.
+ * STANDARD is the default, COMPACT has to be selected as readers unaware of the recorded format
+ * read every queue as STANDARD.
+ *  - STANDARD: 64 bytes per entry, length and index padded to a cache line
+ *  - COMPACT: 32 bytes per entry, length and index packed, two entries per cache line
+ */
+public enum IndexFormat {
+    STANDARD(1, 64),
+    COMPACT(2, 32);
+
+    //first header region: 0..20 are used by TailCheckpoint
+    private static final int VERSION_OFFSET = 24;
+    private static final int NOT_RECORDED = 0;
+
+    private final int version;
+    private final int indexLength;
+
+    IndexFormat(final int version, final int indexLength) {
+        this.version = version;
+        this.indexLength = indexLength;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public int indexLength() {
+        return indexLength;
+    }
+
+    public static IndexFormat forVersion(final int version) {
+        switch (version) {
+            case NOT_RECORDED:
+            case 1:
+                return STANDARD;
+            case 2:
+                return COMPACT;
+            default:
+                throw new IllegalArgumentException("Unsupported index format version " + version);
+        }
+    }
+
+    /**
+     * Reads the index format recorded in the header.
+     * @param headerAccessor - header file accessor
+     * @return recorded index format or STANDARD if no format has been recorded
+     */
+    public static IndexFormat read(final RegionAccessor headerAccessor) {
+        return forVersion(wrapHeader(headerAccessor).getIntVolatile(VERSION_OFFSET));
+    }
+
+    /**
+     * Reads the index format recorded in the header, wrapping given buffer instead of allocating one.
+     */
+    static IndexFormat read(final RegionAccessor headerAccessor, final UnsafeBuffer headerBuffer) {
+        return forVersion(wrapHeader(headerAccessor, headerBuffer).getIntVolatile(VERSION_OFFSET));
+    }
+
+    /**
+     * @return true if a format is recorded in the header
+     */
+    static boolean isRecorded(final RegionAccessor headerAccessor, final UnsafeBuffer headerBuffer) {
+        return wrapHeader(headerAccessor, headerBuffer).getIntVolatile(VERSION_OFFSET) != NOT_RECORDED;
+    }
+
+    /**
+     * Records given index format in the header unless a format has already been recorded
+     * or the index is not empty.
+     * @param headerAccessor - header file accessor
+     * @param indexAccessor - index file accessor
+     * @param indexFormat - format to record
+     * @return the format of the queue
+     */
+    public static IndexFormat init(final RegionAccessor headerAccessor,
+                                   final RegionAccessor indexAccessor,
+                                   final IndexFormat indexFormat) {
+        final UnsafeBuffer headerBuffer = wrapHeader(headerAccessor);
+        final int version = headerBuffer.getIntVolatile(VERSION_OFFSET);
+        if (version != NOT_RECORDED) {
+            return forVersion(version);
+        }
+        final UnsafeBuffer indexBuffer = new UnsafeBuffer();
+        if (!indexAccessor.wrap(0, indexBuffer)) {
+            throw new IllegalStateException("Failed to wrap index buffer to position 0");
+        }
+        if (indexBuffer.getIntVolatile(0) != 0) {
+            return STANDARD;
+        }
+        headerBuffer.putIntOrdered(VERSION_OFFSET, indexFormat.version);
+        return indexFormat;
+    }
+
+    private static UnsafeBuffer wrapHeader(final RegionAccessor headerAccessor) {
+        return wrapHeader(headerAccessor, new UnsafeBuffer());
+    }
+
+    private static UnsafeBuffer wrapHeader(final RegionAccessor headerAccessor, final UnsafeBuffer headerBuffer) {
+        if (!headerAccessor.wrap(0, headerBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer to position 0");
+        }
+        return headerBuffer;
+    }
+}
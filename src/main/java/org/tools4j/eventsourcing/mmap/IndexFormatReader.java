@@ -0,0 +1,76 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+/**
+ * Index format of a queue as seen by a reader. The format of a new queue is recorded by its first appender
+ * before the first entry is appended, so a reader created earlier reads the format provisionally as STANDARD
+ * and re-reads it until the format is recorded or the first entry is appended.
+ * Not thread-safe.
+ */
+final class IndexFormatReader {
+    private static final int LENGTH_OFFSET = 0;
+
+    private final RegionAccessor headerAccessor;
+    private final RegionAccessor indexAccessor;
+    private final UnsafeBuffer buffer = new UnsafeBuffer();
+
+    private IndexFormat indexFormat;
+    private boolean known;
+
+    IndexFormatReader(final RegionAccessorSupplier regionAccessorSupplier) {
+        this.headerAccessor = regionAccessorSupplier.headerAccessor();
+        this.indexAccessor = regionAccessorSupplier.indexAccessor();
+        refresh();
+    }
+
+    /**
+     * Re-reads the format unless it is known. As the first index entry might be read to find out,
+     * the index accessor must be wrapped again by the reader after a re-read.
+     * @return true if the format has been re-read, false if it was known
+     */
+    boolean refresh() {
+        if (known) {
+            return false;
+        }
+        known = IndexFormat.isRecorded(headerAccessor, buffer) ||
+                (indexAccessor.wrap(0, buffer) && buffer.getIntVolatile(LENGTH_OFFSET) != 0);
+        indexFormat = IndexFormat.read(headerAccessor, buffer);
+        return true;
+    }
+
+    /**
+     * @return true if the format is final, false if it is provisional
+     */
+    boolean known() {
+        return known;
+    }
+
+    int indexLength() {
+        return indexFormat.indexLength();
+    }
+}
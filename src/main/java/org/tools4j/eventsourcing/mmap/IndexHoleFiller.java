@@ -0,0 +1,114 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.nobark.loop.Step;
+
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Marks index entries of a multi-writer queue that have been reserved or claimed but not published within the
+ * hole timeout as holes, so that pollers skip them instead of waiting for a writer that might have crashed.
+ * The step can be run by any process with write access to the queue.
+ */
+public final class IndexHoleFiller implements Step, AutoCloseable {
+    private static final int LENGTH_OFFSET = 0;
+    private static final long NOT_PENDING = -1;
+
+    private final RegionAccessorSupplier regionAccessorSupplier;
+    private final long holeTimeoutNanos;
+    private final LongSupplier nanoClock;
+    private final IndexFormatReader indexFormat;
+    private int indexLength;
+
+    private final UnsafeBuffer headerBuffer = new UnsafeBuffer();
+    private final UnsafeBuffer mappedIndexBuffer = new UnsafeBuffer();
+
+    private long indexPosition;
+    private long pendingIndexPosition = NOT_PENDING;
+    private long pendingSinceNanos;
+
+    public IndexHoleFiller(final RegionAccessorSupplier regionAccessorSupplier,
+                           final long holeTimeoutNanos,
+                           final LongSupplier nanoClock) {
+        if (holeTimeoutNanos < 0) {
+            throw new IllegalArgumentException("holeTimeoutNanos " + holeTimeoutNanos + " must not be negative");
+        }
+        this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.holeTimeoutNanos = holeTimeoutNanos;
+        this.nanoClock = Objects.requireNonNull(nanoClock);
+        this.indexFormat = new IndexFormatReader(regionAccessorSupplier);
+        this.indexLength = indexFormat.indexLength();
+        this.indexPosition = regionAccessorSupplier.firstIndexPosition();
+    }
+
+    /**
+     * Moves over published entries up to the index tail and marks the first unpublished entry as a hole once it
+     * has been pending for longer than the hole timeout.
+     * @return true if any entry has been passed or marked
+     */
+    @Override
+    public boolean perform() {
+        if (!indexFormat.known() && indexFormat.refresh()) {
+            //nothing has been passed in a queue that was empty when the filler was created
+            indexLength = indexFormat.indexLength();
+        }
+        if (!regionAccessorSupplier.headerAccessor().wrap(0, headerBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer");
+        }
+        final long indexTail = headerBuffer.getLongVolatile(MmapMultiWriterIndexedAppender.INDEX_TAIL_OFFSET);
+        boolean workDone = false;
+        while (indexPosition < indexTail) {
+            if (!regionAccessorSupplier.indexAccessor().wrap(indexPosition, mappedIndexBuffer)) {
+                throw new IllegalStateException("Failed to wrap index buffer for position " + indexPosition);
+            }
+            final int length = mappedIndexBuffer.getIntVolatile(LENGTH_OFFSET);
+            if (length == 0 || length == MmapMultiWriterIndexedAppender.RESERVED_LENGTH) {
+                final long nowNanos = nanoClock.getAsLong();
+                if (pendingIndexPosition != indexPosition) {
+                    pendingIndexPosition = indexPosition;
+                    pendingSinceNanos = nowNanos;
+                    return workDone;
+                }
+                if (nowNanos - pendingSinceNanos < holeTimeoutNanos) {
+                    return workDone;
+                }
+                if (!mappedIndexBuffer.compareAndSetInt(LENGTH_OFFSET, length, MmapMultiWriterIndexedAppender.HOLE_LENGTH)) {
+                    //published in the meantime
+                    continue;
+                }
+            }
+            indexPosition += indexLength;
+            workDone = true;
+        }
+        return workDone;
+    }
+
+    @Override
+    public void close() {
+        regionAccessorSupplier.close();
+    }
+}
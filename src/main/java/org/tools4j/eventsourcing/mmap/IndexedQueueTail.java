@@ -0,0 +1,93 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+
+import java.util.Objects;
+
+/**
+ * Appended tail of an indexed queue. The index is read forward from the last read entry up to the first entry
+ * that has not been published yet, i.e. an empty entry or an entry reserved by a multi-writer appender.
+ * Holes left by crashed writers are passed over.
+ */
+public final class IndexedQueueTail implements MmapQueueFlusher.AppendedTail {
+    private static final int LENGTH_OFFSET = 0;
+    private static final int INDEX_OFFSET = 4;
+
+    private final RegionAccessorSupplier regionAccessorSupplier;
+    private final IndexFormatReader indexFormat;
+    private int indexLength;
+    private final UnsafeBuffer mappedIndexBuffer = new UnsafeBuffer();
+    private final IndexDecoder indexDecoder = new IndexDecoder();
+
+    private long indexPosition;
+    private long messagePosition;
+
+    public IndexedQueueTail(final RegionAccessorSupplier regionAccessorSupplier) {
+        this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.indexFormat = new IndexFormatReader(regionAccessorSupplier);
+        this.indexLength = indexFormat.indexLength();
+        this.indexPosition = regionAccessorSupplier.firstIndexPosition();
+    }
+
+    @Override
+    public long read() {
+        if (!indexFormat.known() && indexFormat.refresh()) {
+            //nothing has been read from a queue that was empty when the tail was created
+            indexLength = indexFormat.indexLength();
+        }
+        int length;
+        while (true) {
+            if (!regionAccessorSupplier.indexAccessor().wrap(indexPosition, mappedIndexBuffer)) {
+                throw new IllegalStateException("Failed to wrap index buffer to position " + indexPosition);
+            }
+            length = mappedIndexBuffer.getIntVolatile(LENGTH_OFFSET);
+            if (length == 0 || length == MmapMultiWriterIndexedAppender.RESERVED_LENGTH) {
+                return indexPosition / indexLength;
+            }
+            if (length > 0) {
+                indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
+                messagePosition = Math.max(messagePosition, indexDecoder.position() + length);
+            }
+            indexPosition += indexLength;
+        }
+    }
+
+    @Override
+    public long indexPosition() {
+        return indexPosition;
+    }
+
+    @Override
+    public long messagePosition() {
+        return messagePosition;
+    }
+
+    @Override
+    public void close() {
+        regionAccessorSupplier.close();
+    }
+}
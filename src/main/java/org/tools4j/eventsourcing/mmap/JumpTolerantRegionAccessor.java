@@ -0,0 +1,71 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+import java.util.Objects;
+
+/**
+ * Region accessor that tolerates jumps over more than one region.
+ * RegionRingAccessor unmaps the previously accessed region after mapping the new one. When the jump is a multiple
+ * of the ring size both regions share the same ring slot and the newly mapped region gets unmapped, so the position
+ * is wrapped again after any jump to a non-adjacent region.
+ */
+public final class JumpTolerantRegionAccessor implements RegionAccessor {
+    private static final long NOT_WRAPPED = -1;
+
+    private final RegionAccessor delegate;
+    private final int regionSize;
+
+    private long lastRegionIndex = NOT_WRAPPED;
+
+    public JumpTolerantRegionAccessor(final RegionAccessor delegate, final int regionSize) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public boolean wrap(final long position, final DirectBuffer source) {
+        final long regionIndex = position / regionSize;
+        final boolean wrapped = delegate.wrap(position, source);
+        final long lastRegionIndex = this.lastRegionIndex;
+        this.lastRegionIndex = regionIndex;
+        if (wrapped && lastRegionIndex != NOT_WRAPPED && Math.abs(regionIndex - lastRegionIndex) > 1) {
+            return delegate.wrap(position, source);
+        }
+        return wrapped;
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
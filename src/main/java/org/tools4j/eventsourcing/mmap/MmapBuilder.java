@@ -25,10 +25,12 @@ package org.tools4j.eventsourcing.mmap;
 
 import org.tools4j.eventsourcing.api.IndexedPollerFactory;
 import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.SourceSeqIndex;
 import org.tools4j.mmap.region.api.RegionRingFactory;
 import org.tools4j.mmap.region.impl.MappedFile;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 public interface MmapBuilder {
     FilePrefixBuilder directory(String directory);
@@ -47,9 +49,28 @@ public interface MmapBuilder {
         Optionals regionRingSize(int regionRingSize);
         Optionals regionsToMapAhead(int regionsToMapAhead);
         Optionals maxFileSize(long maxFileSize);
+        Optionals segmentSize(long segmentSize);
+        Optionals retentionPolicy(RetentionPolicy retentionPolicy);
+        Optionals segmentDisposer(SegmentRetention.SegmentDisposer segmentDisposer);
+        Optionals indexFormat(IndexFormat indexFormat);
+        Optionals checkpointInterval(int checkpointInterval);
+        Optionals sourceSeqIndexCapacity(long sourceSeqIndexCapacity);
+        Optionals mappingPool(SharedMappingPool mappingPool);
+        Optionals multiWriter(boolean multiWriter);
+        Optionals holeTimeout(long holeTimeoutNanos);
+        Optionals durabilityPolicy(DurabilityPolicy durabilityPolicy);
+        Optionals pretoucher(RegionPretoucher pretoucher);
+        Optionals cursorCapacity(int cursorCapacity);
         IndexedQueue buildQueue() throws IOException;
         IndexedQueue buildReadOnlyQueue() throws IOException;
         IndexedPollerFactory buildPollerFactory() throws IOException;
+        IndexedPollerFactory buildReversePollerFactory() throws IOException;
+        SourceSeqIndex buildSourceSeqIndex() throws IOException;
+        SegmentRetention buildSegmentRetention();
+        IndexHoleFiller buildHoleFiller() throws IOException;
+        MmapQueueFlusher buildFlusher() throws IOException;
+        AppendNotifier buildAppendNotifier();
+        MmapCursorStore buildCursorStore() throws IOException;
     }
 
     static MmapBuilder create() {
@@ -65,6 +86,18 @@ public interface MmapBuilder {
         private int regionRingSize = 4;
         private int regionsToMapAhead = 1;
         private long maxFileSize = 1024 * 1024 * 1024 * 2L;
+        private long segmentSize = 0;
+        private RetentionPolicy retentionPolicy = RetentionPolicy.RETAIN_ALL;
+        private SegmentRetention.SegmentDisposer segmentDisposer = SegmentRetention.SegmentDisposer.DELETE;
+        private IndexFormat indexFormat = MmapIndexedAppender.DEFAULT_INDEX_FORMAT;
+        private int checkpointInterval = MmapIndexedAppender.DEFAULT_CHECKPOINT_INTERVAL;
+        private long sourceSeqIndexCapacity = 0;
+        private SharedMappingPool mappingPool = null;
+        private boolean multiWriter = false;
+        private long holeTimeoutNanos = TimeUnit.SECONDS.toNanos(1);
+        private DurabilityPolicy durabilityPolicy = DurabilityPolicy.NONE;
+        private RegionPretoucher pretoucher = null;
+        private int cursorCapacity = 64;
 
         @Override
         public FilePrefixBuilder directory(final String directory) {
@@ -114,6 +147,78 @@ public interface MmapBuilder {
             return this;
         }
 
+        @Override
+        public Optionals segmentSize(final long segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        @Override
+        public Optionals retentionPolicy(final RetentionPolicy retentionPolicy) {
+            this.retentionPolicy = retentionPolicy;
+            return this;
+        }
+
+        @Override
+        public Optionals segmentDisposer(final SegmentRetention.SegmentDisposer segmentDisposer) {
+            this.segmentDisposer = segmentDisposer;
+            return this;
+        }
+
+        @Override
+        public Optionals indexFormat(final IndexFormat indexFormat) {
+            this.indexFormat = indexFormat;
+            return this;
+        }
+
+        @Override
+        public Optionals checkpointInterval(final int checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        @Override
+        public Optionals sourceSeqIndexCapacity(final long sourceSeqIndexCapacity) {
+            this.sourceSeqIndexCapacity = sourceSeqIndexCapacity;
+            return this;
+        }
+
+        @Override
+        public Optionals mappingPool(final SharedMappingPool mappingPool) {
+            this.mappingPool = mappingPool;
+            return this;
+        }
+
+        @Override
+        public Optionals multiWriter(final boolean multiWriter) {
+            this.multiWriter = multiWriter;
+            return this;
+        }
+
+        @Override
+        public Optionals holeTimeout(final long holeTimeoutNanos) {
+            this.holeTimeoutNanos = holeTimeoutNanos;
+            return this;
+        }
+
+        @Override
+        public Optionals durabilityPolicy(final DurabilityPolicy durabilityPolicy) {
+            this.durabilityPolicy = durabilityPolicy;
+            return this;
+        }
+
+        @Override
+        public Optionals pretoucher(final RegionPretoucher pretoucher) {
+            this.pretoucher = pretoucher;
+            return this;
+        }
+
+        @Override
+        public Optionals cursorCapacity(final int cursorCapacity) {
+            this.cursorCapacity = cursorCapacity;
+            return this;
+        }
+
         @Override
         public IndexedQueue buildQueue() throws IOException {
             return new MmapIndexedQueue(
@@ -124,7 +229,14 @@ public interface MmapBuilder {
                     regionSize,
                     regionRingSize,
                     regionsToMapAhead,
-                    maxFileSize);
+                    maxFileSize,
+                    segmentSize,
+                    indexFormat,
+                    checkpointInterval,
+                    sourceSeqIndexCapacity,
+                    mappingPool,
+                    multiWriter,
+                    pretoucher);
         }
 
         @Override
@@ -135,7 +247,9 @@ public interface MmapBuilder {
                     regionRingFactory,
                     regionSize,
                     regionRingSize,
-                    regionsToMapAhead);
+                    regionsToMapAhead,
+                    segmentSize,
+                    mappingPool);
         }
 
         @Override
@@ -146,7 +260,90 @@ public interface MmapBuilder {
                     regionRingFactory,
                     regionSize,
                     regionRingSize,
-                    regionsToMapAhead);
+                    regionsToMapAhead,
+                    segmentSize,
+                    mappingPool);
+        }
+
+        @Override
+        public IndexedPollerFactory buildReversePollerFactory() throws IOException {
+            return new MmapIndexedPollerFactory(
+                    directory,
+                    filePrefix,
+                    regionRingFactory,
+                    regionSize,
+                    regionRingSize,
+                    regionsToMapAhead,
+                    segmentSize,
+                    mappingPool)::createReversePoller;
+        }
+
+        @Override
+        public SourceSeqIndex buildSourceSeqIndex() throws IOException {
+            return MmapSourceSeqIndex.forReadOnly(directory, filePrefix);
+        }
+
+        @Override
+        public SegmentRetention buildSegmentRetention() {
+            if (segmentSize <= 0) {
+                throw new IllegalStateException("segmentSize is not configured");
+            }
+            return new SegmentRetention(directory, filePrefix, segmentSize, retentionPolicy, segmentDisposer);
+        }
+
+        @Override
+        public IndexHoleFiller buildHoleFiller() throws IOException {
+            if (!multiWriter) {
+                throw new IllegalStateException("multiWriter is not configured");
+            }
+            return new IndexHoleFiller(
+                    RegionAccessorSupplier.forReadWritePreallocated(
+                            directory,
+                            filePrefix,
+                            false,
+                            regionRingFactory,
+                            regionSize,
+                            regionRingSize,
+                            regionsToMapAhead,
+                            maxFileSize),
+                    holeTimeoutNanos,
+                    System::nanoTime);
+        }
+
+        @Override
+        public MmapQueueFlusher buildFlusher() throws IOException {
+            return new MmapQueueFlusher(
+                    new IndexedQueueTail(segmentSize > 0 ?
+                            RegionAccessorSupplier.forReadOnlySegmented(
+                                    directory,
+                                    filePrefix,
+                                    regionRingFactory,
+                                    regionSize,
+                                    regionRingSize,
+                                    regionsToMapAhead,
+                                    segmentSize) :
+                            RegionAccessorSupplier.forReadOnly(
+                                    directory,
+                                    filePrefix,
+                                    regionRingFactory,
+                                    regionSize,
+                                    regionRingSize,
+                                    regionsToMapAhead)),
+                    directory + "/" + filePrefix + "_index",
+                    directory + "/" + filePrefix + "_message",
+                    segmentSize,
+                    durabilityPolicy,
+                    System::nanoTime);
+        }
+
+        @Override
+        public AppendNotifier buildAppendNotifier() {
+            return AppendNotifier.forHeaderFile(directory + "/" + filePrefix + "_header");
+        }
+
+        @Override
+        public MmapCursorStore buildCursorStore() throws IOException {
+            return MmapCursorStore.forReadWrite(directory, filePrefix, clearFiles, cursorCapacity);
         }
     }
 
@@ -0,0 +1,206 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.PollerCursor;
+import org.tools4j.mmap.region.impl.MappedFile;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Named poller cursors stored in a "_cursors" file next to the index and message files.
+ * Every cursor occupies a slot of 64 bytes with the name and the committed index. The index is stored as
+ * index + 1 with ordered semantic, so that a zero value marks a cursor that has never been committed.
+ * Commits are plain memory writes to the mapped file that reach the disk asynchronously through the page cache
+ * or when the store is forced.
+ * Slots are claimed with a compare-and-set of the name length to a random negative claim token, so that cursors
+ * can be created concurrently by multiple processes, and the name is published by a compare-and-set of the token
+ * to the name length. A claim that is not published within {@link #CLAIM_TIMEOUT_NANOS}, for instance of a crashed
+ * process, is abandoned: the slot is skipped from then on, and a slow claimer that finds its claim abandoned
+ * claims another slot. The store never grows and an IllegalStateException is thrown if it is full.
+ */
+public final class MmapCursorStore implements AutoCloseable {
+    public static final int MAX_NAME_LENGTH = 48;
+    public static final long CLAIM_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int SLOT_LENGTH = 64;
+    private static final int NAME_LENGTH_OFFSET = 0;
+    private static final int NAME_OFFSET = 4;
+    private static final int INDEX_OFFSET = 56;
+    private static final int ABANDONED = -1;
+
+    private final MappedFile mappedFile;
+    private final UnsafeBuffer buffer;
+    private final int capacity;
+
+    private MmapCursorStore(final MappedFile mappedFile, final int capacity) {
+        this.mappedFile = mappedFile;
+        this.capacity = capacity;
+        try {
+            this.buffer = new UnsafeBuffer(mappedFile.getFileChannel().map(mappedFile.getMode().getMapMode(),
+                    0, (long) capacity * SLOT_LENGTH));
+        } catch (final IOException e) {
+            mappedFile.close();
+            throw new IllegalStateException("Failed to map cursor file", e);
+        }
+    }
+
+    /**
+     * Factory method for readWrite cursor store.
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix of the queue. Cursor file would have "_cursors" suffix.
+     * @param clear - true if the file is to be cleared
+     * @param capacity - max number of cursors
+     * @return an instance of MmapCursorStore
+     * @throws IOException when the cursor file could not be mapped.
+     */
+    public static MmapCursorStore forReadWrite(final String directory,
+                                               final String filePrefix,
+                                               final boolean clear,
+                                               final int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        final long fileLength = (long) capacity * SLOT_LENGTH;
+        final MappedFile mappedFile = new MappedFile(directory + "/" + filePrefix + "_cursors",
+                clear ? MappedFile.Mode.READ_WRITE_CLEAR : MappedFile.Mode.READ_WRITE,
+                MappedFile.REGION_SIZE_GRANULARITY, (fileChannel, mode) -> {
+                    if (mode == MappedFile.Mode.READ_WRITE_CLEAR) {
+                        fileChannel.truncate(0);
+                    }
+                });
+        final long existingLength = mappedFile.getFileLength();
+        if (existingLength == 0) {
+            mappedFile.setFileLength(fileLength);
+        } else if (existingLength != fileLength) {
+            mappedFile.close();
+            throw new IllegalStateException("Cursor file length " + existingLength +
+                    " does not match capacity " + capacity + ", expected length " + fileLength);
+        }
+        return new MmapCursorStore(mappedFile, capacity);
+    }
+
+    /**
+     * Returns the cursor with the given name, the cursor is created if it does not exist yet.
+     * @param name - cursor name of at most MAX_NAME_LENGTH bytes in UTF-8
+     * @return the cursor
+     * @throws IllegalStateException if the cursor does not exist and the store is full
+     */
+    public PollerCursor cursor(final String name) {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length == 0 || nameBytes.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Cursor name length " + nameBytes.length + " must be in [1.." + MAX_NAME_LENGTH + "]");
+        }
+        int slot = 0;
+        while (slot < capacity) {
+            final int slotOffset = slot * SLOT_LENGTH;
+            int nameLength = buffer.getIntVolatile(slotOffset + NAME_LENGTH_OFFSET);
+            if (nameLength == 0) {
+                final int claimToken = ThreadLocalRandom.current().nextInt(Integer.MIN_VALUE, ABANDONED);
+                if (buffer.compareAndSetInt(slotOffset + NAME_LENGTH_OFFSET, 0, claimToken)) {
+                    buffer.putBytes(slotOffset + NAME_OFFSET, nameBytes);
+                    if (buffer.compareAndSetInt(slotOffset + NAME_LENGTH_OFFSET, claimToken, nameBytes.length)) {
+                        return new SlotCursor(slotOffset);
+                    }
+                    //claim has been abandoned by another creator, start over as the name might have been created meanwhile
+                    slot = 0;
+                    continue;
+                }
+                nameLength = buffer.getIntVolatile(slotOffset + NAME_LENGTH_OFFSET);
+            }
+            if (nameLength < ABANDONED) {
+                nameLength = awaitClaim(slotOffset, nameLength);
+            }
+            if (nameLength == nameBytes.length && nameEquals(slotOffset, nameBytes)) {
+                return new SlotCursor(slotOffset);
+            }
+            slot++;
+        }
+        throw new IllegalStateException("Cursor store is full, capacity " + capacity);
+    }
+
+    /**
+     * Waits until the slot claimed by another creator is published, or abandons the claim after the claim timeout.
+     * @return the name length of the published slot or ABANDONED
+     */
+    private int awaitClaim(final int slotOffset, final int claimToken) {
+        final long startNanos = System.nanoTime();
+        int nameLength;
+        while ((nameLength = buffer.getIntVolatile(slotOffset + NAME_LENGTH_OFFSET)) == claimToken) {
+            if (System.nanoTime() - startNanos >= CLAIM_TIMEOUT_NANOS) {
+                buffer.compareAndSetInt(slotOffset + NAME_LENGTH_OFFSET, claimToken, ABANDONED);
+            } else {
+                Thread.yield();
+            }
+        }
+        return nameLength;
+    }
+
+    private boolean nameEquals(final int slotOffset, final byte[] nameBytes) {
+        for (int i = 0; i < nameBytes.length; i++) {
+            if (buffer.getByte(slotOffset + NAME_OFFSET + i) != nameBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes committed cursors to the disk.
+     */
+    public void force() {
+        ((MappedByteBuffer) buffer.byteBuffer()).force();
+    }
+
+    @Override
+    public void close() {
+        if (buffer.byteBuffer() != null) {
+            IoUtil.unmap(buffer.byteBuffer());
+        }
+        mappedFile.close();
+    }
+
+    private final class SlotCursor implements PollerCursor {
+        private final int indexOffset;
+
+        SlotCursor(final int slotOffset) {
+            this.indexOffset = slotOffset + INDEX_OFFSET;
+        }
+
+        @Override
+        public long committedIndex() {
+            return buffer.getLongVolatile(indexOffset) - 1;
+        }
+
+        @Override
+        public void commit(final long nextIndex) {
+            buffer.putLongOrdered(indexOffset, nextIndex + 1);
+        }
+    }
+}
@@ -24,9 +24,12 @@
 package org.tools4j.eventsourcing.mmap;
 
 import org.agrona.DirectBuffer;
-import org.agrona.collections.Long2LongHashMap;
+import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.BatchAppender;
+import org.tools4j.eventsourcing.api.IndexConsumer;
 import org.tools4j.eventsourcing.api.IndexedAppender;
+import org.tools4j.eventsourcing.api.SourceSeqTable;
 import org.tools4j.eventsourcing.sbe.IndexDecoder;
 import org.tools4j.eventsourcing.sbe.IndexEncoder;
 
@@ -39,104 +42,369 @@ import java.util.Objects;
  *  - first random access lookup of index and position/length of message located in another memory-mapped-file
  *  - second random access lookup of the message located at position/length in another memory-mapped-file
  *  Appendable message is represented as a buffer at offset with length.
+ *  Messages are stored contiguously and continue in the next region if they do not fit into the current one,
+ *  so no region tails are wasted and messages can be larger than a region.
+ *  Messages that fit into the rest of the current region can also be claimed and encoded in place.
+ *  A batch of messages can be appended with batchAppender and published with a single ordered store.
+ *  Entries of a batch that is aborted or not published before a restart are cleared.
  *  Length of a message is a first field in the index record which has a volatile semantic for thread synchronisation.
+ *  The tail is checkpointed to the header file every checkpointInterval messages and on close, so that the
+ *  appender only scans the index forward from the last checkpoint when it is initialised.
+ *  The checkpoint is written inline by the appending thread, as it owns the table of last sourceSeqs, and
+ *  the append that triggers it additionally writes one 16 byte header entry per source, i.e. about 1MB for
+ *  65536 sources. Latency sensitive appenders with many sources should use a larger checkpointInterval.
+ *  Every appended index, including the ones found by the forward scan, is passed to onAppended consumer,
+ *  for example to maintain a secondary index.
  */
 public final class MmapIndexedAppender implements IndexedAppender, AutoCloseable {
     private static final long NOT_INITIALISED = -1;
+    private static final int NOT_CLAIMED = 0;
     private static final int LENGTH_OFFSET = 0;
     private static final int LENGTH_LENGTH = 4;
     private static final int INDEX_OFFSET = LENGTH_OFFSET + LENGTH_LENGTH;
-    //private static final int INDEX_LENGTH = LENGTH_LENGTH + IndexEncoder.ENCODED_LENGTH;
-    private static final int INDEX_LENGTH = 64; //LENGTH_LENGTH + IndexEncoder.ENCODED_LENGTH;
-
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 64 * 1024;
+    public static final IndexFormat DEFAULT_INDEX_FORMAT = IndexFormat.STANDARD;
 
     private final RegionAccessorSupplier regionAccessorSupplier;
+    private final TailCheckpoint tailCheckpoint;
+    private final int checkpointInterval;
+    private final IndexConsumer onAppended;
+    private final int indexLength;
 
     private final UnsafeBuffer mappedIndexBuffer;
     private final UnsafeBuffer mappedMessageBuffer;
+    private final UnsafeBuffer claimBuffer;
+    private final RegionSpanningMessages messages = new RegionSpanningMessages();
+    private final BatchAppender batchAppender = new DefaultBatchAppender();
 
     private final IndexEncoder indexEncoder = new IndexEncoder();
     private final IndexDecoder indexDecoder = new IndexDecoder();
 
-    private final Long2LongHashMap lastSourceSeqMap = new Long2LongHashMap(NULL_INDEX);
+    private final SourceSeqTable lastSourceSeqMap = SourceSeqTable.create(NULL_INDEX);
 
 
     private long currentIndexPosition = NOT_INITIALISED;
     private long currentMessagePosition = 0;
+    private int appendsSinceCheckpoint = 0;
+    private int claimedLength = NOT_CLAIMED;
+    private int batchSize = 0;
+    private int firstBatchLength = 0;
+    private long batchIndexPosition = 0;
+    private long batchMessagePosition = 0;
 
     public MmapIndexedAppender(final RegionAccessorSupplier regionAccessorSupplier) {
+        this(regionAccessorSupplier, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    public MmapIndexedAppender(final RegionAccessorSupplier regionAccessorSupplier,
+                               final int checkpointInterval) {
+        this(regionAccessorSupplier, checkpointInterval, IndexConsumer.noop());
+    }
+
+    public MmapIndexedAppender(final RegionAccessorSupplier regionAccessorSupplier,
+                               final int checkpointInterval,
+                               final IndexConsumer onAppended) {
+        this(regionAccessorSupplier, DEFAULT_INDEX_FORMAT, checkpointInterval, onAppended);
+    }
+
+    /**
+     * @param regionAccessorSupplier - region accessor supplier
+     * @param indexFormat - index format of a new queue, existing queues keep their recorded format
+     * @param checkpointInterval - number of appends between tail checkpoints
+     * @param onAppended - consumer of every appended index
+     */
+    public MmapIndexedAppender(final RegionAccessorSupplier regionAccessorSupplier,
+                               final IndexFormat indexFormat,
+                               final int checkpointInterval,
+                               final IndexConsumer onAppended) {
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("checkpointInterval " + checkpointInterval + " must be positive");
+        }
         this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.tailCheckpoint = new TailCheckpoint(regionAccessorSupplier.headerAccessor());
+        this.checkpointInterval = checkpointInterval;
+        this.onAppended = Objects.requireNonNull(onAppended);
+        this.indexLength = IndexFormat.init(regionAccessorSupplier.headerAccessor(),
+                regionAccessorSupplier.indexAccessor(), Objects.requireNonNull(indexFormat)).indexLength();
 
         this.mappedIndexBuffer = new UnsafeBuffer();
         this.mappedMessageBuffer = new UnsafeBuffer();
+        this.claimBuffer = new UnsafeBuffer();
     }
 
     @Override
     public void accept(final int source, final long sourceSeq, final long eventTimeNanos, final DirectBuffer buffer, final int offset, final int length) {
+        checkNothingPending();
         advanceIndexToLastAppendPosition();
+        messages.write(regionAccessorSupplier.messageAccessor(), currentMessagePosition, buffer, offset, length);
+        appendIndex(source, sourceSeq, eventTimeNanos, length);
+    }
 
-        if (regionAccessorSupplier.messageAccessor().wrap(currentMessagePosition, mappedMessageBuffer)) {
-            if (regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
+    /**
+     * Claims the space in the current message region. Returns null if the message does not fit into the rest of
+     * the region, such a message is appended by accept as it spans regions.
+     */
+    @Override
+    public MutableDirectBuffer tryClaim(final int length) {
+        checkNothingPending();
+        advanceIndexToLastAppendPosition();
+        if (!regionAccessorSupplier.messageAccessor().wrap(currentMessagePosition, mappedMessageBuffer)) {
+            throw new IllegalStateException("Failed to wrap message buffer for position " + currentMessagePosition);
+        }
+        if (length <= 0 || mappedMessageBuffer.capacity() < length) {
+            return null;
+        }
+        claimBuffer.wrap(mappedMessageBuffer, 0, length);
+        claimedLength = length;
+        return claimBuffer;
+    }
 
-                if (mappedMessageBuffer.capacity() < length) {
-                    currentMessagePosition += mappedMessageBuffer.capacity();
-                    if (!regionAccessorSupplier.messageAccessor().wrap(currentMessagePosition, mappedMessageBuffer)) {
-                        throw new IllegalStateException("Failed to wrap message buffer for position " + currentMessagePosition);
-                    }
-                }
-                buffer.getBytes(offset, mappedMessageBuffer, 0, length);
+    @Override
+    public void commit(final int source, final long sourceSeq, final long eventTimeNanos) {
+        final int length = claimedLength;
+        if (length == NOT_CLAIMED) {
+            throw new IllegalStateException("No message is claimed");
+        }
+        claimedLength = NOT_CLAIMED;
+        appendIndex(source, sourceSeq, eventTimeNanos, length);
+    }
 
+    @Override
+    public void abort() {
+        if (claimedLength == NOT_CLAIMED) {
+            throw new IllegalStateException("No message is claimed");
+        }
+        claimedLength = NOT_CLAIMED;
+    }
+
+    private void checkNothingPending() {
+        if (claimedLength != NOT_CLAIMED) {
+            throw new IllegalStateException("Claimed message of length " + claimedLength + " is not committed or aborted");
+        }
+        if (batchSize > 0) {
+            throw new IllegalStateException("Batch of " + batchSize + " messages is not published or aborted");
+        }
+    }
+
+    /**
+     * @return batch appender that publishes all messages of a batch to pollers with a single ordered store
+     */
+    public BatchAppender batchAppender() {
+        return batchAppender;
+    }
+
+    private final class DefaultBatchAppender implements BatchAppender {
+        /**
+         * Writes the message and its index entry. The length of the first entry in the batch is only stored
+         * on publish, so pollers stop in front of the batch until then.
+         */
+        @Override
+        public void accept(final int source, final long sourceSeq, final long eventTimeNanos,
+                           final DirectBuffer buffer, final int offset, final int length) {
+            if (batchSize == 0) {
+                checkNothingPending();
+                advanceIndexToLastAppendPosition();
+                batchIndexPosition = currentIndexPosition;
+                batchMessagePosition = currentMessagePosition;
+            }
+            messages.write(regionAccessorSupplier.messageAccessor(), batchMessagePosition, buffer, offset, length);
+
+            if (regionAccessorSupplier.indexAccessor().wrap(batchIndexPosition, mappedIndexBuffer)) {
                 indexEncoder.wrap(mappedIndexBuffer, INDEX_OFFSET)
-                        .position(currentMessagePosition)
+                        .position(batchMessagePosition)
                         .source(source)
                         .sourceSeq(sourceSeq)
                         .eventTimeNanos(eventTimeNanos);
+                if (batchSize == 0) {
+                    firstBatchLength = length;
+                } else {
+                    mappedIndexBuffer.putInt(LENGTH_OFFSET, length);
+                }
+            } else {
+                throw new IllegalStateException("Failed to wrap index buffer for position " + batchIndexPosition);
+            }
+            batchIndexPosition += indexLength;
+            batchMessagePosition += length;
+            batchSize++;
+        }
+
+        @Override
+        public int publish() {
+            final int published = batchSize;
+            if (published == 0) {
+                return 0;
+            }
+            batchSize = 0;
+            if (!regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
+                throw new IllegalStateException("Failed to wrap index buffer for position " + currentIndexPosition);
+            }
+            mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, firstBatchLength);
 
-                lastSourceSeqMap.put(source, sourceSeq);
+            //advance past the whole batch before notifying, see appendIndex
+            final long firstIndexPosition = currentIndexPosition;
+            for (int i = 0; i < published; i++) {
+                wrapIndex(currentIndexPosition);
+                indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
+                lastSourceSeqMap.put(indexDecoder.source(), indexDecoder.sourceSeq());
+                advanceIndexToNextAppendPosition(mappedIndexBuffer.getInt(LENGTH_OFFSET));
+            }
+            appendsSinceCheckpoint += published;
+            for (long indexPosition = firstIndexPosition; indexPosition < currentIndexPosition; indexPosition += indexLength) {
+                wrapIndex(indexPosition);
+                indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
+                onAppended.accept(indexPosition / indexLength, indexDecoder.source(),
+                        indexDecoder.sourceSeq(), indexDecoder.eventTimeNanos());
+            }
+            if (appendsSinceCheckpoint >= checkpointInterval) {
+                checkpoint();
+            }
+            return published;
+        }
 
-                mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, length);
+        /**
+         * Clears the lengths stored for all but the first entry of the batch, so that they are not mistaken for
+         * appended messages once the first entry is appended again.
+         */
+        @Override
+        public int abort() {
+            final int aborted = batchSize;
+            batchSize = 0;
+            for (long indexPosition = currentIndexPosition + indexLength; indexPosition < batchIndexPosition; indexPosition += indexLength) {
+                wrapIndex(indexPosition);
+                mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, 0);
+            }
+            return aborted;
+        }
+    }
 
-                advanceIndexToNextAppendPosition(length);
-            } else {
-                throw new IllegalStateException("Failed to wrap index buffer for position " + currentIndexPosition);
+    private void wrapIndex(final long indexPosition) {
+        if (!regionAccessorSupplier.indexAccessor().wrap(indexPosition, mappedIndexBuffer)) {
+            throw new IllegalStateException("Failed to wrap index buffer for position " + indexPosition);
+        }
+    }
+
+    private void appendIndex(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+        if (regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
+            indexEncoder.wrap(mappedIndexBuffer, INDEX_OFFSET)
+                    .position(currentMessagePosition)
+                    .source(source)
+                    .sourceSeq(sourceSeq)
+                    .eventTimeNanos(eventTimeNanos);
+
+            lastSourceSeqMap.put(source, sourceSeq);
+
+            mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, length);
+
+            //advance before notifying, so that a failing consumer never causes the published entry to be overwritten
+            final long index = currentIndexPosition / indexLength;
+            advanceIndexToNextAppendPosition(length);
+            appendsSinceCheckpoint++;
+
+            onAppended.accept(index, source, sourceSeq, eventTimeNanos);
+
+            if (appendsSinceCheckpoint >= checkpointInterval) {
+                checkpoint();
             }
         } else {
-            throw new IllegalStateException("Failed to wrap body buffer for position " + currentMessagePosition);
+            throw new IllegalStateException("Failed to wrap index buffer for position " + currentIndexPosition);
         }
     }
 
     private void advanceIndexToNextAppendPosition(int messageLength) {
-        currentIndexPosition += INDEX_LENGTH;
+        currentIndexPosition += indexLength;
         currentMessagePosition += messageLength;
     }
 
+    private void checkpoint() {
+        tailCheckpoint.store(currentIndexPosition, currentMessagePosition, lastSourceSeqMap);
+        appendsSinceCheckpoint = 0;
+    }
+
     private void advanceIndexToLastAppendPosition() {
         if (currentIndexPosition == NOT_INITIALISED) {
-            currentIndexPosition = 0;
-            int currentMessageLength;
             lastSourceSeqMap.clear();
-            do {
-                if (regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
-                    if ((currentMessageLength = mappedIndexBuffer.getInt(LENGTH_OFFSET)) > 0) {
-                        indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
-                        currentMessagePosition = indexDecoder.position();
-                        lastSourceSeqMap.put(indexDecoder.source(), indexDecoder.sourceSeq());
-                        advanceIndexToNextAppendPosition(currentMessageLength);
-                    }
-                } else {
-                    throw new IllegalStateException("Failed to wrap index buffer to position " + currentIndexPosition);
+            final long firstIndexPosition = regionAccessorSupplier.firstIndexPosition();
+            final boolean checkpointed = tailCheckpoint.load(lastSourceSeqMap);
+            if (checkpointed && tailCheckpoint.indexPosition() <= firstIndexPosition) {
+                //checkpointed index segment has been removed, the scan starts at the first retained index
+                //which is always appended and provides the message position
+                currentIndexPosition = firstIndexPosition;
+                currentMessagePosition = 0;
+            } else if (checkpointed && isAppended(tailCheckpoint.indexPosition() - indexLength)) {
+                currentIndexPosition = tailCheckpoint.indexPosition();
+                currentMessagePosition = tailCheckpoint.messagePosition();
+            } else {
+                //checkpoint is missing or ahead of the index, e.g. index has been cleared
+                lastSourceSeqMap.clear();
+                currentIndexPosition = firstIndexPosition;
+                currentMessagePosition = 0;
+            }
+            try {
+                scanToLastAppendPosition();
+                clearUnpublishedEntries();
+            } catch (final RuntimeException e) {
+                //rescan next time rather than appending in the middle of the index
+                currentIndexPosition = NOT_INITIALISED;
+                throw e;
+            }
+        }
+    }
+
+    private void scanToLastAppendPosition() {
+        int currentMessageLength;
+        do {
+            if (regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
+                if ((currentMessageLength = mappedIndexBuffer.getInt(LENGTH_OFFSET)) > 0) {
+                    indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
+                    currentMessagePosition = indexDecoder.position();
+                    lastSourceSeqMap.put(indexDecoder.source(), indexDecoder.sourceSeq());
+                    onAppended.accept(currentIndexPosition / indexLength, indexDecoder.source(),
+                            indexDecoder.sourceSeq(), indexDecoder.eventTimeNanos());
+                    advanceIndexToNextAppendPosition(currentMessageLength);
+                } else if (currentMessageLength == MmapMultiWriterIndexedAppender.HOLE_LENGTH) {
+                    advanceIndexToNextAppendPosition(0);
                 }
-            } while (currentMessageLength != 0);
+            } else {
+                throw new IllegalStateException("Failed to wrap index buffer to position " + currentIndexPosition);
+            }
+        } while (currentMessageLength > 0 || currentMessageLength == MmapMultiWriterIndexedAppender.HOLE_LENGTH);
+    }
+
+    /**
+     * Entries of a batch that was never published follow the tail with non-zero lengths. They are cleared, so
+     * that pollers do not mistake them for appended messages once the tail entry is appended.
+     */
+    private void clearUnpublishedEntries() {
+        long indexPosition = currentIndexPosition + indexLength;
+        while (true) {
+            wrapIndex(indexPosition);
+            if (mappedIndexBuffer.getInt(LENGTH_OFFSET) == 0) {
+                return;
+            }
+            mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, 0);
+            indexPosition += indexLength;
+        }
+    }
+
+    private boolean isAppended(final long indexPosition) {
+        if (regionAccessorSupplier.indexAccessor().wrap(indexPosition, mappedIndexBuffer)) {
+            return mappedIndexBuffer.getInt(LENGTH_OFFSET) > 0;
+        } else {
+            throw new IllegalStateException("Failed to wrap index buffer to position " + indexPosition);
         }
     }
 
     @Override
     public long lastSourceSeq(final int source) {
+        advanceIndexToLastAppendPosition();
         return lastSourceSeqMap.get(source);
     }
 
     @Override
     public void close() {
+        if (currentIndexPosition != NOT_INITIALISED && appendsSinceCheckpoint > 0) {
+            checkpoint();
+        }
         regionAccessorSupplier.close();
     }
 }
@@ -23,9 +23,11 @@
  */
 package org.tools4j.eventsourcing.mmap;
 
+import org.agrona.DirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.tools4j.eventsourcing.api.MessageConsumer;
 import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.SourceFilter;
 import org.tools4j.eventsourcing.sbe.IndexDecoder;
 
 import java.util.Objects;
@@ -34,13 +36,14 @@ public class MmapIndexedPoller implements Poller {
     private static final int LENGTH_OFFSET = 0;
     private static final int LENGTH_LENGTH = 4;
     private static final int INDEX_OFFSET = LENGTH_OFFSET + LENGTH_LENGTH;
-    //private static final int INDEX_LENGTH = LENGTH_LENGTH + IndexDecoder.ENCODED_LENGTH;
-    private static final int INDEX_LENGTH = 64; //LENGTH_LENGTH + IndexDecoder.ENCODED_LENGTH;
+    private static final long NOT_WRAPPED = -1;
 
     private final RegionAccessorSupplier regionAccessorSupplier;
+    private final IndexFormatReader indexFormat;
+    private int indexLength;
 
     private final UnsafeBuffer mappedIndexBuffer;
-    private final UnsafeBuffer mappedMessageBuffer;
+    private final RegionSpanningMessages messages = new RegionSpanningMessages();
 
     private final Options options;
 
@@ -49,75 +52,173 @@ public class MmapIndexedPoller implements Poller {
 
     private long currentIndex = 0;
     private long currentIndexPosition = 0;
+    private long wrappedIndexPosition = NOT_WRAPPED;
+    private int indexOffset = 0;
 
     public MmapIndexedPoller(final RegionAccessorSupplier regionAccessorSupplier,
                              final Options options) {
         this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
         this.options = Objects.requireNonNull(options);
+        this.indexFormat = new IndexFormatReader(regionAccessorSupplier);
+        this.indexLength = indexFormat.indexLength();
+        seek(Math.max(firstIndex(), options.cursor().committedIndex()));
 
         this.mappedIndexBuffer = new UnsafeBuffer();
-        this.mappedMessageBuffer = new UnsafeBuffer();
+    }
+
+    /**
+     * Re-reads the index format of a queue that was empty when the poller was created.
+     */
+    private void refreshIndexFormat() {
+        if (indexFormat.refresh()) {
+            indexLength = indexFormat.indexLength();
+            currentIndexPosition = currentIndex * indexLength;
+            wrappedIndexPosition = NOT_WRAPPED;
+        }
     }
 
     @Override
     public int poll(final MessageConsumer processingHandler) {
-        wrapIndex();
-
-        if (options.resetWhen().test(currentIndex)) {
-            final long indexBeforeReset = currentIndex;
-            currentIndex = 0;
-            currentIndexPosition = 0;
-            options.onReset().accept(indexBeforeReset);
-        }
+        return poll(processingHandler, 1);
+    }
 
-        final int messageLength = currentMessageLength();
-        if (messageLength <= 0) {
-            return 0;
+    /**
+     * Polls up to maxMessages index entries. Consecutive entries in the same region are read from the
+     * already wrapped index buffer, so the index accessor is only wrapped again when the poller moves
+     * into another region. Runs of holes and of entries filtered out by source are passed over within a
+     * single iteration.
+     */
+    @Override
+    public int poll(final MessageConsumer processingHandler, final int maxMessages) {
+        if (!indexFormat.known()) {
+            refreshIndexFormat();
         }
-
-        final long messagePosition = indexDecoder.position();
-        final int source = indexDecoder.source();
-        final long sourceSeq = indexDecoder.sourceSeq();
-        final long eventTimeNanos = indexDecoder.eventTimeNanos();
-
-        if (options.skipWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
-            options.onProcessingSkipped().accept(currentIndex, source, sourceSeq, eventTimeNanos);
-            advanceIndexToNextAppendPosition();
-            return 0;
-        } else if (!options.pauseWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
-            final int done = pollMessages(messagePosition, messageLength,  source, sourceSeq, eventTimeNanos, processingHandler);
-            advanceIndexToNextAppendPosition();
-            return done;
-        } else {
-            return 0;
+        final SourceFilter sourceFilter = options.sourceFilter();
+        int done = 0;
+        for (int polled = 0; polled < maxMessages; polled++) {
+            if (options.resetWhen().test(currentIndex)) {
+                final long indexBeforeReset = currentIndex;
+                seek(firstIndex());
+                options.cursor().commit(currentIndex);
+                options.onReset().accept(indexBeforeReset);
+            }
+
+            wrapIndex(currentIndexPosition);
+
+            int messageLength;
+            final long indexBeforeRun = currentIndex;
+            while ((messageLength = currentMessageLength()) == MmapMultiWriterIndexedAppender.HOLE_LENGTH ||
+                    (messageLength > 0 && !sourceFilter.matches(indexDecoder.source()))) {
+                //pass over entry abandoned by a crashed writer or of a filtered source
+                currentIndex++;
+                currentIndexPosition += indexLength;
+                wrapIndex(currentIndexPosition);
+            }
+            if (currentIndex != indexBeforeRun) {
+                options.cursor().commit(currentIndex);
+            }
+            if (messageLength <= 0) {
+                //not appended yet or claimed by a multi-writer appender but not yet published
+                break;
+            }
+
+            final long messagePosition = indexDecoder.position();
+            final int source = indexDecoder.source();
+            final long sourceSeq = indexDecoder.sourceSeq();
+            final long eventTimeNanos = indexDecoder.eventTimeNanos();
+
+            if (options.skipWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
+                options.onProcessingSkipped().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+                advanceIndexToNextAppendPosition();
+            } else if (!options.pauseWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
+                done += pollMessages(messagePosition, messageLength,  source, sourceSeq, eventTimeNanos, processingHandler);
+                advanceIndexToNextAppendPosition();
+            } else {
+                break;
+            }
         }
+        return done;
     }
 
     private int currentMessageLength() {
-        return mappedIndexBuffer.getIntVolatile(LENGTH_OFFSET);
+        return mappedIndexBuffer.getIntVolatile(indexOffset + LENGTH_OFFSET);
     }
 
     private int pollMessages(final long messagePosition, final int messageLength, final int source, final long sourceSeq, final long eventTimeNanos,
                              final MessageConsumer processingHandler) {
-        if (!regionAccessorSupplier.messageAccessor().wrap(messagePosition, mappedMessageBuffer)) {
-            throw new IllegalStateException("Failed to wrap message buffer to position " + messagePosition);
-        }
+        final DirectBuffer messageBuffer = messages.read(regionAccessorSupplier.messageAccessor(), messagePosition, messageLength);
         options.onProcessingStart().accept(currentIndex, source, sourceSeq, eventTimeNanos);
-        final int done = options.bufferPoller().poll(mappedMessageBuffer, 0, messageLength, processingHandler);
+        final int done = options.bufferPoller().poll(messageBuffer, 0, messageLength, processingHandler);
         options.onProcessingComplete().accept(currentIndex, source, sourceSeq, eventTimeNanos);
         return done;
     }
 
-    private void wrapIndex() {
-        if (!regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
-            throw new IllegalStateException("Failed to wrap index buffer to position " + currentIndexPosition);
+    private void wrapIndex(final long indexPosition) {
+        final long offset = indexPosition - wrappedIndexPosition;
+        if (wrappedIndexPosition == NOT_WRAPPED || offset < 0 || offset + indexLength > mappedIndexBuffer.capacity()) {
+            if (!regionAccessorSupplier.indexAccessor().wrap(indexPosition, mappedIndexBuffer)) {
+                throw new IllegalStateException("Failed to wrap index buffer to position " + indexPosition);
+            }
+            wrappedIndexPosition = indexPosition;
+            indexOffset = 0;
+        } else {
+            indexOffset = (int) offset;
         }
-        indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
+        indexDecoder.wrap(mappedIndexBuffer, indexOffset + INDEX_OFFSET);
+    }
+
+    @Override
+    public boolean messageAvailable() {
+        if (!indexFormat.known()) {
+            refreshIndexFormat();
+        }
+        wrapIndex(currentIndexPosition);
+        final int messageLength = currentMessageLength();
+        return messageLength != 0 && messageLength != MmapMultiWriterIndexedAppender.RESERVED_LENGTH;
+    }
+
+    @Override
+    public void seek(final long index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Index [" + index + "] must be positive");
+        }
+        currentIndex = index;
+        currentIndexPosition = index * indexLength;
+    }
+
+    @Override
+    public long seekToTime(final long timeNanos) {
+        if (!indexFormat.known()) {
+            refreshIndexFormat();
+        }
+        //entries beyond the last appended one have zero length and are treated as not before timeNanos
+        long low = firstIndex();
+        long high = regionAccessorSupplier.indexFileLength() / indexLength;
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (isBefore(mid, timeNanos)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        seek(low);
+        return low;
+    }
+
+    private boolean isBefore(final long index, final long timeNanos) {
+        wrapIndex(index * indexLength);
+        return currentMessageLength() > 0 && indexDecoder.eventTimeNanos() < timeNanos;
+    }
+
+    private long firstIndex() {
+        return regionAccessorSupplier.firstIndexPosition() / indexLength;
     }
 
     private void advanceIndexToNextAppendPosition() {
         currentIndex++;
-        currentIndexPosition += INDEX_LENGTH;
+        currentIndexPosition += indexLength;
+        options.cursor().commit(currentIndex);
     }
 
     @Override
@@ -37,6 +37,8 @@ public class MmapIndexedPollerFactory implements IndexedPollerFactory {
     private final int regionSize;
     private final int regionRingSize;
     private final int regionsToMapAhead;
+    private final long segmentSize;
+    private final SharedMappingPool mappingPool;
 
     public MmapIndexedPollerFactory(final String directory,
                                     final String filePrefix,
@@ -44,25 +46,76 @@ public class MmapIndexedPollerFactory implements IndexedPollerFactory {
                                     final int regionSize,
                                     final int regionRingSize,
                                     final int regionsToMapAhead) throws IOException {
+        this(directory, filePrefix, regionRingFactory, regionSize, regionRingSize, regionsToMapAhead, 0, null);
+    }
+
+    /**
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix for index, message and header files
+     * @param regionRingFactory - region ring factory
+     * @param regionSize - region size in bytes
+     * @param regionRingSize - number of regions in a ring
+     * @param regionsToMapAhead - number of regions to map ahead
+     * @param segmentSize - segment size of a segmented queue, 0 if the queue is not segmented
+     * @param mappingPool - mapping pool shared by the pollers, null if every poller maps its own region rings
+     * @throws IOException when the files could not be mapped
+     */
+    public MmapIndexedPollerFactory(final String directory,
+                                    final String filePrefix,
+                                    final RegionRingFactory regionRingFactory,
+                                    final int regionSize,
+                                    final int regionRingSize,
+                                    final int regionsToMapAhead,
+                                    final long segmentSize,
+                                    final SharedMappingPool mappingPool) throws IOException {
         this.directory = Objects.requireNonNull(directory);
         this.filePrefix = Objects.requireNonNull(filePrefix);
         this.regionRingFactory = Objects.requireNonNull(regionRingFactory);
         this.regionSize = regionSize;
         this.regionRingSize = regionRingSize;
         this.regionsToMapAhead = regionsToMapAhead;
+        this.segmentSize = segmentSize;
+        this.mappingPool = mappingPool;
     }
 
     @Override
     public Poller createPoller(final Poller.Options options) throws IOException {
-        return new MmapIndexedPoller(
+        return new MmapIndexedPoller(regionAccessorSupplier(), options);
+    }
+
+    /**
+     * Creates a poller polling backwards from the last appended message.
+     * @param options poller options
+     * @return new instance of a reverse poller
+     * @throws IOException when a backing file could not be mapped
+     */
+    public MmapIndexedReversePoller createReversePoller(final Poller.Options options) throws IOException {
+        return new MmapIndexedReversePoller(regionAccessorSupplier(), options);
+    }
+
+    private RegionAccessorSupplier regionAccessorSupplier() throws IOException {
+        if (mappingPool != null) {
+            return segmentSize > 0 ?
+                    RegionAccessorSupplier.forReadOnlySegmented(mappingPool, directory, filePrefix, regionSize,
+                            regionsToMapAhead, segmentSize) :
+                    RegionAccessorSupplier.forReadOnly(mappingPool, directory, filePrefix, regionSize,
+                            regionsToMapAhead);
+        }
+        return segmentSize > 0 ?
+                RegionAccessorSupplier.forReadOnlySegmented(
+                        directory,
+                        filePrefix,
+                        regionRingFactory,
+                        regionSize,
+                        regionRingSize,
+                        regionsToMapAhead,
+                        segmentSize) :
                 RegionAccessorSupplier.forReadOnly(
                         directory,
                         filePrefix,
                         regionRingFactory,
                         regionSize,
                         regionRingSize,
-                        regionsToMapAhead),
-                options
-        );
+                        regionsToMapAhead);
     }
 }
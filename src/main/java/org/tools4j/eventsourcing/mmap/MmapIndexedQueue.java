@@ -23,10 +23,12 @@
  */
 package org.tools4j.eventsourcing.mmap;
 
+import org.tools4j.eventsourcing.api.IndexConsumer;
 import org.tools4j.eventsourcing.api.IndexedAppender;
 import org.tools4j.eventsourcing.api.IndexedPollerFactory;
 import org.tools4j.eventsourcing.api.IndexedQueue;
 import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.SourceSeqIndex;
 import org.tools4j.mmap.region.api.RegionRingFactory;
 
 import java.io.IOException;
@@ -34,6 +36,10 @@ import java.io.IOException;
 public final class MmapIndexedQueue implements IndexedQueue {
     private final IndexedPollerFactory pollerFactory;
     private final MmapIndexedAppender mmapIndexedAppender;
+    private final MmapMultiWriterIndexedAppender multiWriterAppender;
+    private final MmapSourceSeqIndex sourceSeqIndex;
+    private final AppendNotifier appendNotifier;
+    private final AutoCloseable pretoucherRegistration;
 
     public MmapIndexedQueue(final String directory,
                             final String filePrefix,
@@ -42,18 +48,64 @@ public final class MmapIndexedQueue implements IndexedQueue {
                             final int regionSize,
                             final int regionRingSize,
                             final int regionsToMapAhead,
-                            final long maxFileSize) throws IOException {
+                            final long maxFileSize,
+                            final long segmentSize,
+                            final IndexFormat indexFormat,
+                            final int checkpointInterval,
+                            final long sourceSeqIndexCapacity,
+                            final SharedMappingPool mappingPool,
+                            final boolean multiWriter,
+                            final RegionPretoucher pretoucher) throws IOException {
+        if (multiWriter && (segmentSize > 0 || sourceSeqIndexCapacity > 0)) {
+            throw new IllegalArgumentException("multiWriter queue supports neither segmentSize nor sourceSeqIndexCapacity");
+        }
 
-        this.mmapIndexedAppender = new MmapIndexedAppender(
-                RegionAccessorSupplier.forReadWrite(
-                        directory,
-                        filePrefix,
-                        clearFiles,
-                        regionRingFactory,
-                        regionSize,
-                        regionRingSize,
-                        regionsToMapAhead,
-                        maxFileSize));
+        this.sourceSeqIndex = sourceSeqIndexCapacity > 0 ?
+                MmapSourceSeqIndex.forReadWrite(directory, filePrefix, clearFiles, sourceSeqIndexCapacity) : null;
+
+        this.multiWriterAppender = multiWriter ?
+                new MmapMultiWriterIndexedAppender(
+                        RegionAccessorSupplier.forReadWritePreallocated(
+                                directory,
+                                filePrefix,
+                                clearFiles,
+                                regionRingFactory,
+                                regionSize,
+                                regionRingSize,
+                                regionsToMapAhead,
+                                maxFileSize),
+                        indexFormat) : null;
+
+        final RegionAccessorSupplier regionAccessorSupplier = multiWriter ? null :
+                segmentSize > 0 ?
+                        RegionAccessorSupplier.forReadWriteSegmented(
+                                directory,
+                                filePrefix,
+                                clearFiles,
+                                regionRingFactory,
+                                regionSize,
+                                regionRingSize,
+                                regionsToMapAhead,
+                                segmentSize,
+                                maxFileSize) :
+                        RegionAccessorSupplier.forReadWrite(
+                                directory,
+                                filePrefix,
+                                clearFiles,
+                                regionRingFactory,
+                                regionSize,
+                                regionRingSize,
+                                regionsToMapAhead,
+                                maxFileSize);
+
+        this.appendNotifier = multiWriter ? null : AppendNotifier.forHeaderFile(directory + "/" + filePrefix + "_header");
+
+        this.mmapIndexedAppender = multiWriter ? null : new MmapIndexedAppender(
+                regionAccessorSupplier,
+                indexFormat,
+                checkpointInterval,
+                (sourceSeqIndex != null ? sourceSeqIndex : IndexConsumer.noop())
+                        .andThen((index, source, sourceSeq, eventTimeNanos) -> appendNotifier.signal()));
 
         this.pollerFactory = new MmapIndexedPollerFactory(
                 directory,
@@ -61,12 +113,17 @@ public final class MmapIndexedQueue implements IndexedQueue {
                 regionRingFactory,
                 regionSize,
                 regionRingSize,
-                regionsToMapAhead);
+                regionsToMapAhead,
+                segmentSize,
+                mappingPool);
+
+        this.pretoucherRegistration = pretoucher != null ?
+                pretoucher.register(directory, filePrefix, regionSize, segmentSize, maxFileSize) : null;
     }
 
     @Override
     public IndexedAppender appender() {
-        return this.mmapIndexedAppender;
+        return multiWriterAppender != null ? multiWriterAppender : mmapIndexedAppender;
     }
 
     @Override
@@ -74,8 +131,34 @@ public final class MmapIndexedQueue implements IndexedQueue {
         return pollerFactory.createPoller(options);
     }
 
+    /**
+     * @return (source, sourceSeq) to index lookup maintained by the appender of this queue
+     * @throws IllegalStateException if the queue has been built without sourceSeqIndexCapacity
+     */
+    public SourceSeqIndex sourceSeqIndex() {
+        if (sourceSeqIndex == null) {
+            throw new IllegalStateException("sourceSeqIndexCapacity is not configured");
+        }
+        return sourceSeqIndex;
+    }
+
     @Override
     public void close() {
-        mmapIndexedAppender.close();
+        if (pretoucherRegistration != null) {
+            try {
+                pretoucherRegistration.close();
+            } catch (final Exception e) {
+                throw new IllegalStateException("Failed to unregister from pretoucher", e);
+            }
+        }
+        if (multiWriterAppender != null) {
+            multiWriterAppender.close();
+        } else {
+            mmapIndexedAppender.close();
+            appendNotifier.close();
+        }
+        if (sourceSeqIndex != null) {
+            sourceSeqIndex.close();
+        }
     }
 }
@@ -0,0 +1,232 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.SourceFilter;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+
+import java.util.Objects;
+
+/**
+ * Polls the index backwards starting at the last appended entry, so that recent messages are read at a cost
+ * proportional to the number of polled entries. The last appended entry is found by a forward scan from the
+ * last known published position, i.e. the tail found before or the tail checkpoint, up to the first entry that
+ * is empty or reserved by a multi-writer appender. A binary search is not possible as entries of a batch that
+ * is not published yet and reserved entries of multi-writer queues are followed by entries with a length.
+ * Options are applied as for forward pollers, reset moves the poller back to the tail and polling ends at the
+ * first available entry.
+ */
+public class MmapIndexedReversePoller implements Poller {
+    private static final int LENGTH_OFFSET = 0;
+    private static final int LENGTH_LENGTH = 4;
+    private static final int INDEX_OFFSET = LENGTH_OFFSET + LENGTH_LENGTH;
+    private static final long NOT_WRAPPED = -1;
+
+    private final RegionAccessorSupplier regionAccessorSupplier;
+    private final IndexFormatReader indexFormat;
+    private int indexLength;
+
+    private final UnsafeBuffer mappedIndexBuffer;
+    private final RegionSpanningMessages messages = new RegionSpanningMessages();
+
+    private final Options options;
+
+    private final IndexDecoder indexDecoder = new IndexDecoder();
+    private final TailCheckpoint tailCheckpoint;
+
+    private long currentIndex = 0;
+    private long tailIndex = 0;
+    private long wrappedIndexPosition = NOT_WRAPPED;
+    private int indexOffset = 0;
+
+    public MmapIndexedReversePoller(final RegionAccessorSupplier regionAccessorSupplier,
+                                    final Options options) {
+        this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.options = Objects.requireNonNull(options);
+        this.indexFormat = new IndexFormatReader(regionAccessorSupplier);
+        this.indexLength = indexFormat.indexLength();
+        this.tailCheckpoint = new TailCheckpoint(regionAccessorSupplier.headerAccessor());
+
+        this.mappedIndexBuffer = new UnsafeBuffer();
+        seekToTail();
+    }
+
+    /**
+     * Re-reads the index format of a queue that was empty when the poller was created.
+     */
+    private void refreshIndexFormat() {
+        if (indexFormat.refresh()) {
+            indexLength = indexFormat.indexLength();
+            wrappedIndexPosition = NOT_WRAPPED;
+            tailIndex = 0;
+        }
+    }
+
+    @Override
+    public int poll(final MessageConsumer processingHandler) {
+        return poll(processingHandler, 1);
+    }
+
+    @Override
+    public int poll(final MessageConsumer processingHandler, final int maxMessages) {
+        if (!indexFormat.known()) {
+            refreshIndexFormat();
+        }
+        final SourceFilter sourceFilter = options.sourceFilter();
+        final long firstIndex = firstIndex();
+        int done = 0;
+        for (int polled = 0; polled < maxMessages; polled++) {
+            if (options.resetWhen().test(currentIndex)) {
+                final long indexBeforeReset = currentIndex;
+                seekToTail();
+                options.onReset().accept(indexBeforeReset);
+            }
+
+            int messageLength = 0;
+            while (currentIndex >= firstIndex &&
+                    ((messageLength = messageLength(currentIndex)) == MmapMultiWriterIndexedAppender.HOLE_LENGTH ||
+                            (messageLength > 0 && !sourceFilter.matches(indexDecoder.source())))) {
+                //pass over entry abandoned by a crashed writer or of a filtered source
+                currentIndex--;
+            }
+            if (currentIndex < firstIndex || messageLength <= 0) {
+                break;
+            }
+
+            final long messagePosition = indexDecoder.position();
+            final int source = indexDecoder.source();
+            final long sourceSeq = indexDecoder.sourceSeq();
+            final long eventTimeNanos = indexDecoder.eventTimeNanos();
+
+            if (options.skipWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
+                options.onProcessingSkipped().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+                currentIndex--;
+            } else if (!options.pauseWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
+                done += pollMessages(messagePosition, messageLength, source, sourceSeq, eventTimeNanos, processingHandler);
+                currentIndex--;
+            } else {
+                break;
+            }
+        }
+        return done;
+    }
+
+    private int pollMessages(final long messagePosition, final int messageLength, final int source, final long sourceSeq, final long eventTimeNanos,
+                             final MessageConsumer processingHandler) {
+        final DirectBuffer messageBuffer = messages.read(regionAccessorSupplier.messageAccessor(), messagePosition, messageLength);
+        options.onProcessingStart().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+        final int done = options.bufferPoller().poll(messageBuffer, 0, messageLength, processingHandler);
+        options.onProcessingComplete().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+        return done;
+    }
+
+    /**
+     * Wraps the whole region of the entry, so that entries of the same region are read from the wrapped buffer
+     * in either direction.
+     */
+    private int messageLength(final long index) {
+        final long indexPosition = index * indexLength;
+        final long offset = indexPosition - wrappedIndexPosition;
+        if (wrappedIndexPosition == NOT_WRAPPED || offset < 0 || offset + indexLength > mappedIndexBuffer.capacity()) {
+            final long regionPosition = indexPosition - indexPosition % regionAccessorSupplier.indexAccessor().size();
+            if (!regionAccessorSupplier.indexAccessor().wrap(regionPosition, mappedIndexBuffer)) {
+                throw new IllegalStateException("Failed to wrap index buffer to position " + regionPosition);
+            }
+            wrappedIndexPosition = regionPosition;
+            indexOffset = (int) (indexPosition - regionPosition);
+        } else {
+            indexOffset = (int) offset;
+        }
+        indexDecoder.wrap(mappedIndexBuffer, indexOffset + INDEX_OFFSET);
+        return mappedIndexBuffer.getIntVolatile(indexOffset + LENGTH_OFFSET);
+    }
+
+    @Override
+    public boolean messageAvailable() {
+        if (!indexFormat.known()) {
+            refreshIndexFormat();
+        }
+        if (currentIndex < firstIndex()) {
+            return false;
+        }
+        final int messageLength = messageLength(currentIndex);
+        return messageLength != 0 && messageLength != MmapMultiWriterIndexedAppender.RESERVED_LENGTH;
+    }
+
+    /**
+     * Moves the poller to the given index so that the next poll consumes the message at the index and moves
+     * towards the start of the queue.
+     * @param index index of the next message to be polled, zero based
+     */
+    @Override
+    public void seek(final long index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Index [" + index + "] must be positive");
+        }
+        currentIndex = index;
+    }
+
+    /**
+     * Moves the poller to the last appended entry.
+     * @return index of the last appended entry, or first index minus one if the queue is empty
+     */
+    public long seekToTail() {
+        if (!indexFormat.known()) {
+            refreshIndexFormat();
+        }
+        final long firstIndex = firstIndex();
+        long index = Math.max(firstIndex, tailIndex);
+        if (tailCheckpoint.loadPositions()) {
+            final long checkpointIndex = tailCheckpoint.indexPosition() / indexLength;
+            if (checkpointIndex > index && isPublished(checkpointIndex - 1)) {
+                index = checkpointIndex;
+            }
+        }
+        final long endIndex = regionAccessorSupplier.indexFileLength() / indexLength;
+        while (index < endIndex && isPublished(index)) {
+            index++;
+        }
+        tailIndex = index;
+        currentIndex = index - 1;
+        return currentIndex;
+    }
+
+    private boolean isPublished(final long index) {
+        final int messageLength = messageLength(index);
+        return messageLength > 0 || messageLength == MmapMultiWriterIndexedAppender.HOLE_LENGTH;
+    }
+
+    private long firstIndex() {
+        return regionAccessorSupplier.firstIndexPosition() / indexLength;
+    }
+
+    @Override
+    public void close() {
+        regionAccessorSupplier.close();
+    }
+}
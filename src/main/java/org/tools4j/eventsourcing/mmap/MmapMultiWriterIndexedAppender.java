@@ -0,0 +1,167 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.IndexedAppender;
+import org.tools4j.eventsourcing.api.SourceSeqTable;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.eventsourcing.sbe.IndexEncoder;
+
+import java.util.Objects;
+
+/**
+ * An appender that can append to the same queue concurrently with other appenders, including appenders of other
+ * processes. Index space is reserved with an atomic increment of the index tail stored in the header file, the
+ * reserved index entry is claimed by a compare-and-set of its length to {@link #RESERVED_LENGTH}. Only the writer
+ * that claimed the entry writes message space reserved from the message tail and the index fields, and publishes
+ * the entry by a compare-and-set of its length from the reserved marker to the message length.
+ * A writer that crashed after reserving or claiming an index entry leaves a hole that stops pollers until it is
+ * marked by {@link IndexHoleFiller}. If a slow writer finds its entry marked as a hole, it appends the message again.
+ * Message positions are not ordered by index as writers reserve index and message space independently.
+ * The last sourceSeq of every source is loaded by a scan of the index when the appender is created.
+ * <p>
+ * An instance is not thread-safe, it coordinates with the appenders of other instances only. Threads of the same
+ * process appending concurrently need an instance each, note that {@link MmapIndexedQueue#appender()} returns
+ * the same instance to all threads.
+ */
+public final class MmapMultiWriterIndexedAppender implements IndexedAppender, AutoCloseable {
+    public static final int INDEX_TAIL_OFFSET = 64;
+    public static final int MESSAGE_TAIL_OFFSET = 128;
+    public static final int HOLE_LENGTH = -1;
+    public static final int RESERVED_LENGTH = -2;
+    private static final int LENGTH_OFFSET = 0;
+    private static final int LENGTH_LENGTH = 4;
+    private static final int INDEX_OFFSET = LENGTH_OFFSET + LENGTH_LENGTH;
+
+    private final RegionAccessorSupplier regionAccessorSupplier;
+    private final int indexLength;
+
+    private final UnsafeBuffer headerBuffer;
+    private final UnsafeBuffer mappedIndexBuffer;
+    private final RegionSpanningMessages messages = new RegionSpanningMessages();
+
+    private final IndexEncoder indexEncoder = new IndexEncoder();
+    private final IndexDecoder indexDecoder = new IndexDecoder();
+
+    private final SourceSeqTable lastSourceSeqMap = SourceSeqTable.create(NULL_INDEX);
+    private final AppendNotifier appendNotifier;
+
+    /**
+     * @param regionAccessorSupplier - region accessor supplier, the index and message files have to be
+     *                               preallocated so that concurrent writers never resize them
+     * @param indexFormat - index format of a new queue, existing queues keep their recorded format
+     */
+    public MmapMultiWriterIndexedAppender(final RegionAccessorSupplier regionAccessorSupplier,
+                                          final IndexFormat indexFormat) {
+        this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.indexLength = IndexFormat.init(regionAccessorSupplier.headerAccessor(),
+                regionAccessorSupplier.indexAccessor(), Objects.requireNonNull(indexFormat)).indexLength();
+
+        this.headerBuffer = new UnsafeBuffer();
+        this.mappedIndexBuffer = new UnsafeBuffer();
+
+        if (!regionAccessorSupplier.headerAccessor().wrap(0, headerBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer");
+        }
+        this.appendNotifier = new AppendNotifier(headerBuffer);
+        init();
+    }
+
+    /**
+     * Loads last sourceSeqs of all sources. If the index tail has not been initialised, for instance when the
+     * queue has been appended by a single writer appender, the tails are initialised with the end of the scanned
+     * index, the message tail first and the index tail last, as writers only append once the index tail is set.
+     * Concurrent initialisers scan the same entries, so whichever compare-and-set succeeds stores the same tails,
+     * and an initialiser that finds the message tail set completes the initialisation of the index tail itself
+     * rather than depending on another initialiser that might have crashed in between.
+     */
+    private void init() {
+        final long indexTail = headerBuffer.getLongVolatile(INDEX_TAIL_OFFSET);
+
+        long indexPosition = regionAccessorSupplier.firstIndexPosition();
+        long messageEnd = 0;
+        while (true) {
+            wrapIndex(indexPosition);
+            final int length = mappedIndexBuffer.getIntVolatile(LENGTH_OFFSET);
+            if (length == 0 && indexPosition >= indexTail) {
+                break;
+            }
+            if (length > 0) {
+                indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
+                lastSourceSeqMap.put(indexDecoder.source(), indexDecoder.sourceSeq());
+                messageEnd = Math.max(messageEnd, indexDecoder.position() + length);
+            }
+            indexPosition += indexLength;
+        }
+        if (indexTail == 0 && indexPosition > 0) {
+            headerBuffer.compareAndSetLong(MESSAGE_TAIL_OFFSET, 0, messageEnd);
+            headerBuffer.compareAndSetLong(INDEX_TAIL_OFFSET, 0, indexPosition);
+        }
+    }
+
+    @Override
+    public void accept(final int source, final long sourceSeq, final long eventTimeNanos, final DirectBuffer buffer, final int offset, final int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("length " + length + " must be positive");
+        }
+        while (true) {
+            final long indexPosition = headerBuffer.getAndAddLong(INDEX_TAIL_OFFSET, indexLength);
+            wrapIndex(indexPosition);
+            if (mappedIndexBuffer.compareAndSetInt(LENGTH_OFFSET, 0, RESERVED_LENGTH)) {
+                final long messagePosition = headerBuffer.getAndAddLong(MESSAGE_TAIL_OFFSET, length);
+                messages.write(regionAccessorSupplier.messageAccessor(), messagePosition, buffer, offset, length);
+                indexEncoder.wrap(mappedIndexBuffer, INDEX_OFFSET)
+                        .position(messagePosition)
+                        .source(source)
+                        .sourceSeq(sourceSeq)
+                        .eventTimeNanos(eventTimeNanos);
+                if (mappedIndexBuffer.compareAndSetInt(LENGTH_OFFSET, RESERVED_LENGTH, length)) {
+                    break;
+                }
+            }
+            //entry has been marked as a hole, append again
+        }
+
+        lastSourceSeqMap.put(source, sourceSeq);
+        appendNotifier.signal();
+    }
+
+    private void wrapIndex(final long indexPosition) {
+        if (!regionAccessorSupplier.indexAccessor().wrap(indexPosition, mappedIndexBuffer)) {
+            throw new IllegalStateException("Failed to wrap index buffer for position " + indexPosition);
+        }
+    }
+
+    @Override
+    public long lastSourceSeq(final int source) {
+        return lastSourceSeqMap.get(source);
+    }
+
+    @Override
+    public void close() {
+        regionAccessorSupplier.close();
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.tools4j.nobark.loop.Step;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Forces appended messages of a queue to disk according to the durability policy. All messages appended since
+ * the last flush are forced together, message files first and index files second, so that a durable index entry
+ * never refers to a message that is not durable. The step is meant to be run on a background thread so that
+ * appenders are never blocked by forcing.
+ */
+public final class MmapQueueFlusher implements Step, AutoCloseable {
+    public static final long NULL_INDEX = -1;
+
+    private final AppendedTail appendedTail;
+    private final FileForcer indexForcer;
+    private final FileForcer messageForcer;
+    private final DurabilityPolicy durabilityPolicy;
+    private final LongSupplier nanoClock;
+
+    private long flushedSize;
+    private long flushedIndexPosition;
+    private long flushedMessagePosition;
+    private long lastFlushNanos;
+    private volatile long durableIndex = NULL_INDEX;
+
+    /**
+     * Tail of the appended index and messages.
+     */
+    public interface AppendedTail extends AutoCloseable {
+        /**
+         * Reads the current tail.
+         * @return number of index entries appended so far
+         */
+        long read();
+
+        /**
+         * @return index position after the last read entry
+         */
+        long indexPosition();
+
+        /**
+         * @return message position after the last read message
+         */
+        long messagePosition();
+
+        @Override
+        void close();
+    }
+
+    /**
+     * @param appendedTail - tail of the queue
+     * @param indexFileName - name of the index file, or base name of the index segments
+     * @param messageFileName - name of the message file, or base name of the message segments
+     * @param segmentSize - segment size in bytes or zero if the queue is not segmented
+     * @param durabilityPolicy - durability policy
+     * @param nanoClock - nano clock
+     */
+    public MmapQueueFlusher(final AppendedTail appendedTail,
+                            final String indexFileName,
+                            final String messageFileName,
+                            final long segmentSize,
+                            final DurabilityPolicy durabilityPolicy,
+                            final LongSupplier nanoClock) {
+        this.appendedTail = Objects.requireNonNull(appendedTail);
+        this.indexForcer = new FileForcer(indexFileName, segmentSize);
+        this.messageForcer = new FileForcer(messageFileName, segmentSize);
+        this.durabilityPolicy = Objects.requireNonNull(durabilityPolicy);
+        this.nanoClock = Objects.requireNonNull(nanoClock);
+        this.lastFlushNanos = nanoClock.getAsLong();
+    }
+
+    @Override
+    public boolean perform() {
+        final long size = appendedTail.read();
+        if (size < flushedSize) {
+            //the tail has been truncated
+            flushedSize = size;
+            flushedIndexPosition = appendedTail.indexPosition();
+            flushedMessagePosition = appendedTail.messagePosition();
+            durableIndex = size - 1;
+        }
+        final long nowNanos = nanoClock.getAsLong();
+        if (!durabilityPolicy.flushRequired(size - flushedSize, nowNanos - lastFlushNanos)) {
+            return false;
+        }
+        final long indexPosition = appendedTail.indexPosition();
+        final long messagePosition = appendedTail.messagePosition();
+        messageForcer.force(flushedMessagePosition, messagePosition);
+        indexForcer.force(flushedIndexPosition, indexPosition);
+
+        flushedSize = size;
+        flushedIndexPosition = indexPosition;
+        flushedMessagePosition = messagePosition;
+        lastFlushNanos = nowNanos;
+        durableIndex = size - 1;
+        return true;
+    }
+
+    /**
+     * @return the last index forced to disk, or NULL_INDEX if none
+     */
+    public long durableIndex() {
+        return durableIndex;
+    }
+
+    @Override
+    public void close() {
+        appendedTail.close();
+        indexForcer.close();
+        messageForcer.close();
+    }
+
+    private static final class FileForcer {
+        private final String fileName;
+        private final long segmentSize;
+
+        private FileChannel fileChannel;
+        private long segment = SegmentFiles.NO_SEGMENT;
+
+        FileForcer(final String fileName, final long segmentSize) {
+            this.fileName = Objects.requireNonNull(fileName);
+            this.segmentSize = segmentSize;
+        }
+
+        void force(final long fromPosition, final long toPosition) {
+            if (segmentSize <= 0) {
+                force(fileName, 0);
+            } else if (toPosition > fromPosition) {
+                for (long s = fromPosition / segmentSize; s <= (toPosition - 1) / segmentSize; s++) {
+                    force(SegmentFiles.fileName(fileName, s), s);
+                }
+            }
+        }
+
+        private void force(final String name, final long segment) {
+            try {
+                if (fileChannel == null || this.segment != segment) {
+                    close();
+                    fileChannel = FileChannel.open(Paths.get(name), StandardOpenOption.READ);
+                    this.segment = segment;
+                }
+                fileChannel.force(false);
+            } catch (final NoSuchFileException e) {
+                //segment has been removed by retention
+            } catch (final IOException e) {
+                throw new IllegalStateException("Failed to force " + name, e);
+            }
+        }
+
+        void close() {
+            if (fileChannel != null) {
+                try {
+                    fileChannel.close();
+                } catch (final IOException e) {
+                    throw new IllegalStateException("Failed to close " + fileName, e);
+                } finally {
+                    fileChannel = null;
+                    segment = SegmentFiles.NO_SEGMENT;
+                }
+            }
+        }
+    }
+}
@@ -39,6 +39,17 @@ public final class MmapReadOnlyIndexedQueue implements IndexedQueue {
                                     final int regionSize,
                                     final int regionRingSize,
                                     final int regionsToMapAhead) throws IOException {
+        this(directory, filePrefix, regionRingFactory, regionSize, regionRingSize, regionsToMapAhead, 0, null);
+    }
+
+    public MmapReadOnlyIndexedQueue(final String directory,
+                                    final String filePrefix,
+                                    final RegionRingFactory regionRingFactory,
+                                    final int regionSize,
+                                    final int regionRingSize,
+                                    final int regionsToMapAhead,
+                                    final long segmentSize,
+                                    final SharedMappingPool mappingPool) throws IOException {
 
         this.appender = new IndexedAppender() {
             @Override
@@ -58,7 +69,9 @@ public final class MmapReadOnlyIndexedQueue implements IndexedQueue {
                 regionRingFactory,
                 regionSize,
                 regionRingSize,
-                regionsToMapAhead);
+                regionsToMapAhead,
+                segmentSize,
+                mappingPool);
     }
 
     @Override
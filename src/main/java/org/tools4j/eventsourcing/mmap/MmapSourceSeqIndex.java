@@ -0,0 +1,213 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.IndexConsumer;
+import org.tools4j.eventsourcing.api.SourceSeqIndex;
+import org.tools4j.mmap.region.impl.MappedFile;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent hash table of (source, sourceSeq) to index with open addressing and linear probing, stored in
+ * a "_lookup" file next to the index and message files.
+ * As the table is accessed randomly it is mapped completely (in chunks of 1GB) rather than through a region ring.
+ * The table never grows: it has at least twice as many slots as the configured capacity, which keeps probe
+ * sequences short, and an IllegalStateException is thrown when a new key would exceed the capacity.
+ * The number of entries is counted when an existing file is opened for writing.
+ * The index field of a slot is stored as index + 1 with ordered semantic so that a zero value marks an empty slot
+ * and readers never observe a partially written slot.
+ * Appends are accepted as IndexConsumer. A key that is already present is not overwritten, so that
+ * re-appending the index after recovery is idempotent.
+ */
+public final class MmapSourceSeqIndex implements SourceSeqIndex, IndexConsumer {
+    private static final int SLOT_LENGTH = 32;
+    private static final int INDEX_OFFSET = 0;
+    private static final int SOURCE_OFFSET = 8;
+    private static final int SOURCE_SEQ_OFFSET = 16;
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final MappedFile mappedFile;
+    private final UnsafeBuffer[] chunks;
+    private final long slotMask;
+    private final long capacity;
+    private long size;
+
+    private MmapSourceSeqIndex(final MappedFile mappedFile, final long fileLength, final long capacity) {
+        this.mappedFile = mappedFile;
+        this.slotMask = fileLength / SLOT_LENGTH - 1;
+        this.capacity = capacity;
+        this.chunks = new UnsafeBuffer[(int) ((fileLength + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        final FileChannel fileChannel = mappedFile.getFileChannel();
+        for (int i = 0; i < chunks.length; i++) {
+            final long chunkPosition = i * CHUNK_SIZE;
+            final long chunkLength = Math.min(CHUNK_SIZE, fileLength - chunkPosition);
+            try {
+                final MappedByteBuffer byteBuffer = fileChannel.map(mappedFile.getMode().getMapMode(), chunkPosition, chunkLength);
+                chunks[i] = new UnsafeBuffer(byteBuffer);
+            } catch (final IOException e) {
+                close();
+                throw new IllegalStateException("Failed to map lookup file at position " + chunkPosition, e);
+            }
+        }
+        this.size = countEntries();
+    }
+
+    /**
+     * Factory method for readWrite source seq index.
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix of the queue. Lookup file would have "_lookup" suffix.
+     * @param clear - true if the file is to be cleared
+     * @param capacity - max number of entries in the index
+     * @return an instance of MmapSourceSeqIndex
+     * @throws IOException when the lookup file could not be mapped.
+     */
+    public static MmapSourceSeqIndex forReadWrite(final String directory,
+                                                  final String filePrefix,
+                                                  final boolean clear,
+                                                  final long capacity) throws IOException {
+        if (capacity <= 0 || capacity > (1L << 40)) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        final long fileLength = Long.highestOneBit(capacity * 2 - 1) * 2 * SLOT_LENGTH;
+        final MappedFile mappedFile = new MappedFile(fileName(directory, filePrefix),
+                clear ? MappedFile.Mode.READ_WRITE_CLEAR : MappedFile.Mode.READ_WRITE,
+                MappedFile.REGION_SIZE_GRANULARITY, (fileChannel, mode) -> {
+                    if (mode == MappedFile.Mode.READ_WRITE_CLEAR) {
+                        fileChannel.truncate(0);
+                    }
+                });
+        final long existingLength = mappedFile.getFileLength();
+        if (existingLength == 0) {
+            mappedFile.setFileLength(fileLength);
+        } else if (existingLength != fileLength) {
+            mappedFile.close();
+            throw new IllegalStateException("Lookup file length " + existingLength +
+                    " does not match capacity " + capacity + ", expected length " + fileLength);
+        }
+        return new MmapSourceSeqIndex(mappedFile, fileLength, capacity);
+    }
+
+    /**
+     * Factory method for readOnly source seq index.
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix of the queue. Lookup file would have "_lookup" suffix.
+     * @return an instance of MmapSourceSeqIndex
+     * @throws IOException when the lookup file could not be mapped.
+     */
+    public static MmapSourceSeqIndex forReadOnly(final String directory,
+                                                 final String filePrefix) throws IOException {
+        final MappedFile mappedFile = new MappedFile(fileName(directory, filePrefix), MappedFile.Mode.READ_ONLY,
+                MappedFile.REGION_SIZE_GRANULARITY, (fileChannel, mode) -> {
+                    final long length = fileChannel.size();
+                    if (length < SLOT_LENGTH || Long.bitCount(length) != 1) {
+                        throw new IllegalArgumentException("Invalid io format");
+                    }
+                });
+        return new MmapSourceSeqIndex(mappedFile, mappedFile.getFileLength(), 0);
+    }
+
+    private static String fileName(final String directory, final String filePrefix) {
+        return directory + "/" + filePrefix + "_lookup";
+    }
+
+    @Override
+    public void accept(final long index, final int source, final long sourceSeq, final long eventTimeNanos) {
+        long slot = slot(source, sourceSeq);
+        for (long probes = 0; probes <= slotMask; probes++) {
+            final long slotPosition = slot * SLOT_LENGTH;
+            final UnsafeBuffer chunk = chunks[(int) (slotPosition >>> CHUNK_SHIFT)];
+            final int offset = (int) (slotPosition & CHUNK_MASK);
+            if (chunk.getLongVolatile(offset + INDEX_OFFSET) == 0) {
+                if (size >= capacity) {
+                    throw new IllegalStateException("Lookup file is full, capacity " + capacity);
+                }
+                size++;
+                chunk.putInt(offset + SOURCE_OFFSET, source);
+                chunk.putLong(offset + SOURCE_SEQ_OFFSET, sourceSeq);
+                chunk.putLongOrdered(offset + INDEX_OFFSET, index + 1);
+                return;
+            }
+            if (chunk.getInt(offset + SOURCE_OFFSET) == source && chunk.getLong(offset + SOURCE_SEQ_OFFSET) == sourceSeq) {
+                return;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        throw new IllegalStateException("Lookup file is full, capacity " + capacity);
+    }
+
+    @Override
+    public long indexOf(final int source, final long sourceSeq) {
+        long slot = slot(source, sourceSeq);
+        for (long probes = 0; probes <= slotMask; probes++) {
+            final long slotPosition = slot * SLOT_LENGTH;
+            final UnsafeBuffer chunk = chunks[(int) (slotPosition >>> CHUNK_SHIFT)];
+            final int offset = (int) (slotPosition & CHUNK_MASK);
+            final long indexPlusOne = chunk.getLongVolatile(offset + INDEX_OFFSET);
+            if (indexPlusOne == 0) {
+                return NULL_INDEX;
+            }
+            if (chunk.getInt(offset + SOURCE_OFFSET) == source && chunk.getLong(offset + SOURCE_SEQ_OFFSET) == sourceSeq) {
+                return indexPlusOne - 1;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return NULL_INDEX;
+    }
+
+    private long countEntries() {
+        if (mappedFile.getMode() == MappedFile.Mode.READ_ONLY) {
+            return 0;
+        }
+        long count = 0;
+        for (long slotPosition = 0; slotPosition < (slotMask + 1) * SLOT_LENGTH; slotPosition += SLOT_LENGTH) {
+            if (chunks[(int) (slotPosition >>> CHUNK_SHIFT)].getLong((int) (slotPosition & CHUNK_MASK) + INDEX_OFFSET) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private long slot(final int source, final long sourceSeq) {
+        long hash = sourceSeq * 0x9E3779B97F4A7C15L + source * 0xC2B2AE3D27D4EB4FL;
+        hash ^= hash >>> 29;
+        return hash & slotMask;
+    }
+
+    @Override
+    public void close() {
+        for (final UnsafeBuffer chunk : chunks) {
+            if (chunk != null && chunk.byteBuffer() != null) {
+                IoUtil.unmap(chunk.byteBuffer());
+            }
+        }
+        mappedFile.close();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.tools4j.mmap.region.api.FileSizeEnsurer;
+import org.tools4j.mmap.region.api.RegionAccessor;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.mmap.region.impl.MappedFile;
+import org.tools4j.mmap.region.impl.RegionRingAccessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Read-only accessor of a header file that might not exist, for instance for queues written before header files
+ * were introduced or not yet opened by an appender. Until the file exists and has been extended to the first
+ * header region by a writer, the header reads as zeros, that is without checkpoint and with the STANDARD index
+ * format. The file is opened on the first wrap that finds it.
+ */
+final class ReadOnlyHeaderAccessor implements RegionAccessor {
+    private static final int MIN_FILE_LENGTH = RegionAccessorSupplier.HEADER_REGION_SIZE;
+
+    /**
+     * Opener of the accessor of the existing header file.
+     */
+    interface Opener {
+        RegionAccessor open() throws IOException;
+    }
+
+    private final File headerFile;
+    private final Opener opener;
+    private final byte[] missingHeader = new byte[RegionAccessorSupplier.HEADER_REGION_SIZE];
+    private RegionAccessor delegate;
+    private boolean closed;
+
+    ReadOnlyHeaderAccessor(final String headerFileName, final Opener opener) {
+        this.headerFile = new File(headerFileName);
+        this.opener = Objects.requireNonNull(opener);
+    }
+
+    /**
+     * Creates a header accessor mapping the header file via a region ring once the file exists.
+     * @param headerFileName - header file name
+     * @param regionRingFactory - region ring factory
+     * @return header accessor
+     */
+    static RegionAccessor forFile(final String headerFileName, final RegionRingFactory regionRingFactory) {
+        Objects.requireNonNull(regionRingFactory);
+        return new ReadOnlyHeaderAccessor(headerFileName, () -> {
+            final MappedFile headerPollerFile = new MappedFile(headerFileName, MappedFile.Mode.READ_ONLY,
+                    RegionAccessorSupplier.HEADER_REGION_SIZE, RegionAccessorSupplier::initIndexFile);
+            return new JumpTolerantRegionAccessor(new RegionRingAccessor(
+                    regionRingFactory.create(
+                            RegionAccessorSupplier.HEADER_REGION_RING_SIZE,
+                            RegionAccessorSupplier.HEADER_REGION_SIZE,
+                            headerPollerFile::getFileChannel,
+                            FileSizeEnsurer.NO_OP,
+                            headerPollerFile.getMode().getMapMode()),
+                    RegionAccessorSupplier.HEADER_REGION_SIZE,
+                    1,
+                    headerPollerFile::close), RegionAccessorSupplier.HEADER_REGION_SIZE);
+        });
+    }
+
+    /**
+     * Creates a header accessor sharing the mapped header of the mapping pool once the file exists.
+     * @param headerFileName - header file name
+     * @param mappingPool - shared mapping pool
+     * @return header accessor
+     */
+    static RegionAccessor forMappingPool(final String headerFileName, final SharedMappingPool mappingPool) {
+        Objects.requireNonNull(mappingPool);
+        return new ReadOnlyHeaderAccessor(headerFileName, () -> mappingPool.accessor(headerFileName,
+                RegionAccessorSupplier.HEADER_REGION_SIZE, 0, RegionAccessorSupplier::initIndexFile));
+    }
+
+    @Override
+    public boolean wrap(final long position, final DirectBuffer buffer) {
+        if (delegate == null && !open()) {
+            if (position < 0) {
+                return false;
+            }
+            final int offset = (int) (position % missingHeader.length);
+            buffer.wrap(missingHeader, offset, missingHeader.length - offset);
+            return true;
+        }
+        return delegate.wrap(position, buffer);
+    }
+
+    private boolean open() {
+        if (closed || headerFile.length() < MIN_FILE_LENGTH) {
+            return false;
+        }
+        try {
+            delegate = opener.open();
+            return true;
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to open header file " + headerFile, e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return RegionAccessorSupplier.HEADER_REGION_SIZE;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.tools4j.mmap.region.impl.InitialBytes;
 import org.tools4j.mmap.region.impl.MappedFile;
 import org.tools4j.mmap.region.impl.RegionRingAccessor;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
@@ -38,6 +39,9 @@ import java.nio.channels.FileLock;
  * Index and Message region accessor supplier for indexed queues and stores.
  */
 public interface RegionAccessorSupplier extends AutoCloseable {
+    int HEADER_REGION_SIZE = 4096;
+    int HEADER_REGION_RING_SIZE = 4;
+
     /**
      * @return index region accessor
      */
@@ -48,17 +52,38 @@ public interface RegionAccessorSupplier extends AutoCloseable {
      */
     RegionAccessor messageAccessor();
 
+    /**
+     * @return header region accessor
+     */
+    RegionAccessor headerAccessor();
+
+    /**
+     * @return current length of the index file in bytes
+     */
+    long indexFileLength();
+
+    /**
+     * @return position of the first available index entry, it is greater than zero
+     *         when older segments of a segmented queue have been removed
+     */
+    default long firstIndexPosition() {
+        return 0;
+    }
+
     @Override
     default void close() {
         indexAccessor().close();
         messageAccessor().close();
+        headerAccessor().close();
     }
 
     /**
      * Factory method for readOnly region accessors
      * @param directory - directory where the files are located
-     * @param filePrefix - file prefix for both index and message files.
-     *                   Index would have "_index" suffix and message would have "_message" suffix.
+     * @param filePrefix - file prefix for index, message and header files.
+     *                   Index would have "_index" suffix, message would have "_message" suffix
+     *                   and header would have "_header" suffix.
+     *                   A missing header file reads as no checkpoint and standard index format.
      * @param regionRingFactory - region ring factory
      * @param regionSize - region size in bytes
      * @param regionRingSize  - number of regions in a ring
@@ -74,13 +99,13 @@ public interface RegionAccessorSupplier extends AutoCloseable {
                                               final int regionsToMapAhead) throws IOException {
         final String indexFileName = directory + "/" + filePrefix + "_index";
         final String messageFileName = directory + "/" + filePrefix + "_message";
+        final String headerFileName = directory + "/" + filePrefix + "_header";
 
         final MappedFile indexPollerFile = new MappedFile(indexFileName, MappedFile.Mode.READ_ONLY,
                 regionSize, RegionAccessorSupplier::initIndexFile);
         final MappedFile messagePollerFile = new MappedFile(messageFileName, MappedFile.Mode.READ_ONLY,
                 regionSize, (file, mode) -> {});
-
-        final RegionAccessor indexRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor indexRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -89,9 +114,9 @@ public interface RegionAccessorSupplier extends AutoCloseable {
                         indexPollerFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                indexPollerFile::close);
+                indexPollerFile::close), regionSize);
 
-        final RegionAccessor messageRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor messageRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -100,7 +125,10 @@ public interface RegionAccessorSupplier extends AutoCloseable {
                         messagePollerFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                messagePollerFile::close);
+                messagePollerFile::close), regionSize);
+
+        final RegionAccessor headerRegionRingAccessor = ReadOnlyHeaderAccessor.forFile(headerFileName,
+                regionRingFactory);
 
         return new RegionAccessorSupplier() {
             @Override
@@ -112,14 +140,78 @@ public interface RegionAccessorSupplier extends AutoCloseable {
             public RegionAccessor messageAccessor() {
                 return messageRegionRingAccessor;
             }
+
+            @Override
+            public RegionAccessor headerAccessor() {
+                return headerRegionRingAccessor;
+            }
+
+            @Override
+            public long indexFileLength() {
+                return indexPollerFile.getFileLength();
+            }
+        };
+    }
+
+    /**
+     * Factory method for readOnly region accessors sharing file handles and mapped regions with other
+     * accessors of the mapping pool.
+     * @param mappingPool - shared mapping pool
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix for index, message and header files.
+     *                   Index would have "_index" suffix, message would have "_message" suffix
+     *                   and header would have "_header" suffix.
+     *                   A missing header file reads as no checkpoint and standard index format.
+     * @param regionSize - region size in bytes
+     * @param regionsToMapAhead - number of regions to map ahead.
+     * @return an instance of RegionAccessorSupplier
+     * @throws IOException when either index and message files could not be opened.
+     */
+    static RegionAccessorSupplier forReadOnly(final SharedMappingPool mappingPool,
+                                              final String directory,
+                                              final String filePrefix,
+                                              final int regionSize,
+                                              final int regionsToMapAhead) throws IOException {
+        final String indexFileName = directory + "/" + filePrefix + "_index";
+        final String messageFileName = directory + "/" + filePrefix + "_message";
+        final String headerFileName = directory + "/" + filePrefix + "_header";
+
+        final RegionAccessor indexAccessor = mappingPool.accessor(indexFileName, regionSize, regionsToMapAhead,
+                RegionAccessorSupplier::initIndexFile);
+        final RegionAccessor messageAccessor = mappingPool.accessor(messageFileName, regionSize, regionsToMapAhead,
+                (file, mode) -> {});
+        final RegionAccessor headerAccessor = ReadOnlyHeaderAccessor.forMappingPool(headerFileName, mappingPool);
+        final File indexFile = new File(indexFileName);
+
+        return new RegionAccessorSupplier() {
+            @Override
+            public RegionAccessor indexAccessor() {
+                return indexAccessor;
+            }
+
+            @Override
+            public RegionAccessor messageAccessor() {
+                return messageAccessor;
+            }
+
+            @Override
+            public RegionAccessor headerAccessor() {
+                return headerAccessor;
+            }
+
+            @Override
+            public long indexFileLength() {
+                return indexFile.length();
+            }
         };
     }
 
     /**
      * Factory method for readWrite region accessors with files to be cleared before usage.
      * @param directory - directory where the files are located
-     * @param filePrefix - file prefix for both index and message files.
-     *                   Index would have "_index" suffix and message would have "_message" suffix.
+     * @param filePrefix - file prefix for index, message and header files.
+     *                   Index would have "_index" suffix, message would have "_message" suffix
+     *                   and header would have "_header" suffix.
      * @param regionRingFactory - region ring factory
      * @param regionSize - region size in bytes
      * @param regionRingSize  - number of regions in a ring
@@ -143,8 +235,9 @@ public interface RegionAccessorSupplier extends AutoCloseable {
     /**
      * Factory method for readWrite region accessors.
      * @param directory - directory where the files are located
-     * @param filePrefix - file prefix for both index and message files.
-     *                   Index would have "_index" suffix and message would have "_message" suffix.
+     * @param filePrefix - file prefix for index, message and header files.
+     *                   Index would have "_index" suffix, message would have "_message" suffix
+     *                   and header would have "_header" suffix.
      * @param regionRingFactory - region ring factory
      * @param regionSize - region size in bytes
      * @param regionRingSize  - number of regions in a ring
@@ -167,8 +260,9 @@ public interface RegionAccessorSupplier extends AutoCloseable {
     /**
      * Factory method for readWrite region accessors with file clearing option.
      * @param directory - directory where the files are located
-     * @param filePrefix - file prefix for both index and message files.
-     *                   Index would have "_index" suffix and message would have "_message" suffix.
+     * @param filePrefix - file prefix for index, message and header files.
+     *                   Index would have "_index" suffix, message would have "_message" suffix
+     *                   and header would have "_header" suffix.
      * @param clear - true if the files are to be cleared
      * @param regionRingFactory - region ring factory
      * @param regionSize - region size in bytes
@@ -188,34 +282,52 @@ public interface RegionAccessorSupplier extends AutoCloseable {
                                                final long maxFileSize) throws IOException {
         final String indexFileName = directory + "/" + filePrefix + "_index";
         final String messageFileName = directory + "/" + filePrefix + "_message";
+        final String headerFileName = directory + "/" + filePrefix + "_header";
         final MappedFile.Mode mapMode = clear ? MappedFile.Mode.READ_WRITE_CLEAR : MappedFile.Mode.READ_WRITE;
 
         final MappedFile indexAppenderFile = new MappedFile(indexFileName, mapMode,
                 regionSize, RegionAccessorSupplier::initIndexFile);
         final MappedFile messageAppenderFile = new MappedFile(messageFileName, mapMode,
                 regionSize, (file, mode) -> {});
+        final MappedFile headerAppenderFile = new MappedFile(headerFileName, mapMode,
+                HEADER_REGION_SIZE, RegionAccessorSupplier::initIndexFile);
 
-        final RegionAccessor indexRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor indexRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
                         indexAppenderFile::getFileChannel,
-                        FileSizeEnsurer.forWritableFile(indexAppenderFile::getFileLength, indexAppenderFile::setFileLength, maxFileSize),
+                        FileSizeEnsurer.forWritableFile(indexAppenderFile::getFileLength,
+                                FileGrowth.growOnly(indexFileName, indexAppenderFile::getFileLength, indexAppenderFile::setFileLength),
+                                maxFileSize),
                         indexAppenderFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                indexAppenderFile::close);
+                indexAppenderFile::close), regionSize);
 
-        final RegionAccessor messageRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor messageRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
                         messageAppenderFile::getFileChannel,
-                        FileSizeEnsurer.forWritableFile(messageAppenderFile::getFileLength, messageAppenderFile::setFileLength, maxFileSize),
+                        FileSizeEnsurer.forWritableFile(messageAppenderFile::getFileLength,
+                                FileGrowth.growOnly(messageFileName, messageAppenderFile::getFileLength, messageAppenderFile::setFileLength),
+                                maxFileSize),
                         messageAppenderFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                messageAppenderFile::close);
+                messageAppenderFile::close), regionSize);
+
+        final RegionAccessor headerRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
+                regionRingFactory.create(
+                        HEADER_REGION_RING_SIZE,
+                        HEADER_REGION_SIZE,
+                        headerAppenderFile::getFileChannel,
+                        FileSizeEnsurer.forWritableFile(headerAppenderFile::getFileLength, headerAppenderFile::setFileLength, maxFileSize),
+                        headerAppenderFile.getMode().getMapMode()),
+                HEADER_REGION_SIZE,
+                1,
+                headerAppenderFile::close), HEADER_REGION_SIZE);
 
         return new RegionAccessorSupplier() {
             @Override
@@ -227,9 +339,253 @@ public interface RegionAccessorSupplier extends AutoCloseable {
             public RegionAccessor messageAccessor() {
                 return messageRegionRingAccessor;
             }
+
+            @Override
+            public RegionAccessor headerAccessor() {
+                return headerRegionRingAccessor;
+            }
+
+            @Override
+            public long indexFileLength() {
+                return indexAppenderFile.getFileLength();
+            }
+        };
+    }
+
+    /**
+     * Factory method for readOnly region accessors of a segmented queue.
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix for index, message and header files.
+     *                   Index segments would have "_index.N" suffix, message segments would have "_message.N" suffix
+     *                   and header would have "_header" suffix.
+     *                   A missing header file reads as no checkpoint and standard index format.
+     * @param regionRingFactory - region ring factory
+     * @param regionSize - region size in bytes
+     * @param regionRingSize  - number of regions in a ring
+     * @param regionsToMapAhead - number of regions to map ahead.
+     * @param segmentSize - segment size in bytes, multiple of regionSize
+     * @return an instance of RegionAccessorSupplier
+     * @throws IOException when the files could not be mapped.
+     */
+    static RegionAccessorSupplier forReadOnlySegmented(final String directory,
+                                                       final String filePrefix,
+                                                       final RegionRingFactory regionRingFactory,
+                                                       final int regionSize,
+                                                       final int regionRingSize,
+                                                       final int regionsToMapAhead,
+                                                       final long segmentSize) throws IOException {
+        final String indexFileName = directory + "/" + filePrefix + "_index";
+        final String messageFileName = directory + "/" + filePrefix + "_message";
+        final String headerFileName = directory + "/" + filePrefix + "_header";
+
+        final RegionAccessor indexSegmentedAccessor = new SegmentedRegionAccessor(segmentSize, regionSize,
+                segment -> segmentAccessor(new MappedFile(SegmentFiles.fileName(indexFileName, segment),
+                        MappedFile.Mode.READ_ONLY, regionSize, (file, mode) -> {}),
+                        regionRingFactory, regionSize, regionRingSize, regionsToMapAhead));
+
+        final RegionAccessor messageSegmentedAccessor = new SegmentedRegionAccessor(segmentSize, regionSize,
+                segment -> segmentAccessor(new MappedFile(SegmentFiles.fileName(messageFileName, segment),
+                        MappedFile.Mode.READ_ONLY, regionSize, (file, mode) -> {}),
+                        regionRingFactory, regionSize, regionRingSize, regionsToMapAhead));
+
+        final RegionAccessor headerRegionRingAccessor = ReadOnlyHeaderAccessor.forFile(headerFileName,
+                regionRingFactory);
+
+        return segmentedSupplier(indexFileName, segmentSize,
+                indexSegmentedAccessor, messageSegmentedAccessor, headerRegionRingAccessor);
+    }
+
+    /**
+     * Factory method for readOnly region accessors of a segmented queue sharing file handles and mapped regions
+     * with other accessors of the mapping pool.
+     * @param mappingPool - shared mapping pool
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix for index, message and header files.
+     *                   Index segments would have "_index.N" suffix, message segments would have "_message.N" suffix
+     *                   and header would have "_header" suffix.
+     *                   A missing header file reads as no checkpoint and standard index format.
+     * @param regionSize - region size in bytes
+     * @param regionsToMapAhead - number of regions to map ahead.
+     * @param segmentSize - segment size in bytes, multiple of regionSize
+     * @return an instance of RegionAccessorSupplier
+     * @throws IOException when the files could not be opened.
+     */
+    static RegionAccessorSupplier forReadOnlySegmented(final SharedMappingPool mappingPool,
+                                                       final String directory,
+                                                       final String filePrefix,
+                                                       final int regionSize,
+                                                       final int regionsToMapAhead,
+                                                       final long segmentSize) throws IOException {
+        final String indexFileName = directory + "/" + filePrefix + "_index";
+        final String messageFileName = directory + "/" + filePrefix + "_message";
+        final String headerFileName = directory + "/" + filePrefix + "_header";
+
+        final RegionAccessor indexSegmentedAccessor = new SegmentedRegionAccessor(segmentSize, regionSize,
+                segment -> mappingPool.accessor(SegmentFiles.fileName(indexFileName, segment), regionSize,
+                        regionsToMapAhead, (file, mode) -> {}));
+        final RegionAccessor messageSegmentedAccessor = new SegmentedRegionAccessor(segmentSize, regionSize,
+                segment -> mappingPool.accessor(SegmentFiles.fileName(messageFileName, segment), regionSize,
+                        regionsToMapAhead, (file, mode) -> {}));
+        final RegionAccessor headerAccessor = ReadOnlyHeaderAccessor.forMappingPool(headerFileName, mappingPool);
+
+        return segmentedSupplier(indexFileName, segmentSize,
+                indexSegmentedAccessor, messageSegmentedAccessor, headerAccessor);
+    }
+
+    /**
+     * Factory method for readWrite region accessors of a segmented queue.
+     * The next segment is created when a segment is opened, so that pollers reaching the end of a segment
+     * find the next one before the appender starts writing into it. Segments removed by retention are not
+     * created again, wrapping a position in a removed segment fails instead.
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix for index, message and header files.
+     *                   Index segments would have "_index.N" suffix, message segments would have "_message.N" suffix
+     *                   and header would have "_header" suffix.
+     * @param clear - true if the files are to be cleared
+     * @param regionRingFactory - region ring factory
+     * @param regionSize - region size in bytes
+     * @param regionRingSize  - number of regions in a ring
+     * @param regionsToMapAhead - number of regions to map ahead.
+     * @param segmentSize - segment size in bytes, multiple of regionSize
+     * @param maxFileSize - max header file size to prevent unexpected file growth
+     * @return an instance of RegionAccessorSupplier
+     * @throws IOException when the header file could not be mapped or the segments could not be cleared.
+     */
+    static RegionAccessorSupplier forReadWriteSegmented(final String directory,
+                                                        final String filePrefix,
+                                                        final boolean clear,
+                                                        final RegionRingFactory regionRingFactory,
+                                                        final int regionSize,
+                                                        final int regionRingSize,
+                                                        final int regionsToMapAhead,
+                                                        final long segmentSize,
+                                                        final long maxFileSize) throws IOException {
+        final String indexFileName = directory + "/" + filePrefix + "_index";
+        final String messageFileName = directory + "/" + filePrefix + "_message";
+        final String headerFileName = directory + "/" + filePrefix + "_header";
+        final MappedFile.Mode mapMode = clear ? MappedFile.Mode.READ_WRITE_CLEAR : MappedFile.Mode.READ_WRITE;
+
+        if (clear) {
+            SegmentFiles.deleteAll(indexFileName);
+            SegmentFiles.deleteAll(messageFileName);
+        }
+        final MappedFile headerAppenderFile = new MappedFile(headerFileName, mapMode,
+                HEADER_REGION_SIZE, RegionAccessorSupplier::initIndexFile);
+
+        final RegionAccessor indexSegmentedAccessor = new SegmentedRegionAccessor(segmentSize, regionSize,
+                segment -> {
+                    SegmentFiles.createWithNext(indexFileName, segment, segmentSize);
+                    return segmentAccessor(new MappedFile(SegmentFiles.fileName(indexFileName, segment),
+                            MappedFile.Mode.READ_WRITE, regionSize, (file, mode) -> {}),
+                            regionRingFactory, regionSize, regionRingSize, regionsToMapAhead);
+                });
+
+        final RegionAccessor messageSegmentedAccessor = new SegmentedRegionAccessor(segmentSize, regionSize,
+                segment -> {
+                    SegmentFiles.createWithNext(messageFileName, segment, segmentSize);
+                    return segmentAccessor(new MappedFile(SegmentFiles.fileName(messageFileName, segment),
+                            MappedFile.Mode.READ_WRITE, regionSize, (file, mode) -> {}),
+                            regionRingFactory, regionSize, regionRingSize, regionsToMapAhead);
+                });
+
+        final RegionAccessor headerRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
+                regionRingFactory.create(
+                        HEADER_REGION_RING_SIZE,
+                        HEADER_REGION_SIZE,
+                        headerAppenderFile::getFileChannel,
+                        FileSizeEnsurer.forWritableFile(headerAppenderFile::getFileLength, headerAppenderFile::setFileLength, maxFileSize),
+                        headerAppenderFile.getMode().getMapMode()),
+                HEADER_REGION_SIZE,
+                1,
+                headerAppenderFile::close), HEADER_REGION_SIZE);
+
+        return segmentedSupplier(indexFileName, segmentSize,
+                indexSegmentedAccessor, messageSegmentedAccessor, headerRegionRingAccessor);
+    }
+
+    static RegionAccessor segmentAccessor(final MappedFile segmentFile,
+                                          final RegionRingFactory regionRingFactory,
+                                          final int regionSize,
+                                          final int regionRingSize,
+                                          final int regionsToMapAhead) {
+        //segments are created at full size and never grow
+        return new JumpTolerantRegionAccessor(new RegionRingAccessor(
+                regionRingFactory.create(
+                        regionRingSize,
+                        regionSize,
+                        segmentFile::getFileChannel,
+                        FileSizeEnsurer.NO_OP,
+                        segmentFile.getMode().getMapMode()),
+                regionSize,
+                regionsToMapAhead,
+                segmentFile::close), regionSize);
+    }
+
+    static RegionAccessorSupplier segmentedSupplier(final String indexFileName,
+                                                    final long segmentSize,
+                                                    final RegionAccessor indexAccessor,
+                                                    final RegionAccessor messageAccessor,
+                                                    final RegionAccessor headerAccessor) {
+        return new RegionAccessorSupplier() {
+            @Override
+            public RegionAccessor indexAccessor() {
+                return indexAccessor;
+            }
+
+            @Override
+            public RegionAccessor messageAccessor() {
+                return messageAccessor;
+            }
+
+            @Override
+            public RegionAccessor headerAccessor() {
+                return headerAccessor;
+            }
+
+            @Override
+            public long indexFileLength() {
+                return (SegmentFiles.lastSegment(indexFileName) + 1) * segmentSize;
+            }
+
+            @Override
+            public long firstIndexPosition() {
+                return Math.max(0, SegmentFiles.firstSegment(indexFileName)) * segmentSize;
+            }
         };
     }
 
+    /**
+     * Factory method for readWrite region accessors of a queue appended by multiple writers.
+     * The index and message files are preallocated to maxFileSize as sparse files, so concurrent writers of
+     * different processes never resize the files.
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix for index, message and header files.
+     *                   Index would have "_index" suffix, message would have "_message" suffix
+     *                   and header would have "_header" suffix.
+     * @param clear - true if the files are to be cleared
+     * @param regionRingFactory - region ring factory
+     * @param regionSize - region size in bytes
+     * @param regionRingSize  - number of regions in a ring
+     * @param regionsToMapAhead - number of regions to map ahead.
+     * @param maxFileSize - size of the preallocated index and message files
+     * @return an instance of RegionAccessorSupplier
+     * @throws IOException when either index and message files could not be mapped.
+     */
+    static RegionAccessorSupplier forReadWritePreallocated(final String directory,
+                                                           final String filePrefix,
+                                                           final boolean clear,
+                                                           final RegionRingFactory regionRingFactory,
+                                                           final int regionSize,
+                                                           final int regionRingSize,
+                                                           final int regionsToMapAhead,
+                                                           final long maxFileSize) throws IOException {
+        final RegionAccessorSupplier regionAccessorSupplier = forReadWrite(directory, filePrefix, clear,
+                regionRingFactory, regionSize, regionRingSize, regionsToMapAhead, maxFileSize);
+        FileGrowth.grow(directory + "/" + filePrefix + "_index", maxFileSize);
+        FileGrowth.grow(directory + "/" + filePrefix + "_message", maxFileSize);
+        return regionAccessorSupplier;
+    }
+
     static void initIndexFile(final FileChannel fileChannel, final MappedFile.Mode mode) throws IOException {
         switch (mode) {
             case READ_ONLY:
@@ -0,0 +1,238 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.nobark.loop.Step;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Extends the index and message files of registered queues and touches the pages of the next regions before
+ * the appenders reach them, so that appenders do not stall on file growth and on faulting in fresh pages.
+ * Pages are touched with a compare-and-set of zero to zero, which never changes data already written by an
+ * appender. The pretoucher can be shared by multiple queues and is meant to be run on a background thread.
+ */
+public final class RegionPretoucher implements Step, AutoCloseable {
+    private static final int PAGE_SIZE = 4096;
+
+    private final int regionsAhead;
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param regionsAhead - number of regions to pretouch ahead of the region being appended
+     */
+    public RegionPretoucher(final int regionsAhead) {
+        if (regionsAhead <= 0) {
+            throw new IllegalArgumentException("regionsAhead " + regionsAhead + " must be positive");
+        }
+        this.regionsAhead = regionsAhead;
+    }
+
+    /**
+     * Registers a queue to be pretouched.
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix of the queue
+     * @param regionSize - region size in bytes
+     * @param segmentSize - segment size in bytes or zero if the queue is not segmented
+     * @param maxFileSize - max file size of the index and message files
+     * @return registration to be closed when the queue is closed
+     * @throws IOException if the queue files could not be opened
+     */
+    public AutoCloseable register(final String directory,
+                                  final String filePrefix,
+                                  final int regionSize,
+                                  final long segmentSize,
+                                  final long maxFileSize) throws IOException {
+        final RegionAccessorSupplier regionAccessorSupplier = segmentSize > 0 ?
+                RegionAccessorSupplier.forReadOnlySegmented(directory, filePrefix, RegionRingFactory.sync(),
+                        regionSize, 2, 1, segmentSize) :
+                RegionAccessorSupplier.forReadOnly(directory, filePrefix, RegionRingFactory.sync(),
+                        regionSize, 2, 1);
+        final Registration registration = new Registration(new IndexedQueueTail(regionAccessorSupplier),
+                new PretouchedFile(directory + "/" + filePrefix + "_index", regionSize, segmentSize, maxFileSize),
+                new PretouchedFile(directory + "/" + filePrefix + "_message", regionSize, segmentSize, maxFileSize));
+        registrations.add(registration);
+        return registration;
+    }
+
+    @Override
+    public boolean perform() {
+        boolean workDone = false;
+        for (final Registration registration : registrations) {
+            if (registration.closeRequested) {
+                registrations.remove(registration);
+                registration.release();
+            } else {
+                workDone |= registration.pretouch();
+            }
+        }
+        return workDone;
+    }
+
+    @Override
+    public void close() {
+        for (final Registration registration : registrations) {
+            registrations.remove(registration);
+            registration.release();
+        }
+    }
+
+    private final class Registration implements AutoCloseable {
+        private final IndexedQueueTail tail;
+        private final PretouchedFile indexFile;
+        private final PretouchedFile messageFile;
+        private volatile boolean closeRequested;
+
+        Registration(final IndexedQueueTail tail, final PretouchedFile indexFile, final PretouchedFile messageFile) {
+            this.tail = Objects.requireNonNull(tail);
+            this.indexFile = Objects.requireNonNull(indexFile);
+            this.messageFile = Objects.requireNonNull(messageFile);
+        }
+
+        boolean pretouch() {
+            tail.read();
+            final boolean indexTouched = indexFile.pretouch(tail.indexPosition(), regionsAhead);
+            final boolean messageTouched = messageFile.pretouch(tail.messagePosition(), regionsAhead);
+            return indexTouched || messageTouched;
+        }
+
+        /**
+         * Resources are released by the pretoucher on its next perform, as it might be pretouching the queue
+         * concurrently.
+         */
+        @Override
+        public void close() {
+            closeRequested = true;
+        }
+
+        void release() {
+            tail.close();
+            indexFile.close();
+            messageFile.close();
+        }
+    }
+
+    private static final class PretouchedFile {
+        private final String fileName;
+        private final int regionSize;
+        private final long segmentSize;
+        private final long maxFileSize;
+        private final UnsafeBuffer regionBuffer = new UnsafeBuffer(0, 0);
+
+        private FileChannel fileChannel;
+        private long segment = SegmentFiles.NO_SEGMENT;
+        private long pretouchedPosition = 0;
+
+        PretouchedFile(final String fileName, final int regionSize, final long segmentSize, final long maxFileSize) {
+            this.fileName = Objects.requireNonNull(fileName);
+            this.regionSize = regionSize;
+            this.segmentSize = segmentSize;
+            this.maxFileSize = maxFileSize;
+        }
+
+        /**
+         * Pretouches the regions after the region of the given position.
+         */
+        boolean pretouch(final long position, final int regionsAhead) {
+            final long regionPosition = position - position % regionSize;
+            long regionEnd = regionPosition + (regionsAhead + 1L) * regionSize;
+            if (segmentSize <= 0) {
+                regionEnd = Math.min(regionEnd, maxFileSize - maxFileSize % regionSize);
+            }
+            boolean workDone = false;
+            for (long region = Math.max(pretouchedPosition, regionPosition + regionSize); region < regionEnd;
+                 region += regionSize) {
+                if (!touch(region)) {
+                    break;
+                }
+                pretouchedPosition = region + regionSize;
+                workDone = true;
+            }
+            return workDone;
+        }
+
+        private boolean touch(final long region) {
+            try {
+                final long offset;
+                if (segmentSize > 0) {
+                    final long segment = region / segmentSize;
+                    final String segmentFileName = SegmentFiles.fileName(fileName, segment);
+                    if (!new File(segmentFileName).exists()) {
+                        //segment is not created yet
+                        return false;
+                    }
+                    open(segmentFileName, segment);
+                    offset = region - segment * segmentSize;
+                } else {
+                    FileGrowth.grow(fileName, region + regionSize);
+                    open(fileName, 0);
+                    offset = region;
+                }
+                final long address = IoUtil.map(fileChannel, FileChannel.MapMode.READ_WRITE, offset, regionSize);
+                try {
+                    regionBuffer.wrap(address, regionSize);
+                    for (int page = 0; page < regionSize; page += PAGE_SIZE) {
+                        regionBuffer.compareAndSetInt(page, 0, 0);
+                    }
+                } finally {
+                    IoUtil.unmap(fileChannel, address, regionSize);
+                }
+                return true;
+            } catch (final IOException e) {
+                throw new IllegalStateException("Failed to pretouch region " + region + " of " + fileName, e);
+            }
+        }
+
+        private void open(final String name, final long segment) throws IOException {
+            if (fileChannel == null || this.segment != segment) {
+                close();
+                fileChannel = FileChannel.open(Paths.get(name), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                this.segment = segment;
+            }
+        }
+
+        void close() {
+            if (fileChannel != null) {
+                try {
+                    fileChannel.close();
+                } catch (final IOException e) {
+                    throw new IllegalStateException("Failed to close " + fileName, e);
+                } finally {
+                    fileChannel = null;
+                    segment = SegmentFiles.NO_SEGMENT;
+                }
+            }
+        }
+    }
+}
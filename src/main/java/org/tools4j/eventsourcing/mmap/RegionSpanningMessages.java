@@ -0,0 +1,81 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+/**
+ * Writes and reads messages that are stored contiguously in the message file and may span several regions.
+ * A message that fits into the remainder of its region is read from the mapped region without copying,
+ * a message that spans regions is stitched together into a reusable buffer.
+ * Non-thread safe!
+ */
+public final class RegionSpanningMessages {
+    private final UnsafeBuffer mappedBuffer = new UnsafeBuffer();
+    private final ExpandableDirectByteBuffer stitchedBuffer = new ExpandableDirectByteBuffer();
+
+    /**
+     * Copies the message to the given position, continuing in the following regions if it does not fit
+     * into the remainder of the region.
+     */
+    public void write(final RegionAccessor accessor, final long position,
+                      final DirectBuffer buffer, final int offset, final int length) {
+        int written = 0;
+        do {
+            wrap(accessor, position + written);
+            final int chunk = Math.min(length - written, mappedBuffer.capacity());
+            buffer.getBytes(offset + written, mappedBuffer, 0, chunk);
+            written += chunk;
+        } while (written < length);
+    }
+
+    /**
+     * Returns a buffer with the message at offset 0. The buffer is only valid until the next read.
+     */
+    public DirectBuffer read(final RegionAccessor accessor, final long position, final int length) {
+        wrap(accessor, position);
+        if (mappedBuffer.capacity() >= length) {
+            return mappedBuffer;
+        }
+        int read = 0;
+        while (true) {
+            final int chunk = Math.min(length - read, mappedBuffer.capacity());
+            stitchedBuffer.putBytes(read, mappedBuffer, 0, chunk);
+            read += chunk;
+            if (read >= length) {
+                return stitchedBuffer;
+            }
+            wrap(accessor, position + read);
+        }
+    }
+
+    private void wrap(final RegionAccessor accessor, final long position) {
+        if (!accessor.wrap(position, mappedBuffer)) {
+            throw new IllegalStateException("Failed to wrap message buffer to position " + position);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import java.util.Objects;
+
+/**
+ * Retention policy of a segmented queue. The policy is evaluated for the oldest index segment
+ * and the segment is removed as long as the policy requests it.
+ */
+@FunctionalInterface
+public interface RetentionPolicy {
+    RetentionPolicy RETAIN_ALL = (segmentCount, totalSize, oldestSegmentLastModifiedMillis) -> false;
+
+    /**
+     * @param segmentCount - number of index segments, including the segment being appended
+     * @param totalSize - total size of index and message segments in bytes
+     * @param oldestSegmentLastModifiedMillis - last modification time of the oldest index segment
+     * @return true if the oldest segment is to be removed
+     */
+    boolean removeOldest(int segmentCount, long totalSize, long oldestSegmentLastModifiedMillis);
+
+    default RetentionPolicy or(final RetentionPolicy other) {
+        Objects.requireNonNull(other);
+        return (c, s, m) -> removeOldest(c, s, m) || other.removeOldest(c, s, m);
+    }
+
+    static RetentionPolicy maxSegments(final int maxSegments) {
+        return (segmentCount, totalSize, oldestSegmentLastModifiedMillis) -> segmentCount > maxSegments;
+    }
+
+    static RetentionPolicy maxSize(final long maxSize) {
+        return (segmentCount, totalSize, oldestSegmentLastModifiedMillis) -> totalSize > maxSize;
+    }
+
+    static RetentionPolicy maxAge(final long maxAgeMillis) {
+        return (segmentCount, totalSize, oldestSegmentLastModifiedMillis) ->
+                System.currentTimeMillis() - oldestSegmentLastModifiedMillis > maxAgeMillis;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Naming and housekeeping of segment files. A segment file name is the name of the unsegmented file
+ * followed by "." and the segment number, e.g. "queue_index.12".
+ * Segment files are created at their full size under a temporary name and then renamed, so that readers
+ * never observe a partially created segment.
+ */
+public final class SegmentFiles {
+    public static final long NO_SEGMENT = -1;
+    private static final long[] NO_SEGMENTS = {};
+
+    private SegmentFiles() {}
+
+    public static String fileName(final String baseFileName, final long segment) {
+        return baseFileName + "." + segment;
+    }
+
+    /**
+     * @param baseFileName - file name without segment suffix
+     * @return sorted segment numbers of existing segment files
+     */
+    public static long[] segments(final String baseFileName) {
+        final File baseFile = new File(baseFileName);
+        final String prefix = baseFile.getName() + ".";
+        final String[] names = baseFile.getAbsoluteFile().getParentFile().list((dir, name) -> isSegment(prefix, name));
+        if (names == null || names.length == 0) {
+            return NO_SEGMENTS;
+        }
+        final long[] segments = new long[names.length];
+        for (int i = 0; i < names.length; i++) {
+            segments[i] = Long.parseLong(names[i].substring(prefix.length()));
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    public static long firstSegment(final String baseFileName) {
+        final long[] segments = segments(baseFileName);
+        return segments.length == 0 ? NO_SEGMENT : segments[0];
+    }
+
+    public static long lastSegment(final String baseFileName) {
+        final long[] segments = segments(baseFileName);
+        return segments.length == 0 ? NO_SEGMENT : segments[segments.length - 1];
+    }
+
+    /**
+     * Creates a zero-filled segment file of given size unless it exists already.
+     * @param baseFileName - file name without segment suffix
+     * @param segment - segment number
+     * @param segmentSize - segment size in bytes
+     * @throws IOException if the file could not be created
+     */
+    public static void create(final String baseFileName, final long segment, final long segmentSize) throws IOException {
+        final File segmentFile = new File(fileName(baseFileName, segment));
+        if (segmentFile.exists()) {
+            return;
+        }
+        final File tempFile = new File(segmentFile.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw")) {
+            file.setLength(segmentSize);
+        }
+        Files.move(tempFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Creates the given segment and the next one unless they exist already. Segments below the first existing
+     * segment have been removed and are never created again, so that a stale position cannot resurrect them.
+     * @param baseFileName - file name without segment suffix
+     * @param segment - segment number
+     * @param segmentSize - segment size in bytes
+     * @throws IOException if the segment has been removed or a file could not be created
+     */
+    public static void createWithNext(final String baseFileName, final long segment, final long segmentSize) throws IOException {
+        final long firstSegment = firstSegment(baseFileName);
+        if (firstSegment != NO_SEGMENT && segment < firstSegment) {
+            throw new IOException("Segment " + segment + " of " + baseFileName +
+                    " has been removed, first segment is " + firstSegment);
+        }
+        create(baseFileName, segment, segmentSize);
+        create(baseFileName, segment + 1, segmentSize);
+    }
+
+    /**
+     * Deletes all segment files.
+     * @param baseFileName - file name without segment suffix
+     * @throws IOException if a file could not be deleted
+     */
+    public static void deleteAll(final String baseFileName) throws IOException {
+        for (final long segment : segments(baseFileName)) {
+            Files.deleteIfExists(new File(fileName(baseFileName, segment)).toPath());
+        }
+    }
+
+    private static boolean isSegment(final String prefix, final String name) {
+        if (name.length() <= prefix.length() || !name.startsWith(prefix)) {
+            return false;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.nobark.loop.Step;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Removes the oldest segments of a segmented queue according to the retention policy.
+ * An index segment is removed together with all message segments that only contain messages of removed index
+ * segments. The last two index segments, the one being appended and the pre-created next one, are never removed.
+ * Removal only touches files the appender has already moved away from, so the step can be run on any thread
+ * without stalling the appender. Pollers still reading removed segments keep their mapping until they move on,
+ * but new pollers start at the first retained index.
+ */
+public final class SegmentRetention implements Step {
+    private static final int LENGTH_OFFSET = 0;
+    private static final int INDEX_OFFSET = 4;
+    private static final long NOT_AVAILABLE = -1;
+
+    private final String indexFileName;
+    private final String messageFileName;
+    private final long segmentSize;
+    private final RetentionPolicy retentionPolicy;
+    private final SegmentDisposer segmentDisposer;
+
+    private final ByteBuffer indexByteBuffer = ByteBuffer.allocateDirect(INDEX_OFFSET + IndexDecoder.ENCODED_LENGTH);
+    private final UnsafeBuffer indexBuffer = new UnsafeBuffer(indexByteBuffer);
+    private final IndexDecoder indexDecoder = new IndexDecoder();
+
+    /**
+     * Removal or archiving of a segment file.
+     */
+    @FunctionalInterface
+    public interface SegmentDisposer {
+        SegmentDisposer DELETE = segmentFile -> Files.delete(segmentFile.toPath());
+
+        void dispose(File segmentFile) throws IOException;
+
+        static SegmentDisposer moveTo(final String archiveDirectory) {
+            Objects.requireNonNull(archiveDirectory);
+            return segmentFile -> Files.move(segmentFile.toPath(),
+                    new File(archiveDirectory, segmentFile.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public SegmentRetention(final String directory,
+                            final String filePrefix,
+                            final long segmentSize,
+                            final RetentionPolicy retentionPolicy,
+                            final SegmentDisposer segmentDisposer) {
+        this.indexFileName = directory + "/" + filePrefix + "_index";
+        this.messageFileName = directory + "/" + filePrefix + "_message";
+        this.segmentSize = segmentSize;
+        this.retentionPolicy = Objects.requireNonNull(retentionPolicy);
+        this.segmentDisposer = Objects.requireNonNull(segmentDisposer);
+    }
+
+    /**
+     * Removes the oldest segments as long as the retention policy requests it.
+     * @return true if at least one index segment has been removed
+     */
+    @Override
+    public boolean perform() {
+        final long[] indexSegments = SegmentFiles.segments(indexFileName);
+        final long[] messageSegments = SegmentFiles.segments(messageFileName);
+        long totalSize = size(indexFileName, indexSegments) + size(messageFileName, messageSegments);
+
+        int firstIndexSegment = 0;
+        int firstMessageSegment = 0;
+        while (indexSegments.length - firstIndexSegment > 2) {
+            final File oldestIndexFile = new File(SegmentFiles.fileName(indexFileName, indexSegments[firstIndexSegment]));
+            if (!retentionPolicy.removeOldest(indexSegments.length - firstIndexSegment, totalSize,
+                    oldestIndexFile.lastModified())) {
+                break;
+            }
+            final long firstRetainedMessagePosition = firstMessagePosition(indexSegments[firstIndexSegment + 1]);
+            if (firstRetainedMessagePosition == NOT_AVAILABLE) {
+                break;
+            }
+            totalSize -= oldestIndexFile.length();
+            dispose(oldestIndexFile);
+            firstIndexSegment++;
+
+            while (firstMessageSegment < messageSegments.length &&
+                    (messageSegments[firstMessageSegment] + 1) * segmentSize <= firstRetainedMessagePosition) {
+                final File messageFile = new File(SegmentFiles.fileName(messageFileName, messageSegments[firstMessageSegment]));
+                totalSize -= messageFile.length();
+                dispose(messageFile);
+                firstMessageSegment++;
+            }
+        }
+        return firstIndexSegment > 0;
+    }
+
+    private long firstMessagePosition(final long indexSegment) {
+        try (FileChannel fileChannel = FileChannel.open(
+                new File(SegmentFiles.fileName(indexFileName, indexSegment)).toPath(), StandardOpenOption.READ)) {
+            indexByteBuffer.clear();
+            while (indexByteBuffer.hasRemaining() && fileChannel.read(indexByteBuffer, indexByteBuffer.position()) > 0) {
+                //read until the index entry is complete
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to read index segment " + indexSegment, e);
+        }
+        if (indexByteBuffer.hasRemaining() || indexBuffer.getInt(LENGTH_OFFSET) <= 0) {
+            return NOT_AVAILABLE;
+        }
+        return indexDecoder.wrap(indexBuffer, INDEX_OFFSET).position();
+    }
+
+    private void dispose(final File segmentFile) {
+        try {
+            segmentDisposer.dispose(segmentFile);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to dispose segment file " + segmentFile, e);
+        }
+    }
+
+    private static long size(final String baseFileName, final long[] segments) {
+        long size = 0;
+        for (final long segment : segments) {
+            size += new File(SegmentFiles.fileName(baseFileName, segment)).length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Region accessor over a sequence of segment files of equal size.
+ * Positions are global across all segments, so that index and message positions do not change
+ * when a queue is split into segments. Only the segment of the last wrapped position is mapped, the previous
+ * segment is closed when a position in another segment is wrapped.
+ * Segment size must be a multiple of the region size so that a region never spans two segments.
+ */
+public final class SegmentedRegionAccessor implements RegionAccessor {
+    private final long segmentSize;
+    private final int regionSize;
+    private final SegmentOpener segmentOpener;
+
+    private RegionAccessor segmentAccessor;
+    private long segment = SegmentFiles.NO_SEGMENT;
+
+    @FunctionalInterface
+    public interface SegmentOpener {
+        RegionAccessor open(long segment) throws IOException;
+    }
+
+    public SegmentedRegionAccessor(final long segmentSize,
+                                   final int regionSize,
+                                   final SegmentOpener segmentOpener) {
+        if (segmentSize <= 0 || segmentSize % regionSize != 0) {
+            throw new IllegalArgumentException("segmentSize " + segmentSize + " must be a positive multiple of regionSize " + regionSize);
+        }
+        this.segmentSize = segmentSize;
+        this.regionSize = regionSize;
+        this.segmentOpener = Objects.requireNonNull(segmentOpener);
+    }
+
+    @Override
+    public boolean wrap(final long position, final DirectBuffer source) {
+        final long segment = position / segmentSize;
+        if (segment != this.segment) {
+            openSegment(segment);
+        }
+        return segmentAccessor.wrap(position - segment * segmentSize, source);
+    }
+
+    private void openSegment(final long segment) {
+        close();
+        try {
+            segmentAccessor = segmentOpener.open(segment);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to open segment " + segment, e);
+        }
+        this.segment = segment;
+    }
+
+    @Override
+    public int size() {
+        return regionSize;
+    }
+
+    @Override
+    public void close() {
+        if (segmentAccessor != null) {
+            segmentAccessor.close();
+            segmentAccessor = null;
+            segment = SegmentFiles.NO_SEGMENT;
+        }
+    }
+}
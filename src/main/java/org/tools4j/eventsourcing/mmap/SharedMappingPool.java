@@ -0,0 +1,240 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.IoUtil;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.tools4j.mmap.region.api.RegionAccessor;
+import org.tools4j.mmap.region.impl.MappedFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Pool of read-only mappings shared by pollers of the same queue.
+ * Every file is opened once and every region of a file is mapped once, no matter how many pollers read it.
+ * Files and regions are reference counted: a region is unmapped when the last accessor moves away from it
+ * and a file is closed when the last accessor is closed.
+ * Each accessor is a cursor over the shared regions holding the region of the last wrapped position and,
+ * like a region ring accessor, the next regionsToMapAhead regions as far as they exist in the file.
+ * Crossing into a region mapped ahead only maps the next region ahead, unless another accessor of the pool
+ * has already mapped it, so pollers reading the same queue share the cost of mapping ahead.
+ * As with a sync region ring, the mapping ahead is done by the thread crossing the region.
+ * Thread-safe, regions are only acquired and released when an accessor moves to another region.
+ */
+public final class SharedMappingPool {
+    private static final long NO_ADDRESS = -1;
+    private static final long NO_REGION = -1;
+
+    private final Map<String, SharedFile> files = new HashMap<>();
+
+    /**
+     * Creates a new read-only accessor of the shared file.
+     * @param fileName - name of the file
+     * @param regionSize - region size in bytes
+     * @param regionsToMapAhead - number of regions to keep mapped ahead of the current region
+     * @param fileInitialiser - file initialiser invoked when the file is opened
+     * @return new region accessor, closing the accessor releases the file
+     * @throws IOException if the file could not be opened
+     */
+    public synchronized RegionAccessor accessor(final String fileName,
+                                                final int regionSize,
+                                                final int regionsToMapAhead,
+                                                final MappedFile.FileInitialiser fileInitialiser) throws IOException {
+        if (regionsToMapAhead < 0) {
+            throw new IllegalArgumentException("regionsToMapAhead " + regionsToMapAhead + " must not be negative");
+        }
+        final String key = new File(fileName).getCanonicalPath() + ":" + regionSize;
+        SharedFile sharedFile = files.get(key);
+        if (sharedFile == null) {
+            sharedFile = new SharedFile(key, new MappedFile(fileName, MappedFile.Mode.READ_ONLY, regionSize, fileInitialiser), regionSize);
+            files.put(key, sharedFile);
+        }
+        sharedFile.refCount++;
+        return new SharedRegionAccessor(sharedFile, regionsToMapAhead);
+    }
+
+    /**
+     * @return number of currently open files
+     */
+    public synchronized int fileCount() {
+        return files.size();
+    }
+
+    /**
+     * @return number of currently mapped regions of all files
+     */
+    public synchronized int regionCount() {
+        int regionCount = 0;
+        for (final SharedFile sharedFile : files.values()) {
+            regionCount += sharedFile.regionCount();
+        }
+        return regionCount;
+    }
+
+    private synchronized void release(final SharedFile sharedFile) {
+        if (--sharedFile.refCount == 0) {
+            files.remove(sharedFile.key);
+            sharedFile.close();
+        }
+    }
+
+    private static final class SharedRegion {
+        final long address;
+        int refCount;
+
+        SharedRegion(final long address) {
+            this.address = address;
+        }
+    }
+
+    private static final class SharedFile {
+        final String key;
+        final MappedFile mappedFile;
+        final int regionSize;
+        final Long2ObjectHashMap<SharedRegion> regions = new Long2ObjectHashMap<>();
+        long fileLength;
+        int refCount;
+
+        SharedFile(final String key, final MappedFile mappedFile, final int regionSize) {
+            this.key = key;
+            this.mappedFile = mappedFile;
+            this.regionSize = regionSize;
+        }
+
+        synchronized long acquire(final long regionIndex) {
+            SharedRegion region = regions.get(regionIndex);
+            if (region == null) {
+                final long regionPosition = regionIndex * regionSize;
+                if (regionPosition + regionSize > fileLength) {
+                    fileLength = mappedFile.getFileLength();
+                    if (regionPosition + regionSize > fileLength) {
+                        return NO_ADDRESS;
+                    }
+                }
+                region = new SharedRegion(IoUtil.map(mappedFile.getFileChannel(), mappedFile.getMode().getMapMode(),
+                        regionPosition, regionSize));
+                regions.put(regionIndex, region);
+            }
+            region.refCount++;
+            return region.address;
+        }
+
+        /**
+         * Acquires regions following the given one, stopping at the first region beyond the end of the file.
+         * @return number of regions acquired
+         */
+        synchronized int acquireAhead(final long regionIndex, final int regionsToMapAhead) {
+            for (int i = 1; i <= regionsToMapAhead; i++) {
+                if (acquire(regionIndex + i) == NO_ADDRESS) {
+                    return i - 1;
+                }
+            }
+            return regionsToMapAhead;
+        }
+
+        synchronized void release(final long regionIndex, final int count) {
+            for (long index = regionIndex; index < regionIndex + count; index++) {
+                final SharedRegion region = regions.get(index);
+                if (region != null && --region.refCount == 0) {
+                    regions.remove(index);
+                    IoUtil.unmap(mappedFile.getFileChannel(), region.address, regionSize);
+                }
+            }
+        }
+
+        synchronized int regionCount() {
+            return regions.size();
+        }
+
+        synchronized void close() {
+            for (final SharedRegion region : regions.values()) {
+                IoUtil.unmap(mappedFile.getFileChannel(), region.address, regionSize);
+            }
+            regions.clear();
+            mappedFile.close();
+        }
+    }
+
+    private final class SharedRegionAccessor implements RegionAccessor {
+        private final SharedFile sharedFile;
+        private final int regionsToMapAhead;
+        private long currentRegionIndex = NO_REGION;
+        private long currentAddress = NO_ADDRESS;
+        private int regionsMappedAhead;
+        private boolean closed;
+
+        SharedRegionAccessor(final SharedFile sharedFile, final int regionsToMapAhead) {
+            this.sharedFile = Objects.requireNonNull(sharedFile);
+            this.regionsToMapAhead = regionsToMapAhead;
+        }
+
+        @Override
+        public boolean wrap(final long position, final DirectBuffer source) {
+            final int regionSize = sharedFile.regionSize;
+            final long regionIndex = position / regionSize;
+            if (regionIndex != currentRegionIndex) {
+                final long address = sharedFile.acquire(regionIndex);
+                if (address == NO_ADDRESS) {
+                    return false;
+                }
+                final int mappedAhead = sharedFile.acquireAhead(regionIndex, regionsToMapAhead);
+                releaseCurrentRegion();
+                currentRegionIndex = regionIndex;
+                currentAddress = address;
+                regionsMappedAhead = mappedAhead;
+            }
+            final int offset = (int) (position - regionIndex * regionSize);
+            source.wrap(currentAddress + offset, regionSize - offset);
+            return true;
+        }
+
+        private void releaseCurrentRegion() {
+            if (currentRegionIndex != NO_REGION) {
+                sharedFile.release(currentRegionIndex, 1 + regionsMappedAhead);
+                currentRegionIndex = NO_REGION;
+                currentAddress = NO_ADDRESS;
+                regionsMappedAhead = 0;
+            }
+        }
+
+        @Override
+        public int size() {
+            return sharedFile.regionSize;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                releaseCurrentRegion();
+                release(sharedFile);
+            }
+        }
+    }
+}
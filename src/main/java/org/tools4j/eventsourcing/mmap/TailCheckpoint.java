@@ -0,0 +1,155 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.SourceSeqTable;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+import java.util.Objects;
+
+/**
+ * Persists the tail of an indexed queue (last index position, last message position and the last sourceSeq
+ * of every source) to the header file so that an appender can resume from the last checkpoint instead of
+ * scanning the whole index.
+ * The first header region holds the positions and the number of sources, the source table starts at the
+ * second header region and may span multiple regions.
+ * The index position is invalidated before and published after the rest of the checkpoint is written,
+ * so a checkpoint interrupted half way is never loaded.
+ */
+public final class TailCheckpoint {
+    private static final long NOT_CHECKPOINTED = 0;
+    private static final int INDEX_POSITION_OFFSET = 0;
+    private static final int MESSAGE_POSITION_OFFSET = 8;
+    private static final int SOURCE_COUNT_OFFSET = 16;
+    private static final long SOURCE_TABLE_POSITION = RegionAccessorSupplier.HEADER_REGION_SIZE;
+    private static final int SOURCE_OFFSET = 0;
+    private static final int SOURCE_SEQ_OFFSET = 8;
+    private static final int SOURCE_ENTRY_LENGTH = 16;
+
+    private final RegionAccessor headerAccessor;
+    private final UnsafeBuffer headerBuffer = new UnsafeBuffer();
+    private final UnsafeBuffer sourceEntryBuffer = new UnsafeBuffer();
+    private final StoreSourceEntry storeSourceEntry = new StoreSourceEntry();
+
+    private long indexPosition = NOT_CHECKPOINTED;
+    private long messagePosition = NOT_CHECKPOINTED;
+
+    public TailCheckpoint(final RegionAccessor headerAccessor) {
+        this.headerAccessor = Objects.requireNonNull(headerAccessor);
+    }
+
+    /**
+     * Loads last checkpoint.
+     * @param lastSourceSeqMap - map to be populated with last sourceSeq of every checkpointed source
+     * @return true if a checkpoint was found, false otherwise
+     */
+    public boolean load(final SourceSeqTable lastSourceSeqMap) {
+        if (!loadPositions()) {
+            return false;
+        }
+        final int sourceCount = headerBuffer.getInt(SOURCE_COUNT_OFFSET);
+        for (int i = 0; i < sourceCount; i++) {
+            wrapSourceEntry(i);
+            lastSourceSeqMap.put(sourceEntryBuffer.getInt(SOURCE_OFFSET), sourceEntryBuffer.getLong(SOURCE_SEQ_OFFSET));
+        }
+        return true;
+    }
+
+    /**
+     * Loads the positions of the last checkpoint without the sourceSeqs.
+     * @return true if a checkpoint was found, false otherwise
+     */
+    public boolean loadPositions() {
+        wrapHeader();
+        indexPosition = headerBuffer.getLongVolatile(INDEX_POSITION_OFFSET);
+        if (indexPosition <= NOT_CHECKPOINTED) {
+            indexPosition = NOT_CHECKPOINTED;
+            messagePosition = NOT_CHECKPOINTED;
+            return false;
+        }
+        messagePosition = headerBuffer.getLong(MESSAGE_POSITION_OFFSET);
+        return true;
+    }
+
+    /**
+     * Stores a new checkpoint.
+     * @param indexPosition - next index append position
+     * @param messagePosition - next message append position
+     * @param lastSourceSeqMap - last sourceSeq of every source
+     */
+    public void store(final long indexPosition, final long messagePosition, final SourceSeqTable lastSourceSeqMap) {
+        wrapHeader();
+        headerBuffer.putLongOrdered(INDEX_POSITION_OFFSET, NOT_CHECKPOINTED);
+        storeSourceEntry.count = 0;
+        lastSourceSeqMap.forEach(storeSourceEntry);
+        wrapHeader();
+        headerBuffer.putInt(SOURCE_COUNT_OFFSET, storeSourceEntry.count);
+        headerBuffer.putLong(MESSAGE_POSITION_OFFSET, messagePosition);
+        headerBuffer.putLongOrdered(INDEX_POSITION_OFFSET, indexPosition);
+        this.indexPosition = indexPosition;
+        this.messagePosition = messagePosition;
+    }
+
+    /**
+     * @return next index append position of the last loaded or stored checkpoint
+     */
+    public long indexPosition() {
+        return indexPosition;
+    }
+
+    /**
+     * @return next message append position of the last loaded or stored checkpoint
+     */
+    public long messagePosition() {
+        return messagePosition;
+    }
+
+    private void wrapHeader() {
+        if (!headerAccessor.wrap(0, headerBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer");
+        }
+    }
+
+    private void wrapSourceEntry(final int entry) {
+        final long position = SOURCE_TABLE_POSITION + (long) entry * SOURCE_ENTRY_LENGTH;
+        if (!headerAccessor.wrap(position, sourceEntryBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer to position " + position);
+        }
+    }
+
+    /**
+     * Not thread-safe. This is a hacky way to avoid lambda capturing.
+     */
+    private class StoreSourceEntry implements SourceSeqTable.EntryConsumer {
+        int count;
+
+        @Override
+        public void accept(final int source, final long sourceSeq) {
+            wrapSourceEntry(count++);
+            sourceEntryBuffer.putInt(SOURCE_OFFSET, source);
+            sourceEntryBuffer.putLong(SOURCE_SEQ_OFFSET, sourceSeq);
+        }
+    }
+}
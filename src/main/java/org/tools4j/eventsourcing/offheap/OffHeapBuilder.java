@@ -0,0 +1,68 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.offheap;
+
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.mmap.IndexFormat;
+import org.tools4j.eventsourcing.mmap.MmapIndexedAppender;
+
+public interface OffHeapBuilder {
+    OffHeapBuilder regionSize(int regionSize);
+    OffHeapBuilder maxSize(long maxSize);
+    OffHeapBuilder indexFormat(IndexFormat indexFormat);
+    IndexedQueue buildQueue();
+
+    static OffHeapBuilder create() {
+        return new DefaultOffHeapBuilder();
+    }
+
+    class DefaultOffHeapBuilder implements OffHeapBuilder {
+        private int regionSize = 1024 * 1024;
+        private long maxSize = 1024 * 1024 * 1024 * 2L;
+        private IndexFormat indexFormat = MmapIndexedAppender.DEFAULT_INDEX_FORMAT;
+
+        @Override
+        public OffHeapBuilder regionSize(final int regionSize) {
+            this.regionSize = regionSize;
+            return this;
+        }
+
+        @Override
+        public OffHeapBuilder maxSize(final long maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        @Override
+        public OffHeapBuilder indexFormat(final IndexFormat indexFormat) {
+            this.indexFormat = indexFormat;
+            return this;
+        }
+
+        @Override
+        public IndexedQueue buildQueue() {
+            return new OffHeapIndexedQueue(regionSize, maxSize, indexFormat);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.offheap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.IndexedAppender;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.mmap.AppendNotifier;
+import org.tools4j.eventsourcing.mmap.IndexFormat;
+import org.tools4j.eventsourcing.mmap.MmapIndexedAppender;
+import org.tools4j.eventsourcing.mmap.MmapIndexedPoller;
+import org.tools4j.eventsourcing.mmap.RegionAccessorSupplier;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+/**
+ * Indexed queue held in off-heap memory without any files. Index and messages are laid out exactly as in the
+ * memory mapped queue and are appended and polled by the same appender and poller, so pollers have identical
+ * semantics, but nothing survives the queue being closed.
+ */
+public final class OffHeapIndexedQueue implements IndexedQueue {
+    private static final int INDEX_LENGTH_OFFSET = 0;
+    private static final int INDEX_OFFSET = 4;
+
+    private final OffHeapRegionAccessor headerAccessor;
+    private final OffHeapRegionAccessor indexAccessor;
+    private final OffHeapRegionAccessor messageAccessor;
+    private final AppendNotifier appendNotifier;
+    private final MmapIndexedAppender appender;
+    private final int indexLength;
+    private final UnsafeBuffer releaseIndexBuffer = new UnsafeBuffer();
+    private final IndexDecoder releaseIndexDecoder = new IndexDecoder();
+    private volatile long firstIndex;
+
+    /**
+     * @param regionSize - size of the off-heap regions index and messages are allocated in
+     * @param maxSize - max number of bytes of the index and of the messages retained since the last
+     *                {@link #releaseBefore(long) release}
+     * @param indexFormat - index format
+     */
+    public OffHeapIndexedQueue(final int regionSize,
+                               final long maxSize,
+                               final IndexFormat indexFormat) {
+        this.indexLength = indexFormat.indexLength();
+        this.headerAccessor = new OffHeapRegionAccessor(RegionAccessorSupplier.HEADER_REGION_SIZE, maxSize);
+        this.indexAccessor = new OffHeapRegionAccessor(regionSize, maxSize);
+        this.messageAccessor = new OffHeapRegionAccessor(regionSize, maxSize);
+        final UnsafeBuffer headerBuffer = new UnsafeBuffer();
+        if (!headerAccessor.wrap(0, headerBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer");
+        }
+        this.appendNotifier = new AppendNotifier(headerBuffer);
+        this.appender = new MmapIndexedAppender(
+                new OffHeapRegionAccessorSupplier(true),
+                indexFormat,
+                MmapIndexedAppender.DEFAULT_CHECKPOINT_INTERVAL,
+                (index, source, sourceSeq, eventTimeNanos) -> appendNotifier.signal());
+    }
+
+    /**
+     * @return notifier for pollers waiting for appends to this queue
+     */
+    public AppendNotifier appendNotifier() {
+        return appendNotifier;
+    }
+
+    @Override
+    public IndexedAppender appender() {
+        return appender;
+    }
+
+    /**
+     * Releases the index and message regions that lie entirely before the index, their memory is reused for
+     * subsequent appends, so that a queue that is consumed while appended does not run out of maxSize.
+     * Pollers created afterwards start at the index.
+     * @param index - index of the first entry that is still to be polled
+     */
+    @Override
+    public synchronized void releaseBefore(final long index) {
+        if (index <= firstIndex) {
+            return;
+        }
+        final long lastPosition = (index - 1) * indexLength;
+        if (!indexAccessor.wrap(lastPosition, releaseIndexBuffer)) {
+            throw new IllegalArgumentException("Index " + index + " is beyond the appended entries");
+        }
+        final int lastLength = releaseIndexBuffer.getIntVolatile(INDEX_LENGTH_OFFSET);
+        if (lastLength <= 0) {
+            throw new IllegalArgumentException("Index " + index + " is beyond the appended entries");
+        }
+        releaseIndexDecoder.wrap(releaseIndexBuffer, INDEX_OFFSET);
+        messageAccessor.release(releaseIndexDecoder.position() + lastLength);
+        indexAccessor.release(index * indexLength);
+        firstIndex = index;
+    }
+
+    @Override
+    public Poller createPoller(final Poller.Options options) {
+        return new MmapIndexedPoller(new OffHeapRegionAccessorSupplier(false), options);
+    }
+
+    @Override
+    public void close() {
+        appender.close();
+    }
+
+    /**
+     * Region accessors are shared by the appender and all pollers and are only released by the appender.
+     */
+    private final class OffHeapRegionAccessorSupplier implements RegionAccessorSupplier {
+        private final boolean owner;
+
+        OffHeapRegionAccessorSupplier(final boolean owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public RegionAccessor indexAccessor() {
+            return indexAccessor;
+        }
+
+        @Override
+        public RegionAccessor messageAccessor() {
+            return messageAccessor;
+        }
+
+        @Override
+        public RegionAccessor headerAccessor() {
+            return headerAccessor;
+        }
+
+        @Override
+        public long indexFileLength() {
+            return indexAccessor.length();
+        }
+
+        @Override
+        public long firstIndexPosition() {
+            return firstIndex * indexLength;
+        }
+
+        @Override
+        public void close() {
+            if (owner) {
+                RegionAccessorSupplier.super.close();
+            }
+        }
+    }
+}
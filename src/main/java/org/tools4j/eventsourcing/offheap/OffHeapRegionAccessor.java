@@ -0,0 +1,179 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.offheap;
+
+import org.agrona.BitUtil;
+import org.agrona.BufferUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Region accessor over a growable arena of off-heap regions. Regions are allocated on first access, zero
+ * initialised and never moved, so buffers wrapped by readers stay valid while the arena grows.
+ * Regions below a position that no reader is going to access any more can be released, their memory is then
+ * zeroed and reused for new regions, so that maxSize only bounds the bytes between the first retained and the
+ * last allocated position.
+ */
+final class OffHeapRegionAccessor implements RegionAccessor {
+    private static final int ALIGNMENT = 64;
+    private static final int INITIAL_SLOTS = 16;
+
+    private final int regionSize;
+    private final long maxRegions;
+    private final int maxSlots;
+    private final ArrayDeque<ByteBuffer> releasedBuffers = new ArrayDeque<>();
+
+    /**
+     * Regions are held in the slot of their region number modulo the number of slots.
+     */
+    private volatile AtomicReferenceArray<Region> slots;
+    private volatile long firstRegion;
+    private volatile long regionCount;
+    private boolean closed;
+
+    OffHeapRegionAccessor(final int regionSize, final long maxSize) {
+        if (regionSize <= 0 || regionSize % ALIGNMENT != 0) {
+            throw new IllegalArgumentException("regionSize " + regionSize + " must be a positive multiple of " + ALIGNMENT);
+        }
+        if (maxSize < regionSize) {
+            throw new IllegalArgumentException("maxSize " + maxSize + " must not be less than regionSize " + regionSize);
+        }
+        this.regionSize = regionSize;
+        this.maxRegions = maxSize / regionSize;
+        this.maxSlots = BitUtil.findNextPositivePowerOfTwo((int) Math.min(maxRegions, 1 << 30));
+        this.slots = new AtomicReferenceArray<>(Math.min(INITIAL_SLOTS, maxSlots));
+    }
+
+    @Override
+    public boolean wrap(final long position, final DirectBuffer buffer) {
+        if (position < 0) {
+            return false;
+        }
+        final long regionNumber = position / regionSize;
+        final AtomicReferenceArray<Region> current = slots;
+        Region region = current.get(slot(current, regionNumber));
+        if (region == null || region.number != regionNumber) {
+            region = allocate(regionNumber);
+            if (region == null) {
+                return false;
+            }
+        }
+        final int offset = (int) (position - regionNumber * regionSize);
+        buffer.wrap(region.buffer, offset, regionSize - offset);
+        return true;
+    }
+
+    private synchronized Region allocate(final long regionNumber) {
+        if (closed || regionNumber < firstRegion || regionNumber - firstRegion >= maxRegions) {
+            return null;
+        }
+        if (regionNumber < regionCount) {
+            return slots.get(slot(slots, regionNumber));
+        }
+        while (regionNumber - firstRegion >= slots.length()) {
+            grow();
+        }
+        for (long number = regionCount; number <= regionNumber; number++) {
+            slots.set(slot(slots, number), new Region(number, allocateBuffer()));
+        }
+        regionCount = regionNumber + 1;
+        return slots.get(slot(slots, regionNumber));
+    }
+
+    private void grow() {
+        final AtomicReferenceArray<Region> grown = new AtomicReferenceArray<>(Math.min(slots.length() << 1, maxSlots));
+        for (long number = firstRegion; number < regionCount; number++) {
+            grown.set(slot(grown, number), slots.get(slot(slots, number)));
+        }
+        slots = grown;
+    }
+
+    private ByteBuffer allocateBuffer() {
+        final ByteBuffer released = releasedBuffers.poll();
+        if (released != null) {
+            new UnsafeBuffer(released).setMemory(0, regionSize, (byte) 0);
+            return released;
+        }
+        return BufferUtil.allocateDirectAligned(regionSize, ALIGNMENT);
+    }
+
+    /**
+     * Releases the regions that lie entirely below the position. Readers must not access positions below it
+     * any more.
+     * @param position - position of the first byte that is still to be read
+     */
+    synchronized void release(final long position) {
+        final long releaseRegion = Math.min(position / regionSize, regionCount);
+        for (long number = firstRegion; number < releaseRegion; number++) {
+            final int slot = slot(slots, number);
+            releasedBuffers.add(slots.get(slot).buffer);
+            slots.set(slot, null);
+        }
+        if (releaseRegion > firstRegion) {
+            firstRegion = releaseRegion;
+        }
+    }
+
+    private static int slot(final AtomicReferenceArray<Region> slots, final long regionNumber) {
+        return (int) (regionNumber & (slots.length() - 1));
+    }
+
+    /**
+     * @return number of allocated bytes including released regions
+     */
+    long length() {
+        return regionCount * regionSize;
+    }
+
+    @Override
+    public int size() {
+        return regionSize;
+    }
+
+    /**
+     * Releases the regions, the memory is reclaimed once buffers still wrapping them are no longer referenced.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        slots = new AtomicReferenceArray<>(1);
+        releasedBuffers.clear();
+        firstRegion = regionCount;
+    }
+
+    private static final class Region {
+        final long number;
+        final ByteBuffer buffer;
+
+        Region(final long number, final ByteBuffer buffer) {
+            this.number = number;
+            this.buffer = buffer;
+        }
+    }
+}
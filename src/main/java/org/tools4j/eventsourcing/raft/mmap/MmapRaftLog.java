@@ -24,8 +24,11 @@
 package org.tools4j.eventsourcing.raft.mmap;
 
 import org.agrona.DirectBuffer;
-import org.agrona.collections.Long2LongHashMap;
 import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.BatchAppender;
+import org.tools4j.eventsourcing.api.SourceSeqTable;
+import org.tools4j.eventsourcing.mmap.AppendNotifier;
+import org.tools4j.eventsourcing.mmap.RegionSpanningMessages;
 import org.tools4j.eventsourcing.raft.api.RaftLog;
 import org.tools4j.eventsourcing.sbe.RaftHeaderDecoder;
 import org.tools4j.eventsourcing.sbe.RaftHeaderEncoder;
@@ -52,14 +55,16 @@ public final class MmapRaftLog implements RaftLog {
 
     private final UnsafeBuffer mappedHeaderBuffer;
     private final UnsafeBuffer mappedIndexBuffer;
-    private final UnsafeBuffer mappedMessageBuffer;
+    private final RegionSpanningMessages messages = new RegionSpanningMessages();
+    private final DefaultBatchAppender batchAppender = new DefaultBatchAppender();
 
     private final RaftIndexEncoder raftIndexEncoder = new RaftIndexEncoder();
     private final RaftIndexDecoder raftIndexDecoder = new RaftIndexDecoder();
     private final RaftHeaderEncoder raftHeaderEncoder = new RaftHeaderEncoder();
     private final RaftHeaderDecoder raftHeaderDecoder = new RaftHeaderDecoder();
-    private final Long2LongHashMap lastSourceSeqMap = new Long2LongHashMap(NOT_INITIALISED);
+    private final SourceSeqTable lastSourceSeqMap = SourceSeqTable.create(NOT_INITIALISED);
     private final LongConsumer truncateHandler;
+    private final AppendNotifier appendNotifier;
 
 
     private long currentIndexPosition = NOT_INITIALISED;
@@ -68,48 +73,121 @@ public final class MmapRaftLog implements RaftLog {
 
     public MmapRaftLog(final RaftRegionAccessorSupplier regionAccessorSupplier,
                        final LongConsumer truncateHandler) {
+        this(regionAccessorSupplier, truncateHandler, AppendNotifier.NONE);
+    }
+
+    /**
+     * @param regionAccessorSupplier - region accessor supplier
+     * @param truncateHandler - handler of the new size after truncation
+     * @param appendNotifier - notifier signalled after every append
+     */
+    public MmapRaftLog(final RaftRegionAccessorSupplier regionAccessorSupplier,
+                       final LongConsumer truncateHandler,
+                       final AppendNotifier appendNotifier) {
         this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
         this.truncateHandler = Objects.requireNonNull(truncateHandler);
+        this.appendNotifier = Objects.requireNonNull(appendNotifier);
 
         this.mappedHeaderBuffer = new UnsafeBuffer();
         this.mappedIndexBuffer = new UnsafeBuffer();
-        this.mappedMessageBuffer = new UnsafeBuffer();
     }
 
     @Override
     public void append(final int term, final int source, final long sourceSeq, final long eventTimeNanos, final DirectBuffer buffer, final int offset, final int length) {
+        if (batchAppender.batchSize > 0) {
+            throw new IllegalStateException("Batch of " + batchAppender.batchSize + " entries is not published");
+        }
         init();
 
-        if (regionAccessorSupplier.messageAccessor().wrap(currentMessagePosition, mappedMessageBuffer)) {
-            if (regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
+        if (regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
+            messages.write(regionAccessorSupplier.messageAccessor(), currentMessagePosition, buffer, offset, length);
 
-                if (mappedMessageBuffer.capacity() < length) {
-                    currentMessagePosition += mappedMessageBuffer.capacity();
-                    if (!regionAccessorSupplier.messageAccessor().wrap(currentMessagePosition, mappedMessageBuffer)) {
-                        throw new IllegalStateException("Failed to wrap message buffer for position " + currentMessagePosition);
-                    }
-                }
-                buffer.getBytes(offset, mappedMessageBuffer, 0, length);
+            raftIndexEncoder.wrap(mappedIndexBuffer, INDEX_OFFSET)
+                    .length(length)
+                    .position(currentMessagePosition)
+                    .term(term)
+                    .source(source)
+                    .sourceSeq(sourceSeq)
+                    .eventTimeNanos(eventTimeNanos);
+
+            lastSourceSeqMap.put(source, sourceSeq);
+
+            advanceIndexToNextAppendPosition(length);
+
+            mappedHeaderBuffer.putLongOrdered(LAST_INDEX_POSITION_OFFSET, currentIndexPosition);
+            appendNotifier.signal();
+        } else {
+            throw new IllegalStateException("Failed to wrap index buffer for position " + currentIndexPosition);
+        }
+    }
+
+    /**
+     * @param term - term of the appended entries
+     * @return batch appender that publishes all entries of a batch to pollers with a single ordered store of the
+     *         last index position
+     */
+    public BatchAppender batchAppender(final int term) {
+        batchAppender.term = term;
+        return batchAppender;
+    }
 
+    private final class DefaultBatchAppender implements BatchAppender {
+        private int term;
+        private int batchSize;
+        private long batchIndexPosition;
+        private long batchMessagePosition;
+
+        @Override
+        public void accept(final int source, final long sourceSeq, final long eventTimeNanos,
+                           final DirectBuffer buffer, final int offset, final int length) {
+            if (batchSize == 0) {
+                init();
+                batchIndexPosition = currentIndexPosition;
+                batchMessagePosition = currentMessagePosition;
+            }
+            messages.write(regionAccessorSupplier.messageAccessor(), batchMessagePosition, buffer, offset, length);
+
+            if (regionAccessorSupplier.indexAccessor().wrap(batchIndexPosition, mappedIndexBuffer)) {
                 raftIndexEncoder.wrap(mappedIndexBuffer, INDEX_OFFSET)
                         .length(length)
-                        .position(currentMessagePosition)
+                        .position(batchMessagePosition)
                         .term(term)
                         .source(source)
                         .sourceSeq(sourceSeq)
                         .eventTimeNanos(eventTimeNanos);
-
-                lastSourceSeqMap.put(source, sourceSeq);
-
-                advanceIndexToNextAppendPosition(length);
-
-                mappedHeaderBuffer.putLongOrdered(LAST_INDEX_POSITION_OFFSET, currentIndexPosition);
-
             } else {
-                throw new IllegalStateException("Failed to wrap index buffer for position " + currentIndexPosition);
+                throw new IllegalStateException("Failed to wrap index buffer for position " + batchIndexPosition);
             }
-        } else {
-            throw new IllegalStateException("Failed to wrap body buffer for position " + currentMessagePosition);
+            batchIndexPosition += INDEX_LENGTH;
+            batchMessagePosition += length;
+            batchSize++;
+        }
+
+        @Override
+        public int publish() {
+            final int published = batchSize;
+            if (published == 0) {
+                return 0;
+            }
+            batchSize = 0;
+            mappedHeaderBuffer.putLongOrdered(LAST_INDEX_POSITION_OFFSET, batchIndexPosition);
+            while (currentIndexPosition < batchIndexPosition) {
+                wrapIndex(currentIndexPosition / INDEX_LENGTH);
+                lastSourceSeqMap.put(raftIndexDecoder.source(), raftIndexDecoder.sourceSeq());
+                advanceIndexToNextAppendPosition(raftIndexDecoder.length());
+            }
+            appendNotifier.signal();
+            return published;
+        }
+
+        /**
+         * Entries of the batch are beyond the published last index position, they are overwritten by the next append.
+         */
+        @Override
+        public int abort() {
+            final int aborted = batchSize;
+            batchSize = 0;
+            return aborted;
         }
     }
 
@@ -238,11 +316,8 @@ public final class MmapRaftLog implements RaftLog {
 
             final long payloadPosition = indexDecoder.position();
             final int payloadLength = indexDecoder.length();
-            if (regionAccessorSupplier.messageAccessor().wrap(payloadPosition, mappedMessageBuffer)) {
-                messageBuffer.wrap(mappedMessageBuffer, 0, payloadLength);
-            } else {
-                throw new IllegalStateException("Failed to wrap payload buffer for position " + payloadPosition);
-            }
+            messageBuffer.wrap(messages.read(regionAccessorSupplier.messageAccessor(), payloadPosition, payloadLength),
+                    0, payloadLength);
         } else {
             throw new IllegalArgumentException("Index [" + index + "] must be positive and <= " + lastIndex);
         }
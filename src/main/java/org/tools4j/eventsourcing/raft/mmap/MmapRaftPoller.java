@@ -23,9 +23,13 @@
  */
 package org.tools4j.eventsourcing.raft.mmap;
 
+import org.agrona.DirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.tools4j.eventsourcing.api.MessageConsumer;
 import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.PollerCursor;
+import org.tools4j.eventsourcing.api.SourceFilter;
+import org.tools4j.eventsourcing.mmap.RegionSpanningMessages;
 import org.tools4j.eventsourcing.sbe.RaftIndexDecoder;
 
 import java.util.Objects;
@@ -34,12 +38,13 @@ public class MmapRaftPoller implements Poller {
     private static final int INDEX_OFFSET = 0;
     //private static final int INDEX_LENGTH = RaftIndexDecoder.ENCODED_LENGTH;
     private static final int INDEX_LENGTH = 64;
+    private static final long NOT_WRAPPED = -1;
 
     private final RaftRegionAccessorSupplier regionAccessorSupplier;
 
     private final UnsafeBuffer headerBuffer;
     private final UnsafeBuffer mappedIndexBuffer;
-    private final UnsafeBuffer mappedMessageBuffer;
+    private final RegionSpanningMessages messages = new RegionSpanningMessages();
 
     private final Options options;
 
@@ -48,6 +53,7 @@ public class MmapRaftPoller implements Poller {
 
     private long currentIndex = 0;
     private long currentIndexPosition = 0;
+    private long wrappedIndexPosition = NOT_WRAPPED;
 
     public MmapRaftPoller(final RaftRegionAccessorSupplier regionAccessorSupplier,
                           final Options options) {
@@ -56,76 +62,168 @@ public class MmapRaftPoller implements Poller {
 
         this.headerBuffer = new UnsafeBuffer();
         this.mappedIndexBuffer = new UnsafeBuffer();
-        this.mappedMessageBuffer = new UnsafeBuffer();
+
+        final long committedIndex = options.cursor().committedIndex();
+        if (committedIndex != PollerCursor.NULL_INDEX) {
+            seek(committedIndex);
+        }
     }
 
     @Override
     public int poll(final MessageConsumer processingHandler) {
+        return poll(processingHandler, 1);
+    }
+
+    /**
+     * Polls up to maxMessages index entries. The last index position is read from the header once per call and
+     * consecutive entries in the same region are read from the already wrapped index buffer. Runs of entries
+     * filtered out by source are passed over within a single iteration.
+     */
+    @Override
+    public int poll(final MessageConsumer processingHandler, final int maxMessages) {
         if (!regionAccessorSupplier.headerAccessor().wrap(0, headerBuffer)) {
             throw new IllegalStateException("Failed to wrap header buffer");
         }
-
-        if (options.resetWhen().test(currentIndex)) {
-            final long indexBeforeReset = currentIndex;
-            currentIndex = 0;
-            currentIndexPosition = 0;
-            options.onReset().accept(indexBeforeReset);
-        }
-
         final long lastIndexPosition = headerBuffer.getLongVolatile(0);
-        if (currentIndexPosition >= lastIndexPosition) {
-            return 0;
+        final SourceFilter sourceFilter = options.sourceFilter();
+
+        int done = 0;
+        for (int polled = 0; polled < maxMessages; polled++) {
+            if (options.resetWhen().test(currentIndex)) {
+                final long indexBeforeReset = currentIndex;
+                currentIndex = 0;
+                currentIndexPosition = 0;
+                options.cursor().commit(currentIndex);
+                options.onReset().accept(indexBeforeReset);
+            }
+
+            if (currentIndexPosition >= lastIndexPosition) {
+                break;
+            }
+            wrapIndex(currentIndexPosition);
+
+            if (!sourceFilter.matchesAll()) {
+                final long indexBeforeRun = currentIndex;
+                while (raftIndexDecoder.source() != 0 && !sourceFilter.matches(raftIndexDecoder.source())) {
+                    //pass over entry of a filtered source
+                    currentIndex++;
+                    currentIndexPosition += INDEX_LENGTH;
+                    if (currentIndexPosition >= lastIndexPosition) {
+                        break;
+                    }
+                    wrapIndex(currentIndexPosition);
+                }
+                if (currentIndex != indexBeforeRun) {
+                    options.cursor().commit(currentIndex);
+                    if (currentIndexPosition >= lastIndexPosition) {
+                        break;
+                    }
+                }
+            }
+
+            final int messageLength = raftIndexDecoder.length();
+            if (messageLength <= 0) {
+                break;
+            }
+
+            final long messagePosition = raftIndexDecoder.position();
+            final int source = raftIndexDecoder.source();
+            final long sourceSeq = raftIndexDecoder.sourceSeq();
+            final long eventTimeNanos = raftIndexDecoder.eventTimeNanos();
+
+            if (source == 0) {
+                //skip Noop
+                advanceIndexToNextAppendPosition();
+                done++;
+            } else if (options.skipWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
+                options.onProcessingSkipped().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+                advanceIndexToNextAppendPosition();
+            } else if (!options.pauseWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
+                done += pollMessages(messagePosition, messageLength,  source, sourceSeq, eventTimeNanos, processingHandler);
+                advanceIndexToNextAppendPosition();
+            } else {
+                break;
+            }
         }
-        wrapIndex();
+        return done;
+    }
 
-        final int messageLength = raftIndexDecoder.length();
-        if (messageLength <= 0) return 0;
+    private int pollMessages(final long messagePosition, final int messageLength, final int source, final long sourceSeq, final long eventTimeNanos,
+                             final MessageConsumer processingHandler) {
+        final DirectBuffer messageBuffer = messages.read(regionAccessorSupplier.messageAccessor(), messagePosition, messageLength);
+        options.onProcessingStart().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+        final int done = options.bufferPoller().poll(messageBuffer, 0, messageLength, processingHandler);
+        options.onProcessingComplete().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+        return done;
+    }
 
-        final long messagePosition = raftIndexDecoder.position();
-        final int source = raftIndexDecoder.source();
-        final long sourceSeq = raftIndexDecoder.sourceSeq();
-        final long eventTimeNanos = raftIndexDecoder.eventTimeNanos();
+    private void wrapIndex(final long indexPosition) {
+        final long offset = indexPosition - wrappedIndexPosition;
+        if (wrappedIndexPosition == NOT_WRAPPED || offset < 0 || offset + INDEX_LENGTH > mappedIndexBuffer.capacity()) {
+            if (!regionAccessorSupplier.indexAccessor().wrap(indexPosition, mappedIndexBuffer)) {
+                throw new IllegalStateException("Failed to wrap index buffer to position " + indexPosition);
+            }
+            wrappedIndexPosition = indexPosition;
+            raftIndexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
+        } else {
+            raftIndexDecoder.wrap(mappedIndexBuffer, (int) offset + INDEX_OFFSET);
+        }
+    }
 
-        if (source == 0) {
-            //skip Noop
-            advanceIndexToNextAppendPosition();
-            return 1;
+    @Override
+    public boolean messageAvailable() {
+        if (!regionAccessorSupplier.headerAccessor().wrap(0, headerBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer");
         }
+        return currentIndexPosition < headerBuffer.getLongVolatile(0);
+    }
 
-        if (options.skipWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
-            options.onProcessingSkipped().accept(currentIndex, source, sourceSeq, eventTimeNanos);
-            advanceIndexToNextAppendPosition();
-            return 0;
-        } else if (!options.pauseWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
-            final int done = pollMessages(messagePosition, messageLength,  source, sourceSeq, eventTimeNanos, processingHandler);
-            advanceIndexToNextAppendPosition();
-            return done;
-        } else {
-            return 0;
+    @Override
+    public void seek(final long index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Index [" + index + "] must be positive");
         }
+        currentIndex = index;
+        currentIndexPosition = index * INDEX_LENGTH;
     }
 
-    private int pollMessages(final long messagePosition, final int messageLength, final int source, final long sourceSeq, final long eventTimeNanos,
-                             final MessageConsumer processingHandler) {
-        if (!regionAccessorSupplier.messageAccessor().wrap(messagePosition, mappedMessageBuffer)) {
-            throw new IllegalStateException("Failed to wrap message buffer to position " + messagePosition);
+    @Override
+    public long seekToTime(final long timeNanos) {
+        if (!regionAccessorSupplier.headerAccessor().wrap(0, headerBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer");
         }
-        options.onProcessingStart().accept(currentIndex, source, sourceSeq, eventTimeNanos);
-        final int done = options.bufferPoller().poll(mappedMessageBuffer, 0, messageLength, processingHandler);
-        options.onProcessingComplete().accept(currentIndex, source, sourceSeq, eventTimeNanos);
-        return done;
+        final long size = headerBuffer.getLongVolatile(0) / INDEX_LENGTH;
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (isBefore(mid, size, timeNanos)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        seek(low);
+        return low;
     }
 
-    private void wrapIndex() {
-        if (!regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
-            throw new IllegalStateException("Failed to wrap index buffer to position " + currentIndexPosition);
+    /**
+     * Noop entries have zero eventTimeNanos, so the first non-noop entry at or after the index is tested instead.
+     */
+    private boolean isBefore(final long index, final long size, final long timeNanos) {
+        for (long i = index; i < size; i++) {
+            wrapIndex(i * INDEX_LENGTH);
+            if (raftIndexDecoder.source() != 0) {
+                return raftIndexDecoder.eventTimeNanos() < timeNanos;
+            }
         }
-        raftIndexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
+        return false;
     }
 
     private void advanceIndexToNextAppendPosition() {
         currentIndex++;
         currentIndexPosition += INDEX_LENGTH;
+        options.cursor().commit(currentIndex);
     }
 
     @Override
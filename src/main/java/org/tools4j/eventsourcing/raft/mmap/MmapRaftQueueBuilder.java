@@ -31,6 +31,10 @@ import org.slf4j.LoggerFactory;
 import org.tools4j.eventsourcing.api.ExecutionQueue;
 import org.tools4j.eventsourcing.api.IndexedAppender;
 import org.tools4j.eventsourcing.api.IndexedPollerFactory;
+import org.tools4j.eventsourcing.mmap.AppendNotifier;
+import org.tools4j.eventsourcing.mmap.DurabilityPolicy;
+import org.tools4j.eventsourcing.mmap.MmapQueueFlusher;
+import org.tools4j.eventsourcing.mmap.SharedMappingPool;
 import org.tools4j.eventsourcing.raft.api.OnTransitionHandler;
 import org.tools4j.eventsourcing.raft.api.RaftLog;
 import org.tools4j.eventsourcing.raft.state.*;
@@ -79,6 +83,7 @@ public interface MmapRaftQueueBuilder {
         Optionals regionRingSize(int regionRingSize);
         Optionals regionsToMapAhead(int regionsToMapAhead);
         Optionals maxFileSize(long maxFileSize);
+        Optionals mappingPool(SharedMappingPool mappingPool);
         Optionals encodingBufferSize(int encodingBufferSize);
 
         Optionals onLeaderTransitionHandler(final OnTransitionHandler onLeaderTransitionHandler);
@@ -92,8 +97,17 @@ public interface MmapRaftQueueBuilder {
         Optionals logInMessages(boolean logInMessages);
         Optionals logOutMessages(boolean logOutMessages);
         Optionals truncateHandler(LongConsumer truncateHandler);
+        Optionals durabilityPolicy(DurabilityPolicy durabilityPolicy);
 
         ExecutionQueue build() throws IOException;
+
+        /**
+         * Builds a flusher of the raft log applying the durability policy. The flusher is to be run on a background
+         * thread and closed by the caller.
+         * @return raft log flusher
+         * @throws IOException when the raft log files could not be mapped
+         */
+        MmapQueueFlusher buildFlusher() throws IOException;
     }
 
     static MmapRaftQueueBuilder forAeronTransport(final Aeron aeron, final IntFunction<String> serverToChannel) {
@@ -117,6 +131,7 @@ public interface MmapRaftQueueBuilder {
         private int regionRingSize = 4;
         private int regionsToMapAhead = 1;
         private long maxFileSize = 1024 * 1024 * 1024 * 2L;
+        private SharedMappingPool mappingPool = null;
         private int encodingBufferSize = 8 * 1024;
 
 
@@ -133,6 +148,7 @@ public interface MmapRaftQueueBuilder {
         private boolean logInMessages = false;
         private boolean logOutMessages = false;
         private LongConsumer truncateHandler = size -> {};
+        private DurabilityPolicy durabilityPolicy = DurabilityPolicy.NONE;
 
         public DefaultMmapRaftQueueBuilder(final Aeron aeron,
                                            final IntFunction<String> serverToChannel) {
@@ -207,6 +223,12 @@ public interface MmapRaftQueueBuilder {
             return this;
         }
 
+        @Override
+        public Optionals mappingPool(final SharedMappingPool mappingPool) {
+            this.mappingPool = mappingPool;
+            return this;
+        }
+
         @Override
         public Optionals encodingBufferSize(final int encodingBufferSize) {
             this.encodingBufferSize = encodingBufferSize;
@@ -281,6 +303,30 @@ public interface MmapRaftQueueBuilder {
             return this;
         }
 
+        @Override
+        public Optionals durabilityPolicy(final DurabilityPolicy durabilityPolicy) {
+            this.durabilityPolicy = Objects.requireNonNull(durabilityPolicy);
+            return this;
+        }
+
+        @Override
+        public MmapQueueFlusher buildFlusher() throws IOException {
+            Objects.requireNonNull(directory);
+            return new MmapQueueFlusher(
+                    new RaftLogTail(RaftRegionAccessorSupplier.forReadOnly(
+                            directory,
+                            filePrefix+ "_" + serverId,
+                            regionRingFactory,
+                            regionSize,
+                            regionRingSize,
+                            regionsToMapAhead)),
+                    directory + "/" + filePrefix+ "_" + serverId + "_index",
+                    directory + "/" + filePrefix+ "_" + serverId + "_message",
+                    0,
+                    durabilityPolicy,
+                    System::nanoTime);
+        }
+
         @Override
         public ExecutionQueue build() throws IOException {
             Objects.requireNonNull(directory);
@@ -317,26 +363,34 @@ public interface MmapRaftQueueBuilder {
                     appendRequestDecoder,
                     appendResponseDecoder);
 
-            final RaftLog raftLog = new MmapRaftLog(
-                    RaftRegionAccessorSupplier.forReadWrite(
-                            directory,
-                            filePrefix+ "_" + serverId,
-                            clearFiles,
-                            regionRingFactory,
-                            regionSize,
-                            regionRingSize,
-                            regionsToMapAhead,
-                            maxFileSize),
-                    truncateHandler);
+            final RaftRegionAccessorSupplier raftLogRegionAccessorSupplier = RaftRegionAccessorSupplier.forReadWrite(
+                    directory,
+                    filePrefix+ "_" + serverId,
+                    clearFiles,
+                    regionRingFactory,
+                    regionSize,
+                    regionRingSize,
+                    regionsToMapAhead,
+                    maxFileSize);
+            final AppendNotifier appendNotifier = AppendNotifier.forHeaderFile(
+                    directory + "/" + filePrefix+ "_" + serverId + "_header");
+            final RaftLog raftLog = new MmapRaftLog(raftLogRegionAccessorSupplier, truncateHandler, appendNotifier);
 
             final IndexedPollerFactory committedLogPollerFactory = options ->
-                    new MmapRaftPoller(RaftRegionAccessorSupplier.forReadOnly(
-                            directory,
-                            filePrefix+ "_" + serverId,
-                            regionRingFactory,
-                            regionSize,
-                            regionRingSize,
-                            regionsToMapAhead),
+                    new MmapRaftPoller(mappingPool != null ?
+                            RaftRegionAccessorSupplier.forReadOnly(
+                                    mappingPool,
+                                    directory,
+                                    filePrefix+ "_" + serverId,
+                                    regionSize,
+                                    regionsToMapAhead) :
+                            RaftRegionAccessorSupplier.forReadOnly(
+                                    directory,
+                                    filePrefix+ "_" + serverId,
+                                    regionRingFactory,
+                                    regionSize,
+                                    regionRingSize,
+                                    regionsToMapAhead),
                             org.tools4j.eventsourcing.api.Poller.Options.builder()
                                     .skipWhen(options.skipWhen().and(
                                             (index, source, sourceSeq, eventTimeNanos) -> index <= raftLog.commitIndex()))
@@ -348,6 +402,8 @@ public interface MmapRaftQueueBuilder {
                                     .onProcessingSkipped(options.onProcessingSkipped())
                                     .onReset(options.onReset())
                                     .bufferPoller(options.bufferPoller())
+                                    .cursor(options.cursor())
+                                    .sourceFilter(options.sourceFilter())
                                     .build());
 
             final Supplier<Timer> heartbeatTimerFactory = () -> new DefaultTimer(clock, heartbeatTimeoutMillis, heartbeatTimeoutMillis);
@@ -491,6 +547,7 @@ public interface MmapRaftQueueBuilder {
                 @Override
                 public void close() {
                     raftLog.close();
+                    appendNotifier.close();
                 }
             };
 
@@ -0,0 +1,211 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.raft.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.SourceFilter;
+import org.tools4j.eventsourcing.mmap.RegionSpanningMessages;
+import org.tools4j.eventsourcing.sbe.RaftIndexDecoder;
+
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Polls the raft log backwards starting at the tail index, so that recent messages are read at a cost
+ * proportional to the number of polled entries. Noop entries are skipped, reset moves the poller back to the
+ * tail and polling ends at index zero.
+ */
+public class MmapRaftReversePoller implements Poller {
+    private static final int INDEX_OFFSET = 0;
+    //private static final int INDEX_LENGTH = RaftIndexDecoder.ENCODED_LENGTH;
+    private static final int INDEX_LENGTH = 64;
+    private static final long NOT_WRAPPED = -1;
+
+    private final RaftRegionAccessorSupplier regionAccessorSupplier;
+    private final LongSupplier tailIndex;
+
+    private final UnsafeBuffer headerBuffer;
+    private final UnsafeBuffer mappedIndexBuffer;
+    private final RegionSpanningMessages messages = new RegionSpanningMessages();
+
+    private final Options options;
+
+    private final RaftIndexDecoder raftIndexDecoder = new RaftIndexDecoder();
+
+    private long currentIndex;
+    private long wrappedIndexPosition = NOT_WRAPPED;
+
+    /**
+     * Creates a poller starting at the last appended entry.
+     * @param regionAccessorSupplier - region accessor supplier
+     * @param options - poller options
+     */
+    public MmapRaftReversePoller(final RaftRegionAccessorSupplier regionAccessorSupplier,
+                                 final Options options) {
+        this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.options = Objects.requireNonNull(options);
+        this.headerBuffer = new UnsafeBuffer();
+        this.mappedIndexBuffer = new UnsafeBuffer();
+        this.tailIndex = this::lastIndex;
+        seekToTail();
+    }
+
+    /**
+     * @param regionAccessorSupplier - region accessor supplier
+     * @param tailIndex - supplier of the index to start at, for instance the commit index of the raft log
+     * @param options - poller options
+     */
+    public MmapRaftReversePoller(final RaftRegionAccessorSupplier regionAccessorSupplier,
+                                 final LongSupplier tailIndex,
+                                 final Options options) {
+        this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.tailIndex = Objects.requireNonNull(tailIndex);
+        this.options = Objects.requireNonNull(options);
+        this.headerBuffer = new UnsafeBuffer();
+        this.mappedIndexBuffer = new UnsafeBuffer();
+        seekToTail();
+    }
+
+    @Override
+    public int poll(final MessageConsumer processingHandler) {
+        return poll(processingHandler, 1);
+    }
+
+    @Override
+    public int poll(final MessageConsumer processingHandler, final int maxMessages) {
+        final long lastIndex = lastIndex();
+        final SourceFilter sourceFilter = options.sourceFilter();
+
+        int done = 0;
+        for (int polled = 0; polled < maxMessages; polled++) {
+            if (options.resetWhen().test(currentIndex)) {
+                final long indexBeforeReset = currentIndex;
+                seekToTail();
+                options.onReset().accept(indexBeforeReset);
+            }
+
+            if (currentIndex < 0 || currentIndex > lastIndex) {
+                break;
+            }
+            wrapIndex(currentIndex * INDEX_LENGTH);
+            while (raftIndexDecoder.source() != 0 && !sourceFilter.matches(raftIndexDecoder.source())) {
+                //pass over entry of a filtered source
+                if (--currentIndex < 0) {
+                    return done;
+                }
+                wrapIndex(currentIndex * INDEX_LENGTH);
+            }
+
+            final int messageLength = raftIndexDecoder.length();
+            final long messagePosition = raftIndexDecoder.position();
+            final int source = raftIndexDecoder.source();
+            final long sourceSeq = raftIndexDecoder.sourceSeq();
+            final long eventTimeNanos = raftIndexDecoder.eventTimeNanos();
+
+            if (source == 0) {
+                //skip Noop
+                currentIndex--;
+                done++;
+            } else if (options.skipWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
+                options.onProcessingSkipped().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+                currentIndex--;
+            } else if (!options.pauseWhen().test(currentIndex, source, sourceSeq, eventTimeNanos)) {
+                done += pollMessages(messagePosition, messageLength, source, sourceSeq, eventTimeNanos, processingHandler);
+                currentIndex--;
+            } else {
+                break;
+            }
+        }
+        return done;
+    }
+
+    private int pollMessages(final long messagePosition, final int messageLength, final int source, final long sourceSeq, final long eventTimeNanos,
+                             final MessageConsumer processingHandler) {
+        final DirectBuffer messageBuffer = messages.read(regionAccessorSupplier.messageAccessor(), messagePosition, messageLength);
+        options.onProcessingStart().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+        final int done = options.bufferPoller().poll(messageBuffer, 0, messageLength, processingHandler);
+        options.onProcessingComplete().accept(currentIndex, source, sourceSeq, eventTimeNanos);
+        return done;
+    }
+
+    /**
+     * Wraps the whole region of the entry, so that entries of the same region are read from the wrapped buffer
+     * in either direction.
+     */
+    private void wrapIndex(final long indexPosition) {
+        final long offset = indexPosition - wrappedIndexPosition;
+        if (wrappedIndexPosition == NOT_WRAPPED || offset < 0 || offset + INDEX_LENGTH > mappedIndexBuffer.capacity()) {
+            final long regionPosition = indexPosition - indexPosition % regionAccessorSupplier.indexAccessor().size();
+            if (!regionAccessorSupplier.indexAccessor().wrap(regionPosition, mappedIndexBuffer)) {
+                throw new IllegalStateException("Failed to wrap index buffer to position " + regionPosition);
+            }
+            wrappedIndexPosition = regionPosition;
+            raftIndexDecoder.wrap(mappedIndexBuffer, (int) (indexPosition - regionPosition) + INDEX_OFFSET);
+        } else {
+            raftIndexDecoder.wrap(mappedIndexBuffer, (int) offset + INDEX_OFFSET);
+        }
+    }
+
+    private long lastIndex() {
+        if (!regionAccessorSupplier.headerAccessor().wrap(0, headerBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer");
+        }
+        return headerBuffer.getLongVolatile(0) / INDEX_LENGTH - 1;
+    }
+
+    @Override
+    public boolean messageAvailable() {
+        return currentIndex >= 0 && currentIndex <= lastIndex();
+    }
+
+    /**
+     * Moves the poller to the given index so that the next poll consumes the message at the index and moves
+     * towards the start of the log.
+     * @param index index of the next message to be polled, zero based
+     */
+    @Override
+    public void seek(final long index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Index [" + index + "] must be positive");
+        }
+        currentIndex = index;
+    }
+
+    /**
+     * Moves the poller to the tail index.
+     * @return tail index, -1 if the log is empty
+     */
+    public long seekToTail() {
+        currentIndex = Math.min(tailIndex.getAsLong(), lastIndex());
+        return currentIndex;
+    }
+
+    @Override
+    public void close() {
+        regionAccessorSupplier.close();
+    }
+}
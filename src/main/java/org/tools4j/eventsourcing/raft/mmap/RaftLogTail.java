@@ -0,0 +1,87 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.raft.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.mmap.MmapQueueFlusher;
+import org.tools4j.eventsourcing.sbe.RaftIndexDecoder;
+
+import java.util.Objects;
+
+/**
+ * Appended tail of a raft log, read from the last index position in the header.
+ */
+public final class RaftLogTail implements MmapQueueFlusher.AppendedTail {
+    private static final int LAST_INDEX_POSITION_OFFSET = 0;
+    private static final int INDEX_LENGTH = 64;
+
+    private final RaftRegionAccessorSupplier regionAccessorSupplier;
+    private final UnsafeBuffer headerBuffer = new UnsafeBuffer();
+    private final UnsafeBuffer mappedIndexBuffer = new UnsafeBuffer();
+    private final RaftIndexDecoder raftIndexDecoder = new RaftIndexDecoder();
+
+    private long indexPosition;
+    private long messagePosition;
+
+    public RaftLogTail(final RaftRegionAccessorSupplier regionAccessorSupplier) {
+        this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+    }
+
+    @Override
+    public long read() {
+        if (!regionAccessorSupplier.headerAccessor().wrap(0, headerBuffer)) {
+            throw new IllegalStateException("Failed to wrap header buffer");
+        }
+        final long lastIndexPosition = headerBuffer.getLongVolatile(LAST_INDEX_POSITION_OFFSET);
+        if (lastIndexPosition != indexPosition) {
+            if (lastIndexPosition > 0) {
+                final long position = lastIndexPosition - INDEX_LENGTH;
+                if (!regionAccessorSupplier.indexAccessor().wrap(position, mappedIndexBuffer)) {
+                    throw new IllegalStateException("Failed to wrap index buffer to position " + position);
+                }
+                raftIndexDecoder.wrap(mappedIndexBuffer, 0);
+                messagePosition = raftIndexDecoder.position() + raftIndexDecoder.length();
+            } else {
+                messagePosition = 0;
+            }
+            indexPosition = lastIndexPosition;
+        }
+        return indexPosition / INDEX_LENGTH;
+    }
+
+    @Override
+    public long indexPosition() {
+        return indexPosition;
+    }
+
+    @Override
+    public long messagePosition() {
+        return messagePosition;
+    }
+
+    @Override
+    public void close() {
+        regionAccessorSupplier.close();
+    }
+}
@@ -23,6 +23,8 @@
  */
 package org.tools4j.eventsourcing.raft.mmap;
 
+import org.tools4j.eventsourcing.mmap.JumpTolerantRegionAccessor;
+import org.tools4j.eventsourcing.mmap.SharedMappingPool;
 import org.tools4j.mmap.region.api.FileSizeEnsurer;
 import org.tools4j.mmap.region.api.RegionAccessor;
 import org.tools4j.mmap.region.api.RegionRingFactory;
@@ -88,7 +90,7 @@ public interface RaftRegionAccessorSupplier extends AutoCloseable {
         final MappedFile headerPollerFile = new MappedFile(headerFileName, MappedFile.Mode.READ_ONLY,
                 4096, RaftRegionAccessorSupplier::initFile);
 
-        final RegionAccessor indexRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor indexRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -97,9 +99,9 @@ public interface RaftRegionAccessorSupplier extends AutoCloseable {
                         indexPollerFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                indexPollerFile::close);
+                indexPollerFile::close), regionSize);
 
-        final RegionAccessor messageRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor messageRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -108,9 +110,9 @@ public interface RaftRegionAccessorSupplier extends AutoCloseable {
                         messagePollerFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                messagePollerFile::close);
+                messagePollerFile::close), regionSize);
 
-        final RegionAccessor headerRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor headerRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         4,
                         4096,
@@ -119,7 +121,7 @@ public interface RaftRegionAccessorSupplier extends AutoCloseable {
                         headerPollerFile.getMode().getMapMode()),
                 4096,
                 1,
-                headerPollerFile::close);
+                headerPollerFile::close), 4096);
 
         return new RaftRegionAccessorSupplier() {
             @Override
@@ -139,6 +141,52 @@ public interface RaftRegionAccessorSupplier extends AutoCloseable {
         };
     }
 
+    /**
+     * Factory method for readOnly region accessors sharing file handles and mapped regions with other
+     * accessors of the mapping pool.
+     * @param mappingPool - shared mapping pool
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix for both index and message files.
+     *                   Index would have "_index" suffix and message would have "_message" suffix.
+     * @param regionSize - region size in bytes
+     * @param regionsToMapAhead - number of regions to map ahead.
+     * @return an instance of RegionAccessorSupplier
+     * @throws IOException when either index and message files could not be opened.
+     */
+    static RaftRegionAccessorSupplier forReadOnly(final SharedMappingPool mappingPool,
+                                                  final String directory,
+                                                  final String filePrefix,
+                                                  final int regionSize,
+                                                  final int regionsToMapAhead) throws IOException {
+        final String indexFileName = directory + "/" + filePrefix + "_index";
+        final String messageFileName = directory + "/" + filePrefix + "_message";
+        final String headerFileName = directory + "/" + filePrefix + "_header";
+
+        final RegionAccessor indexAccessor = mappingPool.accessor(indexFileName, regionSize, regionsToMapAhead,
+                RaftRegionAccessorSupplier::initFile);
+        final RegionAccessor messageAccessor = mappingPool.accessor(messageFileName, regionSize, regionsToMapAhead,
+                (file, mode) -> {});
+        final RegionAccessor headerAccessor = mappingPool.accessor(headerFileName, 4096, 0,
+                RaftRegionAccessorSupplier::initFile);
+
+        return new RaftRegionAccessorSupplier() {
+            @Override
+            public RegionAccessor indexAccessor() {
+                return indexAccessor;
+            }
+
+            @Override
+            public RegionAccessor messageAccessor() {
+                return messageAccessor;
+            }
+
+            @Override
+            public RegionAccessor headerAccessor() {
+                return headerAccessor;
+            }
+        };
+    }
+
     /**
      * Factory method for readWrite region accessors with files to be cleared before usage.
      * @param directory - directory where the files are located
@@ -223,7 +271,7 @@ public interface RaftRegionAccessorSupplier extends AutoCloseable {
         final MappedFile headerAppenderFile = new MappedFile(headerFileName, mapMode,
                 4096, RaftRegionAccessorSupplier::initFile);
 
-        final RegionAccessor indexRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor indexRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -232,9 +280,9 @@ public interface RaftRegionAccessorSupplier extends AutoCloseable {
                         indexAppenderFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                indexAppenderFile::close);
+                indexAppenderFile::close), regionSize);
 
-        final RegionAccessor messageRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor messageRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -243,9 +291,9 @@ public interface RaftRegionAccessorSupplier extends AutoCloseable {
                         messageAppenderFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                messageAppenderFile::close);
+                messageAppenderFile::close), regionSize);
 
-        final RegionAccessor headerRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor headerRegionRingAccessor = new JumpTolerantRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         4,
                         4096,
@@ -254,7 +302,7 @@ public interface RaftRegionAccessorSupplier extends AutoCloseable {
                         headerAppenderFile.getMode().getMapMode()),
                 4096,
                 1,
-                headerAppenderFile::close);
+                headerAppenderFile::close), 4096);
 
         return new RaftRegionAccessorSupplier() {
             @Override
@@ -24,6 +24,7 @@
 package org.tools4j.eventsourcing.api;
 
 
+import org.agrona.DirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.junit.After;
 import org.junit.Test;
@@ -31,10 +32,16 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.tools4j.eventsourcing.TestMessage;
+import org.tools4j.eventsourcing.common.PayloadBufferPoller;
 import org.tools4j.eventsourcing.mmap.MmapBuilder;
+import org.tools4j.eventsourcing.offheap.OffHeapBuilder;
 import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.nobark.loop.Step;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
 import java.util.function.LongSupplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -54,6 +61,17 @@ public class ExecutionQueueTest {
     private ProgressState compProgressState;
 
     private void initExecutionQueue(final CommandExecutorFactory commandExecutorFactory) throws IOException {
+        initExecutionQueue(commandExecutorFactory, UnaryOperator.identity());
+    }
+
+    private void initExecutionQueue(final CommandExecutorFactory commandExecutorFactory,
+                                    final UnaryOperator<ExecutionQueue.Builder.OptionalsStep> optionals) throws IOException {
+        initExecutionQueue(commandExecutorFactory, optionals, true);
+    }
+
+    private void initExecutionQueue(final CommandExecutorFactory commandExecutorFactory,
+                                    final UnaryOperator<ExecutionQueue.Builder.OptionalsStep> optionals,
+                                    final boolean clearFiles) throws IOException {
         final RegionRingFactory regionRingFactory = RegionRingFactory.sync();
 
         final String directory = System.getProperty("user.dir") + "/build";
@@ -61,26 +79,27 @@ public class ExecutionQueueTest {
 
         final MessageConsumer stateMessageConsumer = (buffer, offset, length) -> {};
 
-        executionQueue = ExecutionQueue.builder()
+        final ExecutionQueue.Builder.OptionalsStep builder = ExecutionQueue.builder()
                 .commandQueue(
                         MmapBuilder.create()
                                 .directory(directory)
                                 .filePrefix("command")
                                 .regionRingFactory(regionRingFactory)
-                                .clearFiles(true)
+                                .clearFiles(clearFiles)
                                 .buildQueue())
                 .eventQueue(
                         MmapBuilder.create()
                                 .directory(directory)
                                 .filePrefix("event")
                                 .regionRingFactory(regionRingFactory)
-                                .clearFiles(true)
+                                .clearFiles(clearFiles)
                                 .buildQueue())
                 .commandExecutorFactory(commandExecutorFactory)
                 .eventApplierFactory(
                         (currentProgressState, completedProgressState) -> stateMessageConsumer)
-                .systemNanoClock(systemNanoClock)
-                .build();
+                .systemNanoClock(systemNanoClock);
+
+        executionQueue = optionals.apply(builder).build();
     }
 
     @After
@@ -166,4 +185,364 @@ public class ExecutionQueueTest {
         assertThat(compProgressState.sourceSeq(source2)).isEqualTo(2);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void pipelined_commands_should_be_executed_after_replay_and_events_persisted_separately() throws Exception {
+        //given
+        final IndexedQueue pipelineQueue = OffHeapBuilder.create().buildQueue();
+        initExecutionQueue(CommandExecutorFactory.PASS_THROUGH, builder -> builder.pipelineQueue(pipelineQueue));
+        final List<Step> steps = executionQueue.pipelineSteps();
+        final Step commandExecutionStep = steps.get(0);
+        final Step eventPersistenceStep = steps.get(1);
+        final Step committedEventApplyingStep = steps.get(2);
+
+        final List<Long> eventSourceSeqs = new ArrayList<>();
+        final Poller eventPoller = executionQueue.createPoller(Poller.Options.builder()
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> eventSourceSeqs.add(sourceSeq))
+                .build());
+
+        final TestMessage message = TestMessage.forDefaultLength();
+        final int source = 100;
+        executionQueue.appender().accept(source, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(source, 2, System.nanoTime(), message.buffer, message.offset, message.length);
+
+        //when
+        final boolean executedBeforeReplay = commandExecutionStep.perform();
+
+        //then
+        assertThat(executedBeforeReplay).isFalse();
+
+        //when
+        committedEventApplyingStep.perform();
+
+        //then
+        assertThat(commandExecutionStep.perform()).isTrue();
+        assertThat(commandExecutionStep.perform()).isTrue();
+        assertThat(eventPoller.poll((buffer, offset, length) -> {}, 16)).isZero();
+
+        //when
+        eventPersistenceStep.perform();
+        eventPoller.poll((buffer, offset, length) -> {}, 16);
+
+        //then
+        assertThat(eventSourceSeqs).containsExactly(1L, 2L);
+        eventPoller.close();
+    }
+
+    @Test
+    public void events_of_grouped_commands_should_be_appended_as_one_entry() throws Exception {
+        //given
+        initExecutionQueue(CommandExecutorFactory.PASS_THROUGH, builder -> builder.groupCommit(3, Long.MAX_VALUE));
+
+        final List<Integer> entrySources = new ArrayList<>();
+        final List<Integer> commandSources = new ArrayList<>();
+        final List<Integer> events = new ArrayList<>();
+        final PayloadBufferPoller payloadBufferPoller = new PayloadBufferPoller(
+                (index, source, sourceSeq, eventTimeNanos) -> commandSources.add(source),
+                IndexConsumer.noop());
+        final Poller eventPoller = executionQueue.createPoller(Poller.Options.builder()
+                .onProcessingStart(payloadBufferPoller.andThen(
+                        (index, source, sourceSeq, eventTimeNanos) -> entrySources.add(source)))
+                .bufferPoller(payloadBufferPoller)
+                .build());
+
+        final TestMessage message = TestMessage.forDefaultLength();
+        executionQueue.appender().accept(10, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(20, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(10, 2, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(30, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+
+        //when
+        for (int i = 0; i < 4; i++) {
+            executionQueue.executorStep().perform();
+        }
+        eventPoller.poll((buffer, offset, length) -> events.add(length), 16);
+
+        //then
+        assertThat(entrySources).containsExactly(10);
+        assertThat(commandSources).containsExactly(10, 20, 10);
+        assertThat(events).containsExactly(message.length, message.length, message.length);
+        eventPoller.close();
+    }
+
+    @Test
+    public void commands_of_appended_group_should_not_be_executed_again_after_restart() throws Exception {
+        //given
+        final List<String> executedCommands = new ArrayList<>();
+        initExecutionQueue(commandRecordingExecutorFactory(executedCommands),
+                builder -> builder.groupCommit(2, Long.MAX_VALUE));
+        final TestMessage message = TestMessage.forDefaultLength();
+        executionQueue.appender().accept(10, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(20, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(10, 2, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(20, 2, System.nanoTime(), message.buffer, message.offset, message.length);
+        performAll(executionQueue.executorStep());
+        assertThat(executedCommands).containsExactly("10:1", "20:1", "10:2", "20:2");
+        executionQueue.close();
+        executedCommands.clear();
+
+        //when
+        initExecutionQueue(commandRecordingExecutorFactory(executedCommands),
+                builder -> builder.groupCommit(2, Long.MAX_VALUE), false);
+        performAll(executionQueue.executorStep());
+
+        //then
+        assertThat(executedCommands).isEmpty();
+    }
+
+    @Test
+    public void commands_of_group_not_appended_should_be_executed_again_after_restart() throws Exception {
+        //given
+        final List<String> executedCommands = new ArrayList<>();
+        initExecutionQueue(commandRecordingExecutorFactory(executedCommands),
+                builder -> builder.groupCommit(2, Long.MAX_VALUE));
+        final TestMessage message = TestMessage.forDefaultLength();
+        executionQueue.appender().accept(10, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(20, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(30, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        performAll(executionQueue.executorStep());
+        assertThat(executedCommands).containsExactly("10:1", "20:1", "30:1");
+        executionQueue.close();
+        executedCommands.clear();
+
+        //when
+        initExecutionQueue(commandRecordingExecutorFactory(executedCommands),
+                builder -> builder.groupCommit(2, Long.MAX_VALUE), false);
+        performAll(executionQueue.executorStep());
+
+        //then
+        assertThat(executedCommands).containsExactly("30:1");
+    }
+
+    @Test
+    public void command_with_many_events_should_exceed_initial_transaction_buffer() throws Exception {
+        //given
+        final int eventCount = 500;
+        initExecutionQueue((eventApplier, currentProgressState, completedProgressState) ->
+                (buffer, offset, length) -> {
+                    for (int i = 0; i < eventCount; i++) {
+                        eventApplier.accept(buffer, offset, length);
+                    }
+                }, builder -> builder.transactionBufferSize(1024));
+
+        final List<Integer> events = new ArrayList<>();
+        final Poller eventPoller = executionQueue.createPoller(Poller.Options.builder()
+                .bufferPoller(new PayloadBufferPoller())
+                .build());
+
+        final TestMessage message = TestMessage.forDefaultLength();
+        executionQueue.appender().accept(10, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+
+        //when
+        executionQueue.executorStep().perform();
+        eventPoller.poll((buffer, offset, length) -> events.add(length), 1);
+
+        //then
+        assertThat(events).hasSize(eventCount).containsOnly(message.length);
+        eventPoller.close();
+    }
+
+    @Test
+    public void partitioned_commands_should_be_executed_by_partition_of_their_key() throws Exception {
+        //given
+        executionQueue = ExecutionQueue.partitionedBuilder()
+                .partitions(2)
+                .partitionFactory(partition -> ExecutionQueue.builder()
+                        .commandQueue(OffHeapBuilder.create().buildQueue())
+                        .eventQueue(OffHeapBuilder.create().buildQueue())
+                        .commandExecutorFactory(CommandExecutorFactory.PASS_THROUGH)
+                        .eventApplierFactory(EventApplierFactory.NO_OP)
+                        .build())
+                .keyExtractor((source, sourceSeq, buffer, offset, length) -> source)
+                .build();
+
+        final List<Integer> eventSources = new ArrayList<>();
+        final Poller eventPoller = executionQueue.createPoller(Poller.Options.builder()
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> eventSources.add(source))
+                .build());
+
+        final TestMessage message = TestMessage.forDefaultLength();
+        for (int source = 1; source <= 4; source++) {
+            executionQueue.appender().accept(source, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        }
+
+        //when
+        final List<Step> steps = executionQueue.pipelineSteps();
+        for (int i = 0; i < 2; i++) {
+            steps.get(1).perform();
+        }
+
+        //then
+        assertThat(steps).hasSize(2);
+        assertThat(eventPoller.poll((buffer, offset, length) -> {}, 16)).isEqualTo(2);
+        assertThat(eventSources).containsExactly(1, 3);
+
+        //when
+        for (int i = 0; i < 2; i++) {
+            steps.get(0).perform();
+        }
+        eventSources.clear();
+        eventPoller.poll((buffer, offset, length) -> {}, 16);
+
+        //then
+        assertThat(eventSources).containsExactly(2, 4);
+        assertThat(executionQueue.appender().lastSourceSeq(3)).isEqualTo(1);
+        eventPoller.close();
+    }
+
+    @Test
+    public void truncated_uncommitted_commands_should_be_undone_and_executed_again() throws Exception {
+        //given
+        final int[] state = {0};
+        final int[] stateResets = {0};
+        final PendingEventQueue eventQueue = new PendingEventQueue();
+        executionQueue = ExecutionQueue.builder()
+                .commandQueue(OffHeapBuilder.create().buildQueue())
+                .eventQueueFactory(onStateReset -> eventQueue.onTruncate(onStateReset))
+                .commandExecutorFactory(CommandExecutorFactory.PASS_THROUGH)
+                .eventApplierFactory(new EventApplierFactory() {
+                    @Override
+                    public MessageConsumer create(final ProgressState currentProgressState,
+                                                  final ProgressState completedProgressState) {
+                        compProgressState = completedProgressState;
+                        return (buffer, offset, length) -> state[0]++;
+                    }
+
+                    @Override
+                    public boolean supportsUndo() {
+                        return true;
+                    }
+
+                    @Override
+                    public MessageConsumer createUndo(final ProgressState currentProgressState,
+                                                      final ProgressState completedProgressState) {
+                        return (buffer, offset, length) -> state[0]--;
+                    }
+                })
+                .onStateReset(() -> stateResets[0]++)
+                .build();
+
+        final TestMessage message = TestMessage.forDefaultLength();
+        executionQueue.appender().accept(10, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(10, 2, System.nanoTime(), message.buffer, message.offset, message.length);
+
+        executionQueue.executorStep().perform(); //execute command 1
+        eventQueue.commit();
+        executionQueue.executorStep().perform(); //skip committed event of command 1, execute command 2
+        assertThat(state[0]).isEqualTo(2);
+
+        //when
+        eventQueue.truncate();
+
+        //then
+        assertThat(state[0]).isEqualTo(1);
+        assertThat(stateResets[0]).isZero();
+        assertThat(compProgressState.sourceSeq(10)).isEqualTo(1);
+        assertThat(compProgressState.source()).isEqualTo(10);
+        assertThat(compProgressState.sourceSeq()).isEqualTo(1);
+
+        //when
+        executionQueue.executorStep().perform(); //execute command 2 again
+
+        //then
+        assertThat(state[0]).isEqualTo(2);
+        assertThat(eventQueue.pending).hasSize(1);
+    }
+
+    private static CommandExecutorFactory commandRecordingExecutorFactory(final List<String> executedCommands) {
+        return (eventApplier, currentProgressState, completedProgressState) -> (buffer, offset, length) -> {
+            executedCommands.add(currentProgressState.source() + ":" + currentProgressState.sourceSeq());
+            eventApplier.accept(buffer, offset, length);
+        };
+    }
+
+    private static void performAll(final Step step) {
+        //skipped commands are not reported as work done, hence performed a fixed number of times
+        for (int i = 0; i < 16; i++) {
+            step.perform();
+        }
+    }
+
+    /**
+     * Event queue keeping appended entries pending until they are committed or truncated.
+     */
+    private static final class PendingEventQueue implements ExecutionQueue {
+        private final IndexedQueue committedQueue = OffHeapBuilder.create().buildQueue();
+        private final List<byte[]> pending = new ArrayList<>();
+        private final List<long[]> pendingHeaders = new ArrayList<>();
+        private Runnable onTruncate;
+
+        ExecutionQueue onTruncate(final Runnable onTruncate) {
+            this.onTruncate = onTruncate;
+            return this;
+        }
+
+        void commit() {
+            for (int i = 0; i < pending.size(); i++) {
+                final long[] header = pendingHeaders.get(i);
+                final byte[] payload = pending.get(i);
+                committedQueue.appender().accept((int) header[0], header[1], header[2],
+                        new UnsafeBuffer(payload), 0, payload.length);
+            }
+            pending.clear();
+            pendingHeaders.clear();
+        }
+
+        void truncate() {
+            final boolean truncated = !pending.isEmpty();
+            pending.clear();
+            pendingHeaders.clear();
+            if (truncated) {
+                onTruncate.run();
+            }
+        }
+
+        @Override
+        public IndexedAppender appender() {
+            return new IndexedAppender() {
+                @Override
+                public long lastSourceSeq(final int source) {
+                    long lastSourceSeq = committedQueue.appender().lastSourceSeq(source);
+                    for (final long[] header : pendingHeaders) {
+                        if (header[0] == source) {
+                            lastSourceSeq = Math.max(lastSourceSeq, header[1]);
+                        }
+                    }
+                    return lastSourceSeq;
+                }
+
+                @Override
+                public void accept(final int source, final long sourceSeq, final long eventTimeNanos,
+                                   final DirectBuffer buffer, final int offset, final int length) {
+                    final byte[] payload = new byte[length];
+                    buffer.getBytes(offset, payload);
+                    pending.add(payload);
+                    pendingHeaders.add(new long[] {source, sourceSeq, eventTimeNanos});
+                }
+            };
+        }
+
+        @Override
+        public Step executorStep() {
+            return () -> false;
+        }
+
+        @Override
+        public Poller createPoller(final Poller.Options options) throws IOException {
+            return committedQueue.createPoller(options);
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public boolean leader() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            committedQueue.close();
+        }
+    }
+}
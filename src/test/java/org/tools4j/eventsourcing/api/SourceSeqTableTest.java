@@ -0,0 +1,76 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceSeqTableTest {
+
+    @Test
+    public void sourceSeqTable_should_track_dense_and_sparse_sources() {
+        //given
+        final SourceSeqTable table = SourceSeqTable.create(-1);
+        final List<Long> entries = new ArrayList<>();
+
+        //when
+        table.put(3, 30);
+        table.put(70000, 7);
+        table.put(-5, 50);
+        table.put(1000, 10);
+        table.put(3, 31);
+        table.remove(1000);
+        table.put(5, 50);
+        table.put(5, -1);
+        table.put(6, -1);
+        table.put(-7, 70);
+        table.put(-7, -1);
+        table.forEach((source, sourceSeq) -> entries.add(source * 1000L + sourceSeq));
+
+        //then
+        assertThat(table.get(3)).isEqualTo(31);
+        assertThat(table.get(70000)).isEqualTo(7);
+        assertThat(table.get(-5)).isEqualTo(50);
+        assertThat(table.get(1000)).isEqualTo(-1);
+        assertThat(table.get(4)).isEqualTo(-1);
+        assertThat(table.get(5)).isEqualTo(-1);
+        assertThat(table.get(6)).isEqualTo(-1);
+        assertThat(table.get(-7)).isEqualTo(-1);
+        assertThat(entries).containsExactlyInAnyOrder(3031L, 70000007L, -4950L);
+
+        //when
+        table.clear();
+
+        //then
+        assertThat(table.isEmpty()).isTrue();
+        table.forEach((source, sourceSeq) -> entries.add(source * 1000L + sourceSeq));
+        assertThat(entries).hasSize(3);
+        assertThat(table.get(3)).isEqualTo(-1);
+        assertThat(table.get(70000)).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,1252 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.eventsourcing.TestMessage;
+import org.tools4j.eventsourcing.api.BatchAppender;
+import org.tools4j.eventsourcing.api.IndexConsumer;
+import org.tools4j.eventsourcing.api.IndexedAppender;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.PollerCursor;
+import org.tools4j.eventsourcing.api.SourceFilter;
+import org.tools4j.eventsourcing.api.SourceSeqIndex;
+import org.tools4j.eventsourcing.api.SourceSeqTable;
+import org.tools4j.eventsourcing.common.SinglePayloadAppender;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.mmap.region.api.RegionAccessor;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.mmap.region.impl.MappedFile;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MmapIndexedQueueTest {
+    private static final String FILE_PREFIX = "indexedQueue";
+
+    private final String directory = System.getProperty("user.dir") + "/build";
+    private final RegionRingFactory regionRingFactory = RegionRingFactory.sync();
+    private final int regionSize = (int) MappedFile.REGION_SIZE_GRANULARITY * 16;
+    private final int ringSize = 4;
+    private final int regionsToMapAhead = 1;
+    private final long maxFileSize = 64L * 1024 * 1024;
+
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        readWriteSupplier(true).close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (final AutoCloseable closeable : closeables) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    public void appender_should_resume_from_checkpoint_and_scan_forward() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(2);
+        final TestMessage message = TestMessage.forDefaultLength();
+
+        appender.accept(10, 1, 1000, message.buffer, message.offset, message.length);
+        appender.accept(20, 5, 1001, message.buffer, message.offset, message.length);
+        appender.accept(10, 2, 1002, message.buffer, message.offset, message.length);
+
+        //when
+        final MmapIndexedAppender recoveredAppender = appender(2);
+
+        //then
+        assertThat(recoveredAppender.lastSourceSeq(10)).isEqualTo(2);
+        assertThat(recoveredAppender.lastSourceSeq(20)).isEqualTo(5);
+        assertThat(recoveredAppender.lastSourceSeq(30)).isEqualTo(MmapIndexedAppender.NULL_INDEX);
+
+        //when
+        recoveredAppender.accept(30, 7, 1003, message.buffer, message.offset, message.length);
+
+        //then
+        assertThat(polledSources()).containsExactly(10, 20, 10, 30);
+    }
+
+    @Test
+    public void appender_should_checkpoint_on_close() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+        final TestMessage message = TestMessage.forDefaultLength();
+        appender.accept(10, 1, 1000, message.buffer, message.offset, message.length);
+        appender.accept(20, 5, 1001, message.buffer, message.offset, message.length);
+
+        //when
+        closeables.remove(appender);
+        appender.close();
+
+        //then
+        final TailCheckpoint tailCheckpoint = new TailCheckpoint(track(readWriteSupplier(false)).headerAccessor());
+        final SourceSeqTable lastSourceSeqMap = SourceSeqTable.create(-1);
+        assertThat(tailCheckpoint.load(lastSourceSeqMap)).isTrue();
+        assertThat(tailCheckpoint.indexPosition()).isEqualTo(2 * MmapIndexedAppender.DEFAULT_INDEX_FORMAT.indexLength());
+        assertThat(tailCheckpoint.messagePosition()).isEqualTo(2 * message.length);
+        assertThat(lastSourceSeqMap.get(10)).isEqualTo(1);
+        assertThat(lastSourceSeqMap.get(20)).isEqualTo(5);
+    }
+
+    @Test
+    public void poller_should_start_at_given_index_and_seek() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+        final TestMessage message = TestMessage.forDefaultLength();
+        for (int source = 0; source < 5; source++) {
+            appender.accept(source, 1, 1000, message.buffer, message.offset, message.length);
+        }
+        final MmapIndexedPollerFactory pollerFactory = new MmapIndexedPollerFactory(directory, FILE_PREFIX,
+                regionRingFactory, regionSize, ringSize, regionsToMapAhead);
+        final List<Integer> sources = new ArrayList<>();
+
+        //when
+        final Poller poller = track(pollerFactory.createPoller(sourceCollectingOptions(sources), 3));
+        pollAll(poller);
+
+        //then
+        assertThat(sources).containsExactly(3, 4);
+
+        //when
+        sources.clear();
+        poller.seek(1);
+        assertThat(poller.poll((buffer, offset, length) -> {})).isEqualTo(1);
+
+        //then
+        assertThat(sources).containsExactly(1);
+
+        //when
+        sources.clear();
+        poller.seek(7);
+        appender.accept(5, 1, 1000, message.buffer, message.offset, message.length);
+        appender.accept(6, 1, 1000, message.buffer, message.offset, message.length);
+        pollAll(poller);
+
+        //then
+        assertThat(sources).isEmpty();
+
+        //when
+        appender.accept(7, 1, 1000, message.buffer, message.offset, message.length);
+        pollAll(poller);
+
+        //then
+        assertThat(sources).containsExactly(7);
+    }
+
+    @Test
+    public void poller_should_be_closed_when_start_index_is_invalid() throws Exception {
+        //given
+        final SharedMappingPool mappingPool = new SharedMappingPool();
+        final MmapIndexedPollerFactory pollerFactory = new MmapIndexedPollerFactory(directory, FILE_PREFIX,
+                regionRingFactory, regionSize, ringSize, regionsToMapAhead, 0, mappingPool);
+
+        //when
+        try {
+            pollerFactory.createPoller(Poller.Options.builder().build(), -1);
+            Assert.fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+            //expected
+        }
+
+        //then
+        assertThat(mappingPool.fileCount()).isZero();
+    }
+
+    @Test
+    public void poller_should_seek_to_first_message_not_before_time() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+        final TestMessage message = TestMessage.forDefaultLength();
+        for (int source = 0; source < 100; source++) {
+            appender.accept(source, 1, 1000 + source * 10, message.buffer, message.offset, message.length);
+        }
+        final List<Integer> sources = new ArrayList<>();
+        final Poller poller = track(new MmapIndexedPoller(
+                RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead),
+                sourceCollectingOptions(sources)));
+
+        //when and then
+        assertThat(poller.seekToTime(1375)).isEqualTo(38);
+        assertThat(poller.poll((buffer, offset, length) -> {})).isEqualTo(1);
+        assertThat(sources).containsExactly(38);
+
+        //when and then
+        assertThat(poller.seekToTime(1380)).isEqualTo(38);
+        assertThat(poller.seekToTime(0)).isEqualTo(0);
+        assertThat(poller.seekToTime(1990)).isEqualTo(99);
+        assertThat(poller.seekToTime(1991)).isEqualTo(100);
+    }
+
+    @Test
+    public void appender_should_keep_recorded_index_format() throws Exception {
+        //given
+        final MmapIndexedAppender appender = track(new MmapIndexedAppender(readWriteSupplier(false),
+                IndexFormat.STANDARD, 1024, IndexConsumer.noop()));
+        final TestMessage message = TestMessage.forDefaultLength();
+        final int count = 3 * regionSize / IndexFormat.STANDARD.indexLength();
+        for (int i = 0; i < count; i++) {
+            appender.accept(i, 1, 1000, message.buffer, message.offset, message.length);
+        }
+        closeables.remove(appender);
+        appender.close();
+
+        //when
+        final MmapIndexedAppender compactAppender = track(new MmapIndexedAppender(readWriteSupplier(false),
+                IndexFormat.COMPACT, 1024, IndexConsumer.noop()));
+        compactAppender.accept(count, 1, 1000, message.buffer, message.offset, message.length);
+
+        //then
+        assertThat(IndexFormat.read(track(readWriteSupplier(false)).headerAccessor())).isEqualTo(IndexFormat.STANDARD);
+        final List<Integer> sources = polledSources();
+        assertThat(sources).hasSize(count + 1);
+        assertThat(sources.get(count)).isEqualTo(count);
+    }
+
+    @Test
+    public void pollers_should_poll_queue_without_header_file() throws Exception {
+        //given
+        final MmapIndexedAppender appender = track(new MmapIndexedAppender(readWriteSupplier(false),
+                IndexFormat.STANDARD, 1024, IndexConsumer.noop()));
+        final TestMessage message = TestMessage.forDefaultLength();
+        for (int source = 0; source < 3; source++) {
+            appender.accept(source, 1, 1000, message.buffer, message.offset, message.length);
+        }
+        closeables.remove(appender);
+        appender.close();
+        assertThat(new File(directory + "/" + FILE_PREFIX + "_header").delete()).isTrue();
+        final List<Integer> sources = new ArrayList<>();
+        final List<Integer> pooledSources = new ArrayList<>();
+
+        //when
+        pollAll(track(new MmapIndexedPollerFactory(directory, FILE_PREFIX, regionRingFactory, regionSize,
+                ringSize, regionsToMapAhead).createPoller(sourceCollectingOptions(sources))));
+        pollAll(track(new MmapIndexedPollerFactory(directory, FILE_PREFIX, regionRingFactory, regionSize,
+                ringSize, regionsToMapAhead, 0, new SharedMappingPool())
+                .createPoller(sourceCollectingOptions(pooledSources))));
+
+        //then
+        assertThat(sources).containsExactly(0, 1, 2);
+        assertThat(pooledSources).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    public void poller_created_before_format_is_recorded_should_poll_compact_index() throws Exception {
+        //given
+        final List<Integer> sources = new ArrayList<>();
+        final Poller poller = track(new MmapIndexedPollerFactory(directory, FILE_PREFIX, regionRingFactory, regionSize,
+                ringSize, regionsToMapAhead).createPoller(sourceCollectingOptions(sources)));
+        assertThat(poller.messageAvailable()).isFalse();
+        final MmapIndexedAppender appender = track(new MmapIndexedAppender(readWriteSupplier(false),
+                IndexFormat.COMPACT, 1024, IndexConsumer.noop()));
+        final TestMessage message = TestMessage.forDefaultLength();
+
+        //when
+        for (int source = 0; source < 3; source++) {
+            appender.accept(source, 1, 1000, message.buffer, message.offset, message.length);
+        }
+        pollAll(poller);
+
+        //then
+        assertThat(sources).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    public void pooled_poller_should_be_created_before_header_is_written() throws Exception {
+        //given
+        final SharedMappingPool mappingPool = new SharedMappingPool();
+
+        //when
+        final Poller poller = new MmapIndexedPollerFactory(directory, FILE_PREFIX, regionRingFactory,
+                regionSize, ringSize, regionsToMapAhead, 0, mappingPool).createPoller();
+
+        //then
+        assertThat(mappingPool.fileCount()).isEqualTo(2);
+
+        //when
+        poller.close();
+
+        //then
+        assertThat(mappingPool.fileCount()).isZero();
+    }
+
+    @Test
+    public void compact_index_should_be_polled_across_regions() throws Exception {
+        //given
+        final MmapIndexedAppender appender = track(new MmapIndexedAppender(readWriteSupplier(false),
+                IndexFormat.COMPACT, 1024, IndexConsumer.noop()));
+        final TestMessage message = TestMessage.forDefaultLength();
+        final int count = 3 * regionSize / IndexFormat.COMPACT.indexLength();
+
+        //when
+        for (int i = 0; i < count; i++) {
+            appender.accept(i, 1, 1000 + i, message.buffer, message.offset, message.length);
+        }
+
+        //then
+        assertThat(IndexFormat.read(track(readWriteSupplier(false)).headerAccessor())).isEqualTo(IndexFormat.COMPACT);
+        final List<Integer> sources = polledSources();
+        assertThat(sources).hasSize(count);
+        assertThat(sources.get(count - 1)).isEqualTo(count - 1);
+        assertThat(track(new MmapIndexedPoller(
+                RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead),
+                Poller.Options.builder().build())).seekToTime(1000 + count / 2)).isEqualTo(count / 2);
+    }
+
+    @Test
+    public void segmented_queue_should_roll_segments_and_remove_old_segments() throws Exception {
+        //given
+        final String filePrefix = "segmentedQueue";
+        final int entriesPerSegment = regionSize / IndexFormat.COMPACT.indexLength();
+        final int count = 5 * entriesPerSegment + 10;
+        final MmapBuilder.Optionals builder = MmapBuilder.create()
+                .directory(directory)
+                .filePrefix(filePrefix)
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize)
+                .indexFormat(IndexFormat.COMPACT)
+                .segmentSize(regionSize)
+                .retentionPolicy(RetentionPolicy.maxSegments(3));
+        final IndexedQueue queue = track(builder.buildQueue());
+        final TestMessage message = TestMessage.forDefaultLength();
+        for (int i = 0; i < count; i++) {
+            queue.appender().accept(i, 1, 1000 + i, message.buffer, message.offset, message.length);
+        }
+        final List<Integer> allSources = new ArrayList<>();
+        pollAll(track(queue.createPoller(sourceCollectingOptions(allSources))));
+        assertThat(allSources).hasSize(count);
+
+        //when
+        final boolean removed = builder.buildSegmentRetention().perform();
+
+        //then
+        final String indexFileName = directory + "/" + filePrefix + "_index";
+        final String messageFileName = directory + "/" + filePrefix + "_message";
+        assertThat(removed).isTrue();
+        assertThat(SegmentFiles.segments(indexFileName)).containsExactly(4, 5, 6);
+        assertThat(SegmentFiles.firstSegment(messageFileName)).isGreaterThan(0);
+
+        //when
+        final List<Integer> retainedSources = new ArrayList<>();
+        final Poller poller = track(builder.buildPollerFactory().createPoller(sourceCollectingOptions(retainedSources)));
+        pollAll(poller);
+        queue.appender().accept(count, 1, 1000 + count, message.buffer, message.offset, message.length);
+        pollAll(poller);
+
+        //then
+        assertThat(retainedSources).hasSize(count + 1 - 4 * entriesPerSegment);
+        assertThat(retainedSources.get(0)).isEqualTo(4 * entriesPerSegment);
+        assertThat(retainedSources.get(retainedSources.size() - 1)).isEqualTo(count);
+        assertThat(builder.buildSegmentRetention().perform()).isFalse();
+    }
+
+    @Test
+    public void appender_should_resume_after_checkpointed_segment_has_been_removed() throws Exception {
+        //given
+        final String filePrefix = "segmentedQueue";
+        final int entriesPerSegment = regionSize / IndexFormat.COMPACT.indexLength();
+        final int count = 5 * entriesPerSegment + 10;
+        final MmapBuilder.Optionals builder = MmapBuilder.create()
+                .directory(directory)
+                .filePrefix(filePrefix)
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize)
+                .indexFormat(IndexFormat.COMPACT)
+                .segmentSize(regionSize)
+                .checkpointInterval(2 * entriesPerSegment)
+                .retentionPolicy(RetentionPolicy.maxSegments(3));
+        final IndexedQueue queue = track(builder.buildQueue());
+        final TestMessage message = TestMessage.forDefaultLength();
+        for (int i = 0; i < count; i++) {
+            queue.appender().accept(i, 1, 1000 + i, message.buffer, message.offset, message.length);
+        }
+        //last checkpoint points into segment 3 which is removed
+        assertThat(builder.buildSegmentRetention().perform()).isTrue();
+
+        //when
+        final IndexedQueue restartedQueue = track(builder.clearFiles(false).buildQueue());
+        restartedQueue.appender().accept(count, 1, 1000 + count, message.buffer, message.offset, message.length);
+
+        //then
+        final String indexFileName = directory + "/" + filePrefix + "_index";
+        assertThat(SegmentFiles.segments(indexFileName)).containsExactly(4, 5, 6);
+        assertThat(restartedQueue.appender().lastSourceSeq(0)).isEqualTo(1);
+        assertThat(restartedQueue.appender().lastSourceSeq(count)).isEqualTo(1);
+        final List<Integer> retainedSources = new ArrayList<>();
+        pollAll(track(builder.buildPollerFactory().createPoller(sourceCollectingOptions(retainedSources))));
+        assertThat(retainedSources).hasSize(count + 1 - 4 * entriesPerSegment);
+        assertThat(retainedSources.get(0)).isEqualTo(4 * entriesPerSegment);
+        assertThat(retainedSources.get(retainedSources.size() - 1)).isEqualTo(count);
+    }
+
+    @Test
+    public void pollers_should_share_mapped_files() throws Exception {
+        //given
+        final SharedMappingPool mappingPool = new SharedMappingPool();
+        final IndexedQueue queue = track(MmapBuilder.create()
+                .directory(directory)
+                .filePrefix("sharedQueue")
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize)
+                .mappingPool(mappingPool)
+                .buildQueue());
+        final TestMessage message = TestMessage.forDefaultLength();
+        final int count = 3 * regionSize / message.length;
+        for (int i = 0; i < count; i++) {
+            queue.appender().accept(i, 1, 1000 + i, message.buffer, message.offset, message.length);
+        }
+
+        //when
+        final List<Poller> pollers = new ArrayList<>();
+        final List<List<Integer>> polledSources = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final List<Integer> sources = new ArrayList<>();
+            polledSources.add(sources);
+            pollers.add(queue.createPoller(sourceCollectingOptions(sources)));
+        }
+        for (final Poller poller : pollers) {
+            pollAll(poller);
+        }
+
+        //then
+        assertThat(mappingPool.fileCount()).isEqualTo(3);
+        for (final List<Integer> sources : polledSources) {
+            assertThat(sources).hasSize(count);
+            assertThat(sources.get(count - 1)).isEqualTo(count - 1);
+        }
+
+        //when
+        for (final Poller poller : pollers) {
+            poller.close();
+        }
+
+        //then
+        assertThat(mappingPool.fileCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shared_accessors_should_keep_regions_mapped_ahead() throws Exception {
+        //given
+        final String fileName = directory + "/" + FILE_PREFIX + "_mapAhead";
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.setLength(3L * regionSize);
+        }
+        final SharedMappingPool mappingPool = new SharedMappingPool();
+        final RegionAccessor accessor = track(mappingPool.accessor(fileName, regionSize, 1, (file, mode) -> {}));
+        final RegionAccessor otherAccessor = track(mappingPool.accessor(fileName, regionSize, 0, (file, mode) -> {}));
+        final UnsafeBuffer buffer = new UnsafeBuffer();
+
+        //when
+        assertThat(accessor.wrap(0, buffer)).isTrue();
+
+        //then
+        assertThat(mappingPool.regionCount()).isEqualTo(2);
+
+        //when
+        assertThat(accessor.wrap(regionSize, buffer)).isTrue();
+        assertThat(otherAccessor.wrap(2L * regionSize, buffer)).isTrue();
+
+        //then
+        assertThat(mappingPool.regionCount()).isEqualTo(2);
+
+        //when
+        assertThat(accessor.wrap(2L * regionSize, buffer)).isTrue();
+        assertThat(accessor.wrap(3L * regionSize, buffer)).isFalse();
+
+        //then
+        assertThat(mappingPool.regionCount()).isEqualTo(1);
+
+        //when
+        accessor.close();
+        otherAccessor.close();
+
+        //then
+        assertThat(mappingPool.regionCount()).isEqualTo(0);
+        assertThat(mappingPool.fileCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void poller_should_poll_up_to_max_messages_across_regions() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+        final TestMessage message = TestMessage.forDefaultLength();
+        final int count = 2 * regionSize / MmapIndexedAppender.DEFAULT_INDEX_FORMAT.indexLength() + 5;
+        for (int i = 0; i < count; i++) {
+            appender.accept(i, 1, 1000, message.buffer, message.offset, message.length);
+        }
+        final List<Integer> sources = new ArrayList<>();
+        final Poller poller = track(new MmapIndexedPoller(
+                RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead),
+                Poller.Options.builder()
+                        .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> sources.add(source))
+                        .pauseWhen((index, source, sourceSeq, eventTimeNanos) -> source == count - 3)
+                        .build()));
+
+        //when and then
+        assertThat(poller.poll((buffer, offset, length) -> {}, 10)).isEqualTo(10);
+        assertThat(sources).hasSize(10);
+        assertThat(poller.poll((buffer, offset, length) -> {}, count)).isEqualTo(count - 13);
+        assertThat(poller.poll((buffer, offset, length) -> {}, count)).isEqualTo(0);
+        for (int i = 0; i < count - 3; i++) {
+            assertThat(sources.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void messages_should_span_regions_without_wasting_region_tails() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+        final int[] lengths = {regionSize - 100, 300, 3 * regionSize + 17, 50};
+        for (int i = 0; i < lengths.length; i++) {
+            final UnsafeBuffer message = new UnsafeBuffer(new byte[lengths[i]]);
+            for (int b = 0; b < lengths[i]; b++) {
+                message.putByte(b, (byte) (i + b));
+            }
+            appender.accept(i, 1, 1000, message, 0, lengths[i]);
+        }
+        final List<byte[]> payloads = new ArrayList<>();
+        final Poller poller = track(new MmapIndexedPoller(
+                RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead),
+                Poller.Options.builder().build()));
+
+        //when
+        poller.poll((buffer, offset, length) -> {
+            final byte[] payload = new byte[length];
+            buffer.getBytes(offset, payload);
+            payloads.add(payload);
+        }, lengths.length + 1);
+
+        //then
+        assertThat(payloads).hasSize(lengths.length);
+        for (int i = 0; i < lengths.length; i++) {
+            assertThat(payloads.get(i)).hasSize(lengths[i]);
+            for (int b = 0; b < lengths[i]; b++) {
+                assertThat(payloads.get(i)[b]).isEqualTo((byte) (i + b));
+            }
+        }
+        final RegionAccessorSupplier supplier = track(readWriteSupplier(false));
+        final UnsafeBuffer indexBuffer = new UnsafeBuffer();
+        supplier.indexAccessor().wrap(MmapIndexedAppender.DEFAULT_INDEX_FORMAT.indexLength(), indexBuffer);
+        assertThat(new IndexDecoder().wrap(indexBuffer, 4).position()).isEqualTo(regionSize - 100);
+    }
+
+    @Test
+    public void claimed_messages_should_be_committed_or_aborted() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+
+        //when
+        final MutableDirectBuffer committed = appender.tryClaim(8);
+        committed.putLong(0, 42);
+        appender.commit(1, 1, 1000);
+        appender.tryClaim(8).putLong(0, 43);
+        appender.abort();
+        final MutableDirectBuffer next = appender.tryClaim(8);
+        next.putLong(0, 44);
+        appender.commit(2, 1, 1001);
+
+        //then
+        assertThat(appender.tryClaim(2 * regionSize)).isNull();
+        final List<Long> values = new ArrayList<>();
+        pollAll(track(new MmapIndexedPoller(
+                RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead),
+                Poller.Options.builder().build())), (buffer, offset, length) -> values.add(buffer.getLong(offset)));
+        assertThat(values).containsExactly(42L, 44L);
+        assertThat(appender.lastSourceSeq(2)).isEqualTo(1);
+    }
+
+    @Test
+    public void claim_should_be_aborted_when_encoding_fails() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+        final SinglePayloadAppender payloadAppender = new SinglePayloadAppender(appender,
+                new UnsafeBuffer(ByteBuffer.allocateDirect(1024)));
+        final UnsafeBuffer message = new UnsafeBuffer(new byte[8]);
+        message.putLong(0, 42);
+
+        //when
+        try {
+            payloadAppender.accept(1, 1, 1000, message, 0, 16);
+            Assert.fail("IndexOutOfBoundsException expected");
+        } catch (final IndexOutOfBoundsException e) {
+            //expected
+        }
+        payloadAppender.accept(1, 2, 1001, message, 0, 8);
+
+        //then
+        assertThat(polledSources()).containsExactly(1);
+        assertThat(appender.lastSourceSeq(1)).isEqualTo(2);
+    }
+
+    @Test
+    public void batch_should_be_published_at_once() throws Exception {
+        //given
+        final MmapSourceSeqIndex sourceSeqIndex = track(MmapSourceSeqIndex.forReadWrite(directory, FILE_PREFIX, true, 16));
+        final MmapIndexedAppender appender = track(new MmapIndexedAppender(readWriteSupplier(false), 1024, sourceSeqIndex));
+        final TestMessage message = TestMessage.forDefaultLength();
+        appender.accept(1, 1, 1000, message.buffer, message.offset, message.length);
+        final BatchAppender batchAppender = appender.batchAppender();
+
+        //when
+        for (int i = 2; i <= 4; i++) {
+            batchAppender.accept(i, 1, 1000 + i, message.buffer, message.offset, message.length);
+        }
+
+        //then
+        assertThat(polledSources()).containsExactly(1);
+        assertThat(sourceSeqIndex.indexOf(4, 1)).isEqualTo(SourceSeqIndex.NULL_INDEX);
+
+        //when
+        assertThat(batchAppender.publish()).isEqualTo(3);
+        appender.accept(5, 1, 1005, message.buffer, message.offset, message.length);
+
+        //then
+        assertThat(polledSources()).containsExactly(1, 2, 3, 4, 5);
+        assertThat(sourceSeqIndex.indexOf(4, 1)).isEqualTo(3);
+        assertThat(appender.lastSourceSeq(3)).isEqualTo(1);
+    }
+
+    @Test
+    public void aborted_batch_should_not_be_polled() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+        final TestMessage message = TestMessage.forDefaultLength();
+        appender.accept(1, 1, 1000, message.buffer, message.offset, message.length);
+        final BatchAppender batchAppender = appender.batchAppender();
+        for (int i = 2; i <= 4; i++) {
+            batchAppender.accept(i, 1, 1000 + i, message.buffer, message.offset, message.length);
+        }
+
+        //when
+        assertThat(batchAppender.abort()).isEqualTo(3);
+        appender.accept(5, 1, 1005, message.buffer, message.offset, message.length);
+
+        //then
+        assertThat(polledSources()).containsExactly(1, 5);
+        assertThat(appender.lastSourceSeq(3)).isEqualTo(MmapIndexedAppender.NULL_INDEX);
+        assertThat(batchAppender.abort()).isZero();
+    }
+
+    @Test
+    public void appender_should_clear_unpublished_batch_on_restart() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+        final TestMessage message = TestMessage.forDefaultLength();
+        appender.accept(1, 1, 1000, message.buffer, message.offset, message.length);
+        for (int i = 2; i <= 4; i++) {
+            appender.batchAppender().accept(i, 1, 1000 + i, message.buffer, message.offset, message.length);
+        }
+
+        //when
+        final MmapIndexedAppender restartedAppender = appender(1024);
+        restartedAppender.accept(5, 1, 1005, message.buffer, message.offset, message.length);
+
+        //then
+        assertThat(polledSources()).containsExactly(1, 5);
+        assertThat(restartedAppender.lastSourceSeq(3)).isEqualTo(MmapIndexedAppender.NULL_INDEX);
+    }
+
+    @Test
+    public void multi_writer_appenders_should_append_concurrently() throws Exception {
+        //given
+        final int messagesPerWriter = 2000;
+        final MmapMultiWriterIndexedAppender firstAppender = track(new MmapMultiWriterIndexedAppender(
+                preallocatedSupplier(true), MmapIndexedAppender.DEFAULT_INDEX_FORMAT));
+        final MmapMultiWriterIndexedAppender secondAppender = track(new MmapMultiWriterIndexedAppender(
+                preallocatedSupplier(false), MmapIndexedAppender.DEFAULT_INDEX_FORMAT));
+        final Thread firstWriter = new Thread(() -> appendSequence(firstAppender, 1, messagesPerWriter));
+        final Thread secondWriter = new Thread(() -> appendSequence(secondAppender, 2, messagesPerWriter));
+
+        //when
+        firstWriter.start();
+        secondWriter.start();
+        firstWriter.join();
+        secondWriter.join();
+
+        //then
+        final long[] lastSourceSeq = new long[3];
+        final int[] sourceHolder = new int[1];
+        final Poller poller = track(new MmapIndexedPoller(
+                RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead),
+                Poller.Options.builder()
+                        .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> {
+                            assertThat(sourceSeq).isEqualTo(lastSourceSeq[source] + 1);
+                            lastSourceSeq[source] = sourceSeq;
+                            sourceHolder[0] = source;
+                        })
+                        .build()));
+        pollAll(poller, (buffer, offset, length) ->
+                assertThat(buffer.getLong(offset)).isEqualTo(lastSourceSeq[sourceHolder[0]]));
+        assertThat(lastSourceSeq[1]).isEqualTo(messagesPerWriter);
+        assertThat(lastSourceSeq[2]).isEqualTo(messagesPerWriter);
+        assertThat(track(new MmapMultiWriterIndexedAppender(preallocatedSupplier(false),
+                MmapIndexedAppender.DEFAULT_INDEX_FORMAT)).lastSourceSeq(2)).isEqualTo(messagesPerWriter);
+    }
+
+    @Test
+    public void hole_of_crashed_writer_should_be_skipped_after_timeout() throws Exception {
+        //given
+        final RegionAccessorSupplier supplier = track(preallocatedSupplier(true));
+        final MmapMultiWriterIndexedAppender appender = track(new MmapMultiWriterIndexedAppender(
+                supplier, MmapIndexedAppender.DEFAULT_INDEX_FORMAT));
+        final UnsafeBuffer headerBuffer = new UnsafeBuffer();
+        supplier.headerAccessor().wrap(0, headerBuffer);
+        headerBuffer.getAndAddLong(MmapMultiWriterIndexedAppender.INDEX_TAIL_OFFSET,
+                MmapIndexedAppender.DEFAULT_INDEX_FORMAT.indexLength());
+        appendSequence(appender, 1, 1);
+        final long[] time = {0};
+        final IndexHoleFiller holeFiller = track(new IndexHoleFiller(preallocatedSupplier(false), 100, () -> time[0]));
+
+        //when and then
+        assertThat(polledSources()).isEmpty();
+        assertThat(holeFiller.perform()).isFalse();
+        time[0] = 50;
+        assertThat(holeFiller.perform()).isFalse();
+        time[0] = 100;
+        assertThat(holeFiller.perform()).isTrue();
+        assertThat(polledSources()).containsExactly(1);
+    }
+
+    @Test
+    public void claimed_entry_of_crashed_writer_should_be_marked_as_hole_after_timeout() throws Exception {
+        //given
+        final RegionAccessorSupplier supplier = track(preallocatedSupplier(true));
+        final MmapMultiWriterIndexedAppender appender = track(new MmapMultiWriterIndexedAppender(
+                supplier, MmapIndexedAppender.DEFAULT_INDEX_FORMAT));
+        final UnsafeBuffer headerBuffer = new UnsafeBuffer();
+        supplier.headerAccessor().wrap(0, headerBuffer);
+        headerBuffer.getAndAddLong(MmapMultiWriterIndexedAppender.INDEX_TAIL_OFFSET,
+                MmapIndexedAppender.DEFAULT_INDEX_FORMAT.indexLength());
+        final UnsafeBuffer indexBuffer = new UnsafeBuffer();
+        supplier.indexAccessor().wrap(0, indexBuffer);
+        indexBuffer.putIntVolatile(0, MmapMultiWriterIndexedAppender.RESERVED_LENGTH);
+        appendSequence(appender, 1, 1);
+        final long[] time = {0};
+        final IndexHoleFiller holeFiller = track(new IndexHoleFiller(preallocatedSupplier(false), 100, () -> time[0]));
+
+        //when and then
+        assertThat(polledSources()).isEmpty();
+        assertThat(holeFiller.perform()).isFalse();
+        time[0] = 100;
+        assertThat(holeFiller.perform()).isTrue();
+        assertThat(indexBuffer.getIntVolatile(0)).isEqualTo(MmapMultiWriterIndexedAppender.HOLE_LENGTH);
+        assertThat(polledSources()).containsExactly(1);
+    }
+
+    @Test
+    public void multi_writer_appender_should_complete_tail_initialisation_of_crashed_initialiser() throws Exception {
+        //given
+        appendSequence(appender(1024), 1, 3);
+        final RegionAccessorSupplier supplier = track(preallocatedSupplier(false));
+        final UnsafeBuffer headerBuffer = new UnsafeBuffer();
+        supplier.headerAccessor().wrap(0, headerBuffer);
+        //message tail initialised but index tail not
+        headerBuffer.putLongVolatile(MmapMultiWriterIndexedAppender.MESSAGE_TAIL_OFFSET, 300);
+        final int indexLength = IndexFormat.read(supplier.headerAccessor()).indexLength();
+
+        //when
+        final MmapMultiWriterIndexedAppender appender = track(new MmapMultiWriterIndexedAppender(
+                supplier, MmapIndexedAppender.DEFAULT_INDEX_FORMAT));
+        appendSequence(appender, 2, 2);
+
+        //then
+        assertThat(headerBuffer.getLongVolatile(MmapMultiWriterIndexedAppender.INDEX_TAIL_OFFSET)).isEqualTo(5 * indexLength);
+        assertThat(polledSources()).containsExactly(1, 1, 1, 2, 2);
+    }
+
+    private static void appendSequence(final IndexedAppender appender, final int source, final int count) {
+        final UnsafeBuffer message = new UnsafeBuffer(new byte[100]);
+        for (int sourceSeq = 1; sourceSeq <= count; sourceSeq++) {
+            message.putLong(0, sourceSeq);
+            appender.accept(source, sourceSeq, 1000, message, 0, message.capacity());
+        }
+    }
+
+    private RegionAccessorSupplier preallocatedSupplier(final boolean clear) throws Exception {
+        return RegionAccessorSupplier.forReadWritePreallocated(directory, FILE_PREFIX, clear, regionRingFactory,
+                regionSize, ringSize, regionsToMapAhead, maxFileSize);
+    }
+
+    @Test
+    public void flusher_should_force_appended_messages_according_to_policy() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(1024);
+        final long[] time = {0};
+        final MmapQueueFlusher flusher = track(new MmapQueueFlusher(
+                new IndexedQueueTail(RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead)),
+                directory + "/" + FILE_PREFIX + "_index",
+                directory + "/" + FILE_PREFIX + "_message",
+                0,
+                DurabilityPolicy.everyMessages(3).or(DurabilityPolicy.everyMicros(10)),
+                () -> time[0]));
+
+        //when and then
+        assertThat(flusher.perform()).isFalse();
+        assertThat(flusher.durableIndex()).isEqualTo(MmapQueueFlusher.NULL_INDEX);
+        appendSequence(appender, 1, 2);
+        assertThat(flusher.perform()).isFalse();
+        appendSequence(appender, 2, 1);
+        assertThat(flusher.perform()).isTrue();
+        assertThat(flusher.durableIndex()).isEqualTo(2);
+        appendSequence(appender, 3, 1);
+        time[0] = 5_000;
+        assertThat(flusher.perform()).isFalse();
+        time[0] = 10_000;
+        assertThat(flusher.perform()).isTrue();
+        assertThat(flusher.durableIndex()).isEqualTo(3);
+        assertThat(flusher.perform()).isFalse();
+    }
+
+    @Test
+    public void tail_should_stop_at_reserved_entry_of_multi_writer_queue() throws Exception {
+        //given
+        final RegionAccessorSupplier supplier = track(preallocatedSupplier(true));
+        final MmapMultiWriterIndexedAppender appender = track(new MmapMultiWriterIndexedAppender(
+                supplier, MmapIndexedAppender.DEFAULT_INDEX_FORMAT));
+        appendSequence(appender, 1, 1);
+        final int indexLength = MmapIndexedAppender.DEFAULT_INDEX_FORMAT.indexLength();
+        final UnsafeBuffer headerBuffer = new UnsafeBuffer();
+        supplier.headerAccessor().wrap(0, headerBuffer);
+        headerBuffer.getAndAddLong(MmapMultiWriterIndexedAppender.INDEX_TAIL_OFFSET, indexLength);
+        final UnsafeBuffer indexBuffer = new UnsafeBuffer();
+        supplier.indexAccessor().wrap(indexLength, indexBuffer);
+        indexBuffer.putIntVolatile(0, MmapMultiWriterIndexedAppender.RESERVED_LENGTH);
+        appendSequence(appender, 2, 1);
+        final IndexedQueueTail tail = track(new IndexedQueueTail(RegionAccessorSupplier.forReadOnly(directory,
+                FILE_PREFIX, regionRingFactory, regionSize, ringSize, regionsToMapAhead)));
+
+        //when and then
+        assertThat(tail.read()).isEqualTo(1);
+        assertThat(tail.indexPosition()).isEqualTo(indexLength);
+        indexBuffer.putIntVolatile(0, MmapMultiWriterIndexedAppender.HOLE_LENGTH);
+        assertThat(tail.read()).isEqualTo(3);
+    }
+
+    @Test
+    public void pretoucher_should_extend_files_ahead_of_appender() throws Exception {
+        //given
+        final RegionPretoucher pretoucher = track(new RegionPretoucher(2));
+        final IndexedQueue queue = track(MmapBuilder.create()
+                .directory(directory)
+                .filePrefix(FILE_PREFIX)
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize)
+                .maxFileSize(maxFileSize)
+                .pretoucher(pretoucher)
+                .buildQueue());
+        final File messageFile = new File(directory + "/" + FILE_PREFIX + "_message");
+        appendSequence(queue.appender(), 1, 1);
+
+        //when and then
+        assertThat(pretoucher.perform()).isTrue();
+        assertThat(messageFile.length()).isGreaterThanOrEqualTo(3L * regionSize);
+        assertThat(pretoucher.perform()).isFalse();
+
+        //when
+        final int count = regionSize / 100 + 1;
+        appendSequence(queue.appender(), 2, count);
+
+        //then
+        assertThat(pretoucher.perform()).isTrue();
+        assertThat(messageFile.length()).isGreaterThanOrEqualTo(4L * regionSize);
+        final List<Integer> sources = new ArrayList<>();
+        pollAll(track(queue.createPoller(sourceCollectingOptions(sources))));
+        assertThat(sources).hasSize(count + 1);
+    }
+
+    @Test
+    public void waiting_poller_should_be_woken_up_by_append() throws Exception {
+        //given
+        final MmapBuilder.Optionals builder = MmapBuilder.create()
+                .directory(directory)
+                .filePrefix(FILE_PREFIX)
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize);
+        final IndexedQueue queue = track(builder.buildQueue());
+        final AppendNotifier appendNotifier = track(builder.buildAppendNotifier());
+        final Poller poller = track(queue.createPoller());
+
+        //when and then
+        assertThat(poller.messageAvailable()).isFalse();
+        assertThat(appendNotifier.await(poller::messageAvailable, 1_000_000, 1_000_000)).isFalse();
+
+        //when
+        final long waitNanos = TimeUnit.SECONDS.toNanos(30);
+        final boolean[] signalled = {false};
+        final Thread waiter = new Thread(() -> signalled[0] = appendNotifier.await(poller::messageAvailable,
+                waitNanos, waitNanos));
+        waiter.start();
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.yield();
+        }
+        appendSequence(queue.appender(), 1, 1);
+        waiter.join(TimeUnit.SECONDS.toMillis(10));
+
+        //then
+        assertThat(waiter.isAlive()).isFalse();
+        assertThat(signalled[0]).isTrue();
+        assertThat(poller.messageAvailable()).isTrue();
+        assertThat(appendNotifier.sequence()).isEqualTo(1);
+    }
+
+    @Test
+    public void waiting_poller_should_see_message_appended_between_registration_and_park() throws Exception {
+        //given
+        final AppendNotifier appendNotifier = new AppendNotifier(new UnsafeBuffer(ByteBuffer.allocateDirect(256)));
+        final int[] checks = {0};
+        //the message is appended after the first check without a signal, as if the appender had missed the waiter
+        final BooleanSupplier messageAvailable = () -> checks[0]++ > 0;
+
+        //when
+        final long startNanos = System.nanoTime();
+        final boolean signalled = appendNotifier.await(messageAvailable, TimeUnit.MILLISECONDS.toNanos(1),
+                TimeUnit.SECONDS.toNanos(30));
+
+        //then
+        assertThat(signalled).isTrue();
+        assertThat(System.nanoTime() - startNanos).isLessThan(TimeUnit.SECONDS.toNanos(10));
+        assertThat(appendNotifier.sequence()).isZero();
+    }
+
+    @Test
+    public void reverse_poller_should_poll_last_messages_of_source_from_tail() throws Exception {
+        //given
+        final MmapBuilder.Optionals builder = MmapBuilder.create()
+                .directory(directory)
+                .filePrefix(FILE_PREFIX)
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize);
+        final IndexedQueue queue = track(builder.buildQueue());
+        final TestMessage message = TestMessage.forDefaultLength();
+        final int count = 3 * regionSize / IndexFormat.COMPACT.indexLength();
+        for (int i = 0; i < count; i++) {
+            queue.appender().accept(i % 4, i, 1000 + i, message.buffer, message.offset, message.length);
+        }
+        final List<Long> polled = new ArrayList<>();
+        final int[] skipped = {0};
+        final Poller reversePoller = track(builder.buildReversePollerFactory().createPoller(Poller.Options.builder()
+                .skipWhen((index, source, sourceSeq, eventTimeNanos) -> source != 1)
+                .onProcessingSkipped((index, source, sourceSeq, eventTimeNanos) -> skipped[0]++)
+                .pauseWhen((index, source, sourceSeq, eventTimeNanos) -> polled.size() == 3)
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> polled.add(sourceSeq))
+                .build()));
+
+        //when
+        reversePoller.poll((buffer, offset, length) -> {}, count);
+
+        //then
+        assertThat(polled).containsExactly(count - 3L, count - 7L, count - 11L);
+        assertThat(skipped[0]).isEqualTo(11);
+
+        //when
+        queue.appender().accept(1, count, 1000 + count, message.buffer, message.offset, message.length);
+        polled.clear();
+        ((MmapIndexedReversePoller) reversePoller).seekToTail();
+        reversePoller.poll((buffer, offset, length) -> {}, 1);
+
+        //then
+        assertThat(polled).containsExactly((long) count);
+    }
+
+    @Test
+    public void reverse_poller_should_not_poll_unpublished_batch() throws Exception {
+        //given
+        final MmapIndexedAppender appender = appender(2);
+        final TestMessage message = TestMessage.forDefaultLength();
+        for (int source = 1; source <= 3; source++) {
+            appender.accept(source, 1, 1000, message.buffer, message.offset, message.length);
+        }
+        for (int source = 4; source <= 9; source++) {
+            appender.batchAppender().accept(source, 1, 1000, message.buffer, message.offset, message.length);
+        }
+        final List<Integer> sources = new ArrayList<>();
+
+        //when
+        final MmapIndexedReversePoller reversePoller = track(new MmapIndexedReversePoller(
+                RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead),
+                sourceCollectingOptions(sources)));
+        pollAll(reversePoller);
+
+        //then
+        assertThat(sources).containsExactly(3, 2, 1);
+
+        //when
+        appender.batchAppender().publish();
+        sources.clear();
+
+        //then
+        assertThat(reversePoller.seekToTail()).isEqualTo(8);
+        pollAll(reversePoller);
+        assertThat(sources).containsExactly(9, 8, 7, 6, 5, 4, 3, 2, 1);
+    }
+
+    @Test
+    public void poller_should_resume_from_committed_cursor() throws Exception {
+        //given
+        final IndexedQueue queue = track(MmapBuilder.create()
+                .directory(directory)
+                .filePrefix(FILE_PREFIX)
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize)
+                .buildQueue());
+        for (int source = 0; source < 5; source++) {
+            appendSequence(queue.appender(), source, 1);
+        }
+        final MmapCursorStore cursorStore = MmapCursorStore.forReadWrite(directory, FILE_PREFIX, true, 16);
+        final List<Integer> sources = new ArrayList<>();
+        final Poller poller = queue.createPoller(Poller.Options.builder()
+                .cursor(cursorStore.cursor("reader"))
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> sources.add(source))
+                .build());
+
+        //when
+        poller.poll((buffer, offset, length) -> {}, 3);
+        poller.close();
+        cursorStore.close();
+
+        //then
+        assertThat(sources).containsExactly(0, 1, 2);
+
+        //when
+        final MmapCursorStore reopenedStore = track(MmapCursorStore.forReadWrite(directory, FILE_PREFIX, false, 16));
+        sources.clear();
+        pollAll(track(queue.createPoller(Poller.Options.builder()
+                .cursor(reopenedStore.cursor("reader"))
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> sources.add(source))
+                .build())));
+
+        //then
+        assertThat(sources).containsExactly(3, 4);
+        assertThat(reopenedStore.cursor("reader").committedIndex()).isEqualTo(5);
+        assertThat(reopenedStore.cursor("other").committedIndex()).isEqualTo(PollerCursor.NULL_INDEX);
+    }
+
+    @Test
+    public void cursor_store_should_abandon_claim_of_crashed_creator() throws Exception {
+        //given
+        MmapCursorStore.forReadWrite(directory, FILE_PREFIX, true, 2).close();
+        final MappedByteBuffer cursorFile = IoUtil.mapExistingFile(new File(directory + "/" + FILE_PREFIX + "_cursors"), "cursors");
+        //first slot claimed by a creator that crashed before publishing the name
+        new UnsafeBuffer(cursorFile).putIntVolatile(0, -12345);
+        final MmapCursorStore cursorStore = track(MmapCursorStore.forReadWrite(directory, FILE_PREFIX, false, 2));
+
+        //when
+        final long startNanos = System.nanoTime();
+        cursorStore.cursor("reader").commit(7);
+
+        //then
+        assertThat(System.nanoTime() - startNanos).isGreaterThanOrEqualTo(MmapCursorStore.CLAIM_TIMEOUT_NANOS);
+        assertThat(cursorStore.cursor("reader").committedIndex()).isEqualTo(7);
+        IoUtil.unmap(cursorFile);
+    }
+
+    @Test
+    public void poller_should_pass_over_entries_of_filtered_sources() throws Exception {
+        //given
+        final IndexedQueue queue = track(MmapBuilder.create()
+                .directory(directory)
+                .filePrefix(FILE_PREFIX)
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize)
+                .buildQueue());
+        for (int source = 0; source < 200; source++) {
+            appendSequence(queue.appender(), source % 100 == 99 ? 5000 : 2, 1);
+        }
+        final List<Integer> sources = new ArrayList<>();
+        final List<Integer> skipped = new ArrayList<>();
+        final Poller poller = track(queue.createPoller(Poller.Options.builder()
+                .sourceFilter(SourceFilter.of(5000))
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> sources.add(source))
+                .onProcessingSkipped((index, source, sourceSeq, eventTimeNanos) -> skipped.add(source))
+                .build()));
+
+        //when
+        poller.poll((buffer, offset, length) -> {}, 1);
+
+        //then
+        assertThat(sources).containsExactly(5000);
+
+        //when
+        poller.poll((buffer, offset, length) -> {}, 1);
+        poller.poll((buffer, offset, length) -> {}, 1);
+
+        //then
+        assertThat(sources).containsExactly(5000, 5000);
+        assertThat(skipped).isEmpty();
+        assertThat(poller.messageAvailable()).isFalse();
+    }
+
+    private List<Integer> polledSources() throws Exception {
+        final List<Integer> sources = new ArrayList<>();
+        pollAll(track(new MmapIndexedPoller(
+                RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead),
+                sourceCollectingOptions(sources))));
+        return sources;
+    }
+
+    private static Poller.Options sourceCollectingOptions(final List<Integer> sources) {
+        return Poller.Options.builder()
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> sources.add(source))
+                .build();
+    }
+
+    @Test
+    public void sourceSeqIndex_should_lookup_appended_and_recovered_messages() throws Exception {
+        //given
+        final MmapSourceSeqIndex sourceSeqIndex = track(MmapSourceSeqIndex.forReadWrite(directory, FILE_PREFIX, true, 16));
+        final MmapIndexedAppender appender = track(new MmapIndexedAppender(readWriteSupplier(false), 1024, sourceSeqIndex));
+        final TestMessage message = TestMessage.forDefaultLength();
+        appender.accept(10, 1, 1000, message.buffer, message.offset, message.length);
+        appender.accept(20, 5, 1001, message.buffer, message.offset, message.length);
+        appender.accept(10, 2, 1002, message.buffer, message.offset, message.length);
+
+        //when
+        final SourceSeqIndex readOnlyIndex = track(MmapSourceSeqIndex.forReadOnly(directory, FILE_PREFIX));
+
+        //then
+        assertThat(readOnlyIndex.indexOf(10, 1)).isEqualTo(0);
+        assertThat(readOnlyIndex.indexOf(20, 5)).isEqualTo(1);
+        assertThat(readOnlyIndex.indexOf(10, 2)).isEqualTo(2);
+        assertThat(readOnlyIndex.indexOf(10, 3)).isEqualTo(SourceSeqIndex.NULL_INDEX);
+        assertThat(readOnlyIndex.indexOf(30, 1)).isEqualTo(SourceSeqIndex.NULL_INDEX);
+
+        //when
+        final MmapIndexedPollerFactory pollerFactory = new MmapIndexedPollerFactory(directory, FILE_PREFIX,
+                regionRingFactory, regionSize, ringSize, regionsToMapAhead);
+        final List<Integer> sources = new ArrayList<>();
+        pollAll(track(readOnlyIndex.createPoller(pollerFactory, sourceCollectingOptions(sources), 20, 5)));
+
+        //then
+        assertThat(sources).containsExactly(20, 10);
+
+        //when
+        final MmapIndexedAppender recoveredAppender = track(new MmapIndexedAppender(readWriteSupplier(false), 1024,
+                sourceSeqIndex));
+        recoveredAppender.accept(30, 7, 1003, message.buffer, message.offset, message.length);
+
+        //then
+        assertThat(readOnlyIndex.indexOf(10, 2)).isEqualTo(2);
+        assertThat(readOnlyIndex.indexOf(30, 7)).isEqualTo(3);
+    }
+
+    @Test
+    public void full_sourceSeqIndex_should_not_cause_appended_messages_to_be_overwritten() throws Exception {
+        //given
+        final MmapSourceSeqIndex sourceSeqIndex = track(MmapSourceSeqIndex.forReadWrite(directory, FILE_PREFIX, true, 3));
+        final MmapIndexedAppender appender = track(new MmapIndexedAppender(readWriteSupplier(false), 1024, sourceSeqIndex));
+        final UnsafeBuffer message = new UnsafeBuffer(new byte[8]);
+        for (int source = 1; source <= 3; source++) {
+            message.putLong(0, source);
+            appender.accept(source, 1, 1000, message, 0, 8);
+        }
+
+        //when
+        message.putLong(0, 4);
+        try {
+            appender.accept(4, 1, 1000, message, 0, 8);
+            Assert.fail("IllegalStateException expected");
+        } catch (final IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("Lookup file is full, capacity 3");
+        }
+        message.putLong(0, 5);
+        try {
+            appender.batchAppender().accept(5, 1, 1000, message, 0, 8);
+            appender.batchAppender().publish();
+            Assert.fail("IllegalStateException expected");
+        } catch (final IllegalStateException e) {
+            //expected
+        }
+
+        //then
+        final List<Long> values = new ArrayList<>();
+        pollAll(track(new MmapIndexedPoller(
+                RegionAccessorSupplier.forReadOnly(directory, FILE_PREFIX, regionRingFactory,
+                        regionSize, ringSize, regionsToMapAhead),
+                Poller.Options.builder().build())), (buffer, offset, length) -> values.add(buffer.getLong(offset)));
+        assertThat(values).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(appender.lastSourceSeq(5)).isEqualTo(1);
+        assertThat(sourceSeqIndex.indexOf(3, 1)).isEqualTo(2);
+        assertThat(sourceSeqIndex.indexOf(4, 1)).isEqualTo(SourceSeqIndex.NULL_INDEX);
+    }
+
+    private static void pollAll(final Poller poller) {
+        pollAll(poller, (buffer, offset, length) -> {});
+    }
+
+    private static void pollAll(final Poller poller, final MessageConsumer consumer) {
+        while (poller.poll(consumer) > 0) {
+            //poll until no more messages
+        }
+    }
+
+    private RegionAccessorSupplier readWriteSupplier(final boolean clear) throws Exception {
+        return RegionAccessorSupplier.forReadWrite(directory, FILE_PREFIX, clear, regionRingFactory,
+                regionSize, ringSize, regionsToMapAhead, maxFileSize);
+    }
+
+    private MmapIndexedAppender appender(final int checkpointInterval) throws Exception {
+        return track(new MmapIndexedAppender(readWriteSupplier(false), checkpointInterval));
+    }
+
+    private <T extends AutoCloseable> T track(final T closeable) {
+        closeables.add(closeable);
+        return closeable;
+    }
+}
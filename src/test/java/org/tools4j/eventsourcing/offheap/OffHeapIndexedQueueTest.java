@@ -0,0 +1,183 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.offheap;
+
+import org.junit.After;
+import org.junit.Test;
+import org.tools4j.eventsourcing.TestMessage;
+import org.tools4j.eventsourcing.api.ExecutionQueue;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapIndexedQueueTest {
+    private static final int REGION_SIZE = 4096;
+
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (final AutoCloseable closeable : closeables) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    public void messages_should_be_polled_across_regions() throws Exception {
+        //given
+        final IndexedQueue queue = track(OffHeapBuilder.create().regionSize(REGION_SIZE).buildQueue());
+        final TestMessage message = TestMessage.forDefaultLength();
+        final TestMessage largeMessage = TestMessage.forLength(3 * REGION_SIZE + 17);
+        final int count = 3 * REGION_SIZE / message.length;
+        for (int i = 0; i < count; i++) {
+            queue.appender().accept(i % 2, i, 1000 + i, message.buffer, message.offset, message.length);
+        }
+        queue.appender().accept(2, 0, 1000 + count, largeMessage.buffer, largeMessage.offset, largeMessage.length);
+
+        //when
+        final List<Integer> lengths = new ArrayList<>();
+        final List<Long> skipped = new ArrayList<>();
+        final Poller poller = track(queue.createPoller(Poller.Options.builder()
+                .skipWhen((index, source, sourceSeq, eventTimeNanos) -> source == 1)
+                .onProcessingSkipped((index, source, sourceSeq, eventTimeNanos) -> skipped.add(index))
+                .build()));
+        pollAll(poller, (buffer, offset, length) -> lengths.add(length));
+
+        //then
+        assertThat(skipped).hasSize(count / 2);
+        assertThat(lengths).hasSize(count - count / 2 + 1);
+        assertThat(lengths.get(lengths.size() - 1)).isEqualTo(largeMessage.length);
+        assertThat(queue.appender().lastSourceSeq(1)).isEqualTo(count % 2 == 0 ? count - 1 : count - 2);
+    }
+
+    @Test
+    public void released_regions_should_be_reused_beyond_maxSize() throws Exception {
+        //given
+        final long maxSize = 4 * REGION_SIZE;
+        final IndexedQueue queue = track(OffHeapBuilder.create().regionSize(REGION_SIZE).maxSize(maxSize).buildQueue());
+        final TestMessage message = TestMessage.forDefaultLength();
+        final long[] nextIndex = {0};
+        final Poller poller = track(queue.createPoller(Poller.Options.builder()
+                .onProcessingComplete((index, source, sourceSeq, eventTimeNanos) -> nextIndex[0] = index + 1)
+                .build()));
+        final int count = (int) (10 * maxSize / message.length);
+
+        //when
+        final List<Long> sourceSeqs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            queue.appender().accept(1, i, 1000 + i, message.buffer, message.offset, message.length);
+            poller.poll((buffer, offset, length) -> sourceSeqs.add((long) sourceSeqs.size()));
+            queue.releaseBefore(nextIndex[0]);
+        }
+
+        //then
+        assertThat(sourceSeqs).hasSize(count);
+        assertThat(queue.appender().lastSourceSeq(1)).isEqualTo(count - 1);
+        final List<Long> started = new ArrayList<>();
+        final Poller latePoller = track(queue.createPoller(Poller.Options.builder()
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> started.add(index))
+                .build()));
+        pollAll(latePoller, (buffer, offset, length) -> {});
+        assertThat(started).isEmpty();
+    }
+
+    @Test
+    public void poller_should_pause_and_reset() throws Exception {
+        //given
+        final IndexedQueue queue = track(OffHeapBuilder.create().regionSize(REGION_SIZE).buildQueue());
+        final TestMessage message = TestMessage.forDefaultLength();
+        for (int i = 0; i < 10; i++) {
+            queue.appender().accept(1, i, 1000 + i, message.buffer, message.offset, message.length);
+        }
+        final boolean[] reset = {false};
+        final List<Long> started = new ArrayList<>();
+        final Poller poller = track(queue.createPoller(Poller.Options.builder()
+                .pauseWhen((index, source, sourceSeq, eventTimeNanos) -> index == 5)
+                .resetWhen(index -> reset[0])
+                .onReset(index -> reset[0] = false)
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> started.add(index))
+                .build()));
+
+        //when
+        pollAll(poller, (buffer, offset, length) -> {});
+
+        //then
+        assertThat(started).containsExactly(0L, 1L, 2L, 3L, 4L);
+
+        //when
+        reset[0] = true;
+        started.clear();
+        pollAll(poller, (buffer, offset, length) -> {});
+
+        //then
+        assertThat(started).containsExactly(0L, 1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    public void execution_queue_should_execute_commands_of_off_heap_queues() throws Exception {
+        //given
+        final List<Integer> executed = new ArrayList<>();
+        final List<Integer> applied = new ArrayList<>();
+        final ExecutionQueue executionQueue = track(ExecutionQueue.builder()
+                .commandQueue(OffHeapBuilder.create().regionSize(REGION_SIZE).buildQueue())
+                .eventQueue(OffHeapBuilder.create().regionSize(REGION_SIZE).buildQueue())
+                .commandExecutorFactory((eventApplier, currentProgressState, completedProgressState) ->
+                        (buffer, offset, length) -> {
+                            executed.add(length);
+                            eventApplier.accept(buffer, offset, length);
+                        })
+                .eventApplierFactory((currentProgressState, completedProgressState) ->
+                        (buffer, offset, length) -> applied.add(length))
+                .systemNanoClock(System::nanoTime)
+                .build());
+        final TestMessage message = TestMessage.forDefaultLength();
+
+        //when
+        executionQueue.appender().accept(100, 1, System.nanoTime(), message.buffer, message.offset, message.length);
+        executionQueue.appender().accept(100, 2, System.nanoTime(), message.buffer, message.offset, message.length);
+        for (int i = 0; i < 4; i++) {
+            executionQueue.executorStep().perform();
+        }
+
+        //then
+        assertThat(executed).containsExactly(message.length, message.length);
+        assertThat(applied).containsExactly(message.length, message.length);
+    }
+
+    private static void pollAll(final Poller poller, final MessageConsumer consumer) {
+        while (poller.poll(consumer, 16) > 0) {
+            //poll until no more messages
+        }
+    }
+
+    private <T extends AutoCloseable> T track(final T closeable) {
+        closeables.add(closeable);
+        return closeable;
+    }
+}
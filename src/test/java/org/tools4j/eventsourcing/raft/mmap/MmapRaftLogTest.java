@@ -32,6 +32,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.tools4j.eventsourcing.TestMessage;
+import org.tools4j.eventsourcing.api.BatchAppender;
 import org.tools4j.eventsourcing.api.BufferPoller;
 import org.tools4j.eventsourcing.api.Poller;
 import org.tools4j.eventsourcing.raft.api.RaftLog;
@@ -39,6 +40,8 @@ import org.tools4j.eventsourcing.sbe.RaftIndexDecoder;
 import org.tools4j.mmap.region.api.RegionRingFactory;
 import org.tools4j.mmap.region.impl.MappedFile;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.LongConsumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -320,6 +323,141 @@ public class MmapRaftLogTest {
 
     }
 
+    @Test
+    public void seekToTime_skips_noops_and_seeks_to_first_entry_not_before_time() throws Exception {
+        //given
+        final TestMessage testMessage = TestMessage.forString("Test Message");
+        raftLog.append(1, 0, 0, 0, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.append(1, 10, 1, 1000, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.append(1, 10, 2, 1010, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.append(2, 0, 0, 0, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.append(2, 10, 3, 1020, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.append(2, 10, 4, 1030, testMessage.buffer, testMessage.offset, testMessage.length);
+
+        //when and then
+        assertThat(raftLogPoller.seekToTime(1000)).isEqualTo(0);
+        assertThat(raftLogPoller.seekToTime(1005)).isEqualTo(2);
+        assertThat(raftLogPoller.seekToTime(1015)).isEqualTo(3);
+        assertThat(raftLogPoller.seekToTime(1030)).isEqualTo(5);
+        assertThat(raftLogPoller.seekToTime(1031)).isEqualTo(6);
+
+        //given
+        final long[] polledTime = new long[1];
+        final Poller timeCapturingPoller = new MmapRaftPoller(
+                RaftRegionAccessorSupplier.forReadOnly(
+                        System.getProperty("user.dir") + "/build",
+                        "raftLog",
+                        RegionRingFactory.sync(),
+                        (int) Math.max(MappedFile.REGION_SIZE_GRANULARITY, 1L << 16) * 1024 * 4,
+                        4,
+                        1),
+                Poller.Options.builder()
+                        .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> polledTime[0] = eventTimeNanos)
+                        .build());
+        try {
+            //when
+            timeCapturingPoller.seekToTime(1015);
+            while (polledTime[0] == 0) {
+                timeCapturingPoller.poll((buffer, offset, length) -> {});
+            }
+
+            //then noop is skipped and entry at 1020 is polled
+            assertThat(polledTime[0]).isEqualTo(1020);
+        } finally {
+            timeCapturingPoller.close();
+        }
+    }
+
+    @Test
+    public void batch_should_be_published_at_once() throws Exception {
+        //given
+        final TestMessage testMessage = TestMessage.forString("Test Message");
+        final BatchAppender batchAppender = ((MmapRaftLog) raftLog).batchAppender(3);
+
+        //when
+        batchAppender.accept(10, 1, 1000, testMessage.buffer, testMessage.offset, testMessage.length);
+        batchAppender.accept(10, 2, 1010, testMessage.buffer, testMessage.offset, testMessage.length);
+        batchAppender.accept(20, 1, 1020, testMessage.buffer, testMessage.offset, testMessage.length);
+
+        //then
+        assertThat(raftLog.size()).isEqualTo(0);
+        assertThat(raftLogPoller.poll((buffer, offset, length) -> {}, 10)).isEqualTo(0);
+
+        //when
+        assertThat(batchAppender.publish()).isEqualTo(3);
+
+        //then
+        assertThat(raftLog.size()).isEqualTo(3);
+        assertThat(raftLog.term(2)).isEqualTo(3);
+        assertThat(raftLog.lastSourceSeq(10)).isEqualTo(2);
+        assertThat(raftLogPoller.poll((buffer, offset, length) -> {}, 10)).isEqualTo(3);
+        assertThat(batchAppender.publish()).isEqualTo(0);
+    }
+
+    @Test
+    public void aborted_batch_should_not_be_appended() throws Exception {
+        //given
+        final TestMessage testMessage = TestMessage.forString("Test Message");
+        final BatchAppender batchAppender = ((MmapRaftLog) raftLog).batchAppender(3);
+        batchAppender.accept(10, 1, 1000, testMessage.buffer, testMessage.offset, testMessage.length);
+        batchAppender.accept(10, 2, 1010, testMessage.buffer, testMessage.offset, testMessage.length);
+
+        //when
+        assertThat(batchAppender.abort()).isEqualTo(2);
+        batchAppender.accept(20, 1, 1020, testMessage.buffer, testMessage.offset, testMessage.length);
+        assertThat(batchAppender.publish()).isEqualTo(1);
+
+        //then
+        assertThat(raftLog.size()).isEqualTo(1);
+        assertThat(raftLog.lastSourceSeq(10)).isEqualTo(MmapRaftLog.NULL_INDEX);
+        assertThat(raftLog.lastSourceSeq(20)).isEqualTo(1);
+    }
+
+    @Test
+    public void reverse_poller_should_poll_from_tail_and_skip_noops() throws Exception {
+        //given
+        final TestMessage testMessage = TestMessage.forString("Test Message");
+        raftLog.append(1, 0, 0, 0, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.append(1, 10, 1, 1000, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.append(1, 20, 1, 1010, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.append(2, 0, 0, 0, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.append(2, 10, 2, 1020, testMessage.buffer, testMessage.offset, testMessage.length);
+        raftLog.commitIndex(2);
+        final List<Long> polledSourceSeqs = new ArrayList<>();
+        final MmapRaftReversePoller reversePoller = new MmapRaftReversePoller(
+                RaftRegionAccessorSupplier.forReadOnly(
+                        System.getProperty("user.dir") + "/build",
+                        "raftLog",
+                        RegionRingFactory.sync(),
+                        (int) Math.max(MappedFile.REGION_SIZE_GRANULARITY, 1L << 16) * 1024 * 4,
+                        4,
+                        1),
+                raftLog::commitIndex,
+                Poller.Options.builder()
+                        .skipWhen((index, source, sourceSeq, eventTimeNanos) -> source != 10)
+                        .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> polledSourceSeqs.add(sourceSeq))
+                        .build());
+        try {
+            //when
+            reversePoller.poll((buffer, offset, length) -> {}, 10);
+
+            //then
+            assertThat(polledSourceSeqs).containsExactly(1L);
+
+            //when
+            raftLog.commitIndex(4);
+            polledSourceSeqs.clear();
+            assertThat(reversePoller.seekToTail()).isEqualTo(4);
+            reversePoller.poll((buffer, offset, length) -> {}, 10);
+
+            //then
+            assertThat(polledSourceSeqs).containsExactly(2L, 1L);
+            assertThat(reversePoller.messageAvailable()).isFalse();
+        } finally {
+            reversePoller.close();
+        }
+    }
+
     @Test
     public void currentTerm() throws Exception {
         //when